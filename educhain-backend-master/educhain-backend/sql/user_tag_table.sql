@@ -0,0 +1,25 @@
+-- 用户标签关系表（由 user.tags 派生，用于按标签精确查询，替代对 json 字符串的 LIKE 扫描）
+create table if not exists user_tag
+(
+    id         bigint auto_increment comment 'id'
+        primary key,
+    userId     bigint                             not null comment '用户 id',
+    tagId      bigint                             not null comment '标签 id',
+    createTime datetime default CURRENT_TIMESTAMP null comment '创建时间',
+    constraint uniIdx_userId_tagId
+        unique (userId, tagId)
+) comment '用户标签关系';
+
+-- 按标签查用户：where tagId in (...) group by userId 只走索引
+create index idx_tagId_userId
+    on user_tag (tagId, userId);
+
+-- 从现有的 tags json 回填（MySQL 8.0+，低版本请使用 UserTagBackfill 任务）
+INSERT IGNORE INTO user_tag (userId, tagId)
+SELECT u.id, t.id
+FROM user u
+         JOIN JSON_TABLE(u.tags, '$[*]' COLUMNS (tagName varchar(256) PATH '$')) jt
+         JOIN tag t ON t.tagName = jt.tagName AND t.isDelete = 0
+WHERE u.isDelete = 0
+  AND u.tags IS NOT NULL
+  AND JSON_VALID(u.tags);
@@ -0,0 +1,113 @@
+package com.kryos.educhain.benchmark;
+
+import com.kryos.educhain.utils.AlgorithmUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 编辑距离基准：标签列表 / 编码后的 id 数组 / 字符串三个版本，以及带上界和位并行的变体
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AlgorithmUtilsBenchmark {
+
+    /**
+     * 输入的平均长度：标签数（列表版）或字符数（字符串版）
+     */
+    @Param({"4", "8", "16", "64"})
+    public int length;
+
+    /**
+     * 带上界版本使用的上界
+     */
+    @Param({"2"})
+    public int maxDistance;
+
+    private List<String> tagList1;
+
+    private List<String> tagList2;
+
+    private int[] tagIds1;
+
+    private int[] tagIds2;
+
+    private String word1;
+
+    private String word2;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        SyntheticUsers users = new SyntheticUsers(200, 42);
+        List<String> vocabulary = users.getVocabulary();
+        tagList1 = new ArrayList<>(length);
+        tagList2 = new ArrayList<>(length);
+        tagIds1 = new int[length];
+        tagIds2 = new int[length];
+        for (int i = 0; i < length; i++) {
+            tagIds1[i] = random.nextInt(vocabulary.size());
+            // 第二组与第一组大部分相同，接近真实的“相似用户”比较
+            tagIds2[i] = random.nextInt(4) == 0 ? random.nextInt(vocabulary.size()) : tagIds1[i];
+            tagList1.add(vocabulary.get(tagIds1[i]));
+            tagList2.add(vocabulary.get(tagIds2[i]));
+        }
+        StringBuilder sb1 = new StringBuilder(length);
+        StringBuilder sb2 = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            char c = (char) ('a' + random.nextInt(26));
+            sb1.append(c);
+            sb2.append(random.nextInt(4) == 0 ? (char) ('a' + random.nextInt(26)) : c);
+        }
+        word1 = sb1.toString();
+        word2 = sb2.toString();
+    }
+
+    @Benchmark
+    public int tagListDistance() {
+        return AlgorithmUtils.minDistance(tagList1, tagList2);
+    }
+
+    @Benchmark
+    public int tagListDistanceBounded() {
+        return AlgorithmUtils.minDistance(tagList1, tagList2, maxDistance);
+    }
+
+    @Benchmark
+    public int tagIdDistance() {
+        return AlgorithmUtils.minDistance(tagIds1, tagIds2);
+    }
+
+    @Benchmark
+    public int tagIdDistanceBounded() {
+        return AlgorithmUtils.minDistance(tagIds1, tagIds2, maxDistance);
+    }
+
+    @Benchmark
+    public int stringDistance() {
+        return AlgorithmUtils.minDistance(word1, word2);
+    }
+
+    @Benchmark
+    public int stringDistanceBitParallel() {
+        return AlgorithmUtils.minDistanceBitParallel(word1, word2);
+    }
+}
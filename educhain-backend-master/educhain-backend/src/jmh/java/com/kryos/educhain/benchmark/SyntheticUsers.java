@@ -0,0 +1,85 @@
+package com.kryos.educhain.benchmark;
+
+import com.google.gson.Gson;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * 基准测试用的合成用户数据
+ * 标签按 Zipf 分布抽取（少数热门标签覆盖大部分用户），每个用户 2 ~ 8 个不重复标签，与线上标签分布接近
+ */
+public class SyntheticUsers {
+
+    /**
+     * 热门标签放在词表最前面，其余用编号补齐
+     */
+    private static final List<String> HOT_TAGS = Arrays.asList(
+            "Java", "Python", "C++", "前端", "后端", "音乐", "游戏", "动漫", "篮球", "考研",
+            "大一", "大二", "大三", "大四", "开发", "算法", "唱歌", "作曲", "键盘手", "摄影");
+
+    private static final int MIN_TAGS = 2;
+
+    private static final int MAX_TAGS = 8;
+
+    private final List<String> vocabulary;
+
+    private final double[] cumulative;
+
+    private final Random random;
+
+    private final Gson gson = new Gson();
+
+    public SyntheticUsers(int tagCount, long seed) {
+        this.vocabulary = new ArrayList<>(tagCount);
+        for (int i = 0; i < tagCount; i++) {
+            vocabulary.add(i < HOT_TAGS.size() ? HOT_TAGS.get(i) : "标签" + i);
+        }
+        // Zipf(s = 1) 累积分布
+        this.cumulative = new double[tagCount];
+        double sum = 0;
+        for (int i = 0; i < tagCount; i++) {
+            sum += 1.0 / (i + 1);
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < tagCount; i++) {
+            cumulative[i] /= sum;
+        }
+        this.random = new Random(seed);
+    }
+
+    /**
+     * 生成一个用户的标签列表
+     */
+    public List<String> nextTags() {
+        int count = MIN_TAGS + random.nextInt(MAX_TAGS - MIN_TAGS + 1);
+        Set<String> tags = new LinkedHashSet<>();
+        while (tags.size() < count) {
+            tags.add(nextTag());
+        }
+        return new ArrayList<>(tags);
+    }
+
+    /**
+     * 生成一个用户的标签 json（与 user.tags 字段格式相同）
+     */
+    public String nextTagsJson() {
+        return gson.toJson(nextTags());
+    }
+
+    public List<String> getVocabulary() {
+        return vocabulary;
+    }
+
+    private String nextTag() {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return vocabulary.get(Math.min(index, vocabulary.size() - 1));
+    }
+}
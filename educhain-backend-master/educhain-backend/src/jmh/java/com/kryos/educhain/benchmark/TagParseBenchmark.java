@@ -0,0 +1,69 @@
+package com.kryos.educhain.benchmark;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 标签 json 解析基准
+ * perCallGson 与 UserServiceImpl.matchUsers 的写法相同（每次 new Gson 和 TypeToken），sharedGson 复用实例
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TagParseBenchmark {
+
+    private static final Type TAG_LIST_TYPE = new TypeToken<List<String>>() {
+    }.getType();
+
+    private static final int SAMPLE_SIZE = 1024;
+
+    private final Gson gson = new Gson();
+
+    private String[] tagsJsons;
+
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SyntheticUsers users = new SyntheticUsers(200, 7);
+        tagsJsons = new String[SAMPLE_SIZE];
+        for (int i = 0; i < SAMPLE_SIZE; i++) {
+            tagsJsons[i] = users.nextTagsJson();
+        }
+    }
+
+    @Benchmark
+    public List<String> perCallGson() {
+        Gson gson = new Gson();
+        return gson.fromJson(next(), new TypeToken<List<String>>() {
+        }.getType());
+    }
+
+    @Benchmark
+    public List<String> sharedGson() {
+        return gson.fromJson(next(), TAG_LIST_TYPE);
+    }
+
+    private String next() {
+        cursor = (cursor + 1) & (SAMPLE_SIZE - 1);
+        return tagsJsons[cursor];
+    }
+}
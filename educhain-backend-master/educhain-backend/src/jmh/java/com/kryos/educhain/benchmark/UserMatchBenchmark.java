@@ -0,0 +1,191 @@
+package com.kryos.educhain.benchmark;
+
+import com.kryos.educhain.config.MatchConfig;
+import com.kryos.educhain.index.MinHashLshIndex;
+import com.kryos.educhain.index.TagDictionary;
+import com.kryos.educhain.index.TagProfileStore;
+import com.kryos.educhain.mapper.TagMapper;
+import com.kryos.educhain.mapper.UserMapper;
+import com.kryos.educhain.match.UserMatchEngine;
+import com.kryos.educhain.model.domain.User;
+import com.kryos.educhain.model.enums.MatchModeEnum;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 端到端匹配基准：与 /user/match 相同的 UserMatchEngine 调用，数据来自合成用户
+ * mode = exact / approximate 走内存画像，stream 走关闭画像缓存后的流式扫描（逐行解析 json）
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+@State(Scope.Benchmark)
+public class UserMatchBenchmark {
+
+    private static final int TAG_COUNT = 200;
+
+    private static final int QUERY_COUNT = 256;
+
+    private static final int TOP_K = 10;
+
+    @Param({"10000", "100000", "1000000"})
+    public int userCount;
+
+    @Param({"exact", "approximate", "stream"})
+    public String mode;
+
+    private UserMatchEngine userMatchEngine;
+
+    private ForkJoinPool matchForkJoinPool;
+
+    private MatchModeEnum matchMode;
+
+    private List<List<String>> queries;
+
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SyntheticUsers users = new SyntheticUsers(TAG_COUNT, 2024);
+        List<User> userList = new ArrayList<>(userCount);
+        for (int i = 0; i < userCount; i++) {
+            User user = new User();
+            user.setId(i + 1);
+            user.setTags(users.nextTagsJson());
+            userList.add(user);
+        }
+        queries = new ArrayList<>(QUERY_COUNT);
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            queries.add(users.nextTags());
+        }
+
+        MatchConfig matchConfig = new MatchConfig();
+        matchConfig.setProfileCacheEnabled(!"stream".equals(mode));
+        matchConfig.setMode("stream".equals(mode) ? "exact" : mode);
+        matchMode = MatchModeEnum.getEnumByValue(matchConfig.getMode());
+        matchForkJoinPool = matchConfig.matchForkJoinPool();
+        MinHashLshIndex minHashLshIndex = matchConfig.minHashLshIndex();
+
+        UserMapper userMapper = userMapper(userList);
+        TagDictionary tagDictionary = new TagDictionary();
+        ReflectionTestUtils.setField(tagDictionary, "tagMapper", tagMapper());
+        TagProfileStore tagProfileStore = new TagProfileStore();
+        ReflectionTestUtils.setField(tagProfileStore, "userMapper", userMapper);
+        ReflectionTestUtils.setField(tagProfileStore, "tagDictionary", tagDictionary);
+
+        userMatchEngine = new UserMatchEngine();
+        ReflectionTestUtils.setField(userMatchEngine, "userMapper", userMapper);
+        ReflectionTestUtils.setField(userMatchEngine, "matchConfig", matchConfig);
+        ReflectionTestUtils.setField(userMatchEngine, "matchForkJoinPool", matchForkJoinPool);
+        ReflectionTestUtils.setField(userMatchEngine, "tagProfileStore", tagProfileStore);
+        ReflectionTestUtils.setField(userMatchEngine, "minHashLshIndex", minHashLshIndex);
+        if (matchConfig.isProfileCacheEnabled()) {
+            // 索引构建不计入匹配耗时
+            userMatchEngine.rebuild();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        matchForkJoinPool.shutdown();
+    }
+
+    @Benchmark
+    public List<Long> match() {
+        cursor = (cursor + 1) % QUERY_COUNT;
+        return userMatchEngine.match(queries.get(cursor), -1L, TOP_K, matchMode);
+    }
+
+    /**
+     * 只实现 scanIdAndTags 的 UserMapper，按行回调合成用户
+     */
+    private static UserMapper userMapper(List<User> userList) {
+        return (UserMapper) Proxy.newProxyInstance(UserMapper.class.getClassLoader(), new Class<?>[]{UserMapper.class},
+                (proxy, method, args) -> {
+                    if ("scanIdAndTags".equals(method.getName())) {
+                        @SuppressWarnings("unchecked")
+                        ResultHandler<User> handler = (ResultHandler<User>) args[0];
+                        SimpleResultContext context = new SimpleResultContext();
+                        for (User user : userList) {
+                            context.next(user);
+                            handler.handleResult(context);
+                        }
+                        return null;
+                    }
+                    if (method.getDeclaringClass() == Object.class) {
+                        return method.invoke(userList, args);
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    /**
+     * tag 表为空的 TagMapper，标签 id 全部由用户数据分配
+     */
+    private static TagMapper tagMapper() {
+        return (TagMapper) Proxy.newProxyInstance(TagMapper.class.getClassLoader(), new Class<?>[]{TagMapper.class},
+                (proxy, method, args) -> {
+                    if ("selectList".equals(method.getName())) {
+                        return Collections.emptyList();
+                    }
+                    if (method.getDeclaringClass() == Object.class) {
+                        return method.invoke(Collections.emptyList(), args);
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static class SimpleResultContext implements ResultContext<User> {
+
+        private User current;
+
+        private int count;
+
+        void next(User user) {
+            current = user;
+            count++;
+        }
+
+        @Override
+        public User getResultObject() {
+            return current;
+        }
+
+        @Override
+        public int getResultCount() {
+            return count;
+        }
+
+        @Override
+        public boolean isStopped() {
+            return false;
+        }
+
+        @Override
+        public void stop() {
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.kryos.educhain.config;
+
+import com.kryos.educhain.index.MinHashLshIndex;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 用户匹配配置
+ */
+@Configuration
+@ConfigurationProperties(prefix = "educhain.match")
+@Data
+public class MatchConfig {
+
+    /**
+     * 默认匹配模式：exact 精确 / approximate 近似（MinHash/LSH），可被请求参数覆盖
+     */
+    private String mode = "exact";
+
+    /**
+     * LSH 分段数，段越多召回越高、候选越多
+     */
+    private int lshBands = 16;
+
+    /**
+     * LSH 每段的哈希个数，越大每个桶越“严格”
+     */
+    private int lshRows = 3;
+
+    /**
+     * 是否基于内存中的标签画像打分（关闭后每次匹配都扫描 user 表并解析 json）
+     */
+    private boolean profileCacheEnabled = true;
+
+    /**
+     * 是否先通过标签倒排表召回候选，只对召回的用户打分
+     */
+    private boolean candidateEnabled = true;
+
+    /**
+     * 当前用户的已知标签数少于该值时不做召回，直接全量扫描
+     */
+    private int candidateMinQueryTags = 2;
+
+    /**
+     * 候选用户至少要与当前用户共享的标签数
+     */
+    private int candidateMinSharedTags = 1;
+
+    /**
+     * 拥有人数超过总用户数该比例的标签（如性别、年级）视为停用标签，不参与召回
+     */
+    private double candidateStopTagRatio = 0.2;
+
+    /**
+     * 并行打分的线程数，小于等于 1 时始终使用单线程
+     */
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * 候选用户数达到该值才走并行打分
+     */
+    private int parallelThreshold = 50000;
+
+    /**
+     * 并行打分时每个子任务处理的用户数
+     */
+    private int chunkSize = 10000;
+
+    /**
+     * 是否把活跃用户的匹配结果预计算到 Redis 有序集合中
+     */
+    private boolean precomputeEnabled = true;
+
+    /**
+     * 每个用户预计算的匹配数，请求数量超过该值时现算
+     */
+    private int precomputeSize = 20;
+
+    /**
+     * 预计算列表的过期时间（小时）
+     */
+    private int precomputeTtlHours = 48;
+
+    /**
+     * 最近多少天内请求过匹配的用户算作活跃用户
+     */
+    private int precomputeActiveDays = 7;
+
+    /**
+     * 活跃时间戳的最短写入间隔（分钟），间隔内的重复请求不再写 Redis
+     */
+    private int precomputeActiveStampMinutes = 10;
+
+    /**
+     * 近似匹配使用的 MinHash/LSH 索引
+     */
+    @Bean
+    public MinHashLshIndex minHashLshIndex() {
+        return new MinHashLshIndex(lshBands, lshRows, 20240601L);
+    }
+
+    /**
+     * 匹配专用的 ForkJoinPool，不占用公共池
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ForkJoinPool matchForkJoinPool() {
+        int threads = Math.max(1, parallelism);
+        ForkJoinPool.ForkJoinWorkerThreadFactory factory = pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("match-worker-" + thread.getPoolIndex());
+            return thread;
+        };
+        return new ForkJoinPool(threads, factory, null, false);
+    }
+
+    /**
+     * 预计算匹配列表的后台更新线程，用户修改标签后的重算不占用请求线程
+     * 待处理的用户先合并到集合中，同一时刻最多排队一个任务
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService matchRefreshExecutor() {
+        return new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(16),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "match-refresh");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+}
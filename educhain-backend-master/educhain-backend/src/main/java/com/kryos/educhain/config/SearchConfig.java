@@ -0,0 +1,108 @@
+package com.kryos.educhain.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 标签搜索配置
+ */
+@Configuration
+@ConfigurationProperties(prefix = "educhain.search")
+@Data
+public class SearchConfig {
+
+    /**
+     * 是否使用进程内的标签位图索引求交（关闭后使用 Redis 中的标签-用户集合）
+     */
+    private boolean localIndexEnabled = true;
+
+    /**
+     * Redis 路径是否把交集物化为有序集合后用 ZRANGE 分页（关闭后每次 SINTER 取回全部 id 在 JVM 中分页）
+     */
+    private boolean redisZsetPagingEnabled = true;
+
+    /**
+     * 物化交集的过期时间（秒），同一组标签的后续翻页复用同一个有序集合
+     */
+    private long intersectionTtlSeconds = 60;
+
+    /**
+     * 定时任务是否全量重建 Redis 标签索引（写入新的一代后切换指针），关闭时只对账；从未重建过时总会重建一次
+     */
+    private boolean tagIndexFullRebuild = false;
+
+    /**
+     * 切换到新的一代后，旧一代的键保留多久（秒），让正在读取的请求读完
+     */
+    private long tagIndexGcGraceSeconds = 120;
+
+    /**
+     * 预热标签-用户映射时每批读取的用户数，也是每条 Redis pipeline 写入的用户数
+     */
+    private int prewarmBatchSize = 1000;
+
+    /**
+     * 标签统计在本地缓存的时间（秒），用于多标签求交的查询规划
+     */
+    private long tagStatsTtlSeconds = 10;
+
+    /**
+     * 标签搜索返回的"细化筛选"标签数（与结果共现最多的前 N 个标签）
+     */
+    private int facetSize = 10;
+
+    /**
+     * 统计"细化筛选"标签时最多扫描的用户数，结果集更大时均匀抽样，再按位图求交得到准确用户数
+     */
+    private int facetSampleSize = 10000;
+
+    /**
+     * "细化筛选"标签的缓存时间（分钟），按查询缓存，与页码无关
+     */
+    private long facetCacheMinutes = 30;
+
+    /**
+     * 查询标签不存在时是否按编辑距离纠正为最接近的已有标签
+     */
+    private boolean fuzzyTagEnabled = true;
+
+    /**
+     * 是否统计热门标签搜索（预热任务据此选择要预热的搜索）
+     */
+    private boolean hotQueryEnabled = true;
+
+    /**
+     * 每个统计窗口保留的热门搜索数
+     */
+    private int hotQueryTopK = 100;
+
+    /**
+     * 热门搜索的统计时间范围（小时）
+     */
+    private int hotQueryWindowHours = 24;
+
+    /**
+     * 预热任务预热的热门搜索数
+     */
+    private int hotQueryPrewarmSize = 20;
+
+    /**
+     * 新登记标签后回填 user_tag 的线程，单线程逐个标签分批扫描 user 表，不占用请求线程
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService tagBackfillExecutor() {
+        return new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(64),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "tag-backfill");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+}
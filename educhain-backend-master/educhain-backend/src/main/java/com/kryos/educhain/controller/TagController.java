@@ -6,10 +6,13 @@ import com.kryos.educhain.common.ResultUtils;
 import com.kryos.educhain.exception.BusinessException;
 import com.kryos.educhain.model.domain.Tag;
 import com.kryos.educhain.model.domain.User;
+import com.kryos.educhain.model.vo.TagCategoryTreeVO;
+import com.kryos.educhain.model.vo.TagSuggestionVO;
 import com.kryos.educhain.service.TagService;
 import com.kryos.educhain.service.UserService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import javax.annotation.Resource;
 import javax.servlet.http.HttpServletRequest;
@@ -35,12 +38,29 @@ public class TagController {
 
     /**
      * 获取所有标签（按分类分组）
+     * 响应带 ETag，客户端携带的 If-None-Match 与之相同时返回 304
+     * @param webRequest 当前请求
      * @return 标签列表
      */
     @GetMapping("/tags")
-    public BaseResponse<List<Map<String, Object>>> getAllTags() {
-        List<Map<String, Object>> tagList = tagService.listTagsByCategory();
-        return ResultUtils.success(tagList);
+    public BaseResponse<List<Map<String, Object>>> getAllTags(WebRequest webRequest) {
+        TagCategoryTreeVO tree = tagService.getCategoryTree();
+        if (webRequest.checkNotModified(tree.getEtag())) {
+            return null;
+        }
+        return ResultUtils.success(tree.getCategories());
+    }
+
+    /**
+     * 标签名联想（标签选择器输入时调用）
+     * @param prefix 前缀
+     * @param limit 返回数量
+     * @return 按使用人数排序的标签
+     */
+    @GetMapping("/tags/suggest")
+    public BaseResponse<List<TagSuggestionVO>> suggestTags(@RequestParam String prefix,
+                                                           @RequestParam(defaultValue = "10") int limit) {
+        return ResultUtils.success(tagService.suggestTags(prefix, limit));
     }
 
     /**
@@ -50,7 +70,7 @@ public class TagController {
      */
     @PostMapping("/tags")
     public BaseResponse<Boolean> addTag(@RequestBody Tag tag) {
-        boolean result = tagService.save(tag);
+        boolean result = tagService.addTag(tag);
         return ResultUtils.success(result);
     }
     
@@ -71,10 +91,11 @@ public class TagController {
         
         // 设置标签所属用户ID
         tag.setUserId(loginUser.getId());
-        // 设置为普通标签(非父标签)
+        // 设置为普通标签(非父标签)，用户标签不能挂在分类下
         tag.setIsParent(0);
+        tag.setParentId(null);
         
-        boolean result = tagService.save(tag);
+        boolean result = tagService.addTag(tag);
         return ResultUtils.success(result);
     }
 
@@ -103,7 +124,7 @@ public class TagController {
      */
     @DeleteMapping("/tags/{id}")
     public BaseResponse<Boolean> deleteTag(@PathVariable Long id) {
-        boolean result = tagService.removeById(id);
+        boolean result = tagService.deleteTag(id);
         return ResultUtils.success(result);
     }
     
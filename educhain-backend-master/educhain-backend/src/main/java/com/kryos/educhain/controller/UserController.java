@@ -6,7 +6,13 @@ import com.kryos.educhain.common.BaseResponse;
 import com.kryos.educhain.common.ErrorCode;
 import com.kryos.educhain.common.ResultUtils;
 import com.kryos.educhain.exception.BusinessException;
+import com.kryos.educhain.index.HotTagQueryTracker;
+import com.kryos.educhain.index.RedisTagUserIndex;
+import com.kryos.educhain.index.TagBitmapIndex;
+import com.kryos.educhain.match.PrecomputedMatchStore;
+import com.kryos.educhain.match.UserMatchEngine;
 import com.kryos.educhain.model.domain.User;
+import com.kryos.educhain.model.enums.MatchModeEnum;
 import com.kryos.educhain.model.request.UserLoginRequest;
 import com.kryos.educhain.model.request.UserRegisterRequest;
 import com.kryos.educhain.service.UserService;
@@ -52,6 +58,21 @@ public class UserController {
     @Resource
     private Gson gson;
 
+    @Resource
+    private UserMatchEngine userMatchEngine;
+
+    @Resource
+    private PrecomputedMatchStore precomputedMatchStore;
+
+    @Resource
+    private TagBitmapIndex tagBitmapIndex;
+
+    @Resource
+    private RedisTagUserIndex redisTagUserIndex;
+
+    @Resource
+    private HotTagQueryTracker hotTagQueryTracker;
+
     @PostMapping("/register")
     public BaseResponse<Long> userRegister(@RequestBody UserRegisterRequest userRegisterRequest) {
         if (userRegisterRequest == null) {
@@ -135,22 +156,35 @@ public class UserController {
     /**
      * 根据标签搜索用户（分页版，带缓存）
      *
-     * @param tagNameList 标签列表
+     * @param tagNameList 标签列表（同时拥有所有标签）
+     * @param tagQuery 布尔标签查询，如 (Java OR Python) AND NOT 游戏，传入时忽略 tagNameList
      * @param pageSize 页面大小
      * @param pageNum 当前页码
+     * @param facets 是否同时返回与结果共现最多的标签及其用户数
      * @return 分页用户数据
      */
     @GetMapping("/search/tags/page")
     public BaseResponse<Page<User>> searchUsersByTagsWithPagination(
             @RequestParam(required = false) List<String> tagNameList,
+            @RequestParam(required = false) String tagQuery,
             @RequestParam(defaultValue = "10") long pageSize,
-            @RequestParam(defaultValue = "1") long pageNum) {
+            @RequestParam(defaultValue = "1") long pageNum,
+            @RequestParam(defaultValue = "false") boolean facets) {
+        if (StringUtils.isNotBlank(tagQuery)) {
+            Page<User> userPage = userService.searchUsersByTagQuery(tagQuery, pageSize, pageNum, facets);
+            // 查询解析成功后才记录，页码和页大小取限制范围后的值
+            hotTagQueryTracker.recordQuery(tagQuery, userPage.getCurrent(), userPage.getSize(), facets);
+            return ResultUtils.success(userPage);
+        }
         if (CollectionUtils.isEmpty(tagNameList)) {
             throw new BusinessException(ErrorCode.PARAMS_ERROR);
         }
         
         // 使用优化后的方法替代原方法，毫秒级响应
-        Page<User> userPage = userService.searchUsersByTagsOptimized(tagNameList, pageSize, pageNum);
+        Page<User> userPage = userService.searchUsersByTagsOptimized(tagNameList, pageSize, pageNum, facets);
+        
+        // 记录搜索频次，预热任务据此预热真实的热门搜索；校验通过后才记录，页码和页大小取限制范围后的值
+        hotTagQueryTracker.record(tagNameList, userPage.getCurrent(), userPage.getSize(), facets);
         return ResultUtils.success(userPage);
     }
     
@@ -256,16 +290,9 @@ public class UserController {
                     List<String> tagList = gson.fromJson(tagsStr, new TypeToken<List<String>>(){}.getType());
                     if (tagList != null && !tagList.isEmpty()) {
                         
-                        // 1. 清理标签-用户映射缓存
-                        // 格式: "tag:{标签名}:userIds"
+                        // 1. 标签-用户映射已在 updateUser 中增量更新，不能删除，
+                        //    否则优化版搜索在下次对账前都查不到结果
                         for (String tag : tagList) {
-                            String tagUserMappingKey = String.format("tag:%s:userIds", tag);
-                            Boolean exists = redisTemplate.hasKey(tagUserMappingKey);
-                            if (exists != null && exists) {
-                                redisTemplate.delete(tagUserMappingKey);
-                                log.info("已清除标签 {} 的用户映射缓存", tag);
-                            }
-                            
                             // 2. 清理标签关联的缓存键集合
                             // 格式: "tag:{标签名}:keys"
                             String tagKeysSetKey = String.format("tag:%s:keys", tag);
@@ -274,6 +301,9 @@ public class UserController {
                                 int deletedCount = 0;
                                 for (Object cacheKey : cacheKeys) {
                                     String key = cacheKey.toString();
+                                    if (RedisTagUserIndex.isIndexKey(key)) {
+                                        continue;
+                                    }
                                     Boolean keyExists = redisTemplate.hasKey(key);
                                     if (keyExists != null && keyExists) {
                                         redisTemplate.delete(key);
@@ -325,7 +355,15 @@ public class UserController {
         if (id <= 0) {
             throw new BusinessException(ErrorCode.PARAMS_ERROR);
         }
+        User user = userService.getById(id);
         boolean b = userService.removeById(id);
+        if (b) {
+            userService.evictUserCache(id);
+            userMatchEngine.removeUser(id);
+            precomputedMatchStore.evict(id);
+            tagBitmapIndex.remove(id);
+            redisTagUserIndex.remove(id, user == null ? null : user.getTags());
+        }
         return ResultUtils.success(b);
     }
 
@@ -333,16 +371,25 @@ public class UserController {
      * 获取最匹配的用户
      *
      * @param num
+     * @param mode 匹配模式 exact / approximate，不传时使用配置的默认模式
      * @param request
      * @return
      */
     @GetMapping("/match")
-    public BaseResponse<List<User>> matchUsers(long num, HttpServletRequest request) {
+    public BaseResponse<List<User>> matchUsers(long num, @RequestParam(required = false) String mode,
+                                               HttpServletRequest request) {
         if (num <= 0 || num > 20) {
             throw new BusinessException(ErrorCode.PARAMS_ERROR);
         }
+        MatchModeEnum matchMode = null;
+        if (StringUtils.isNotBlank(mode)) {
+            matchMode = MatchModeEnum.getEnumByValue(mode);
+            if (matchMode == null) {
+                throw new BusinessException(ErrorCode.PARAMS_ERROR, "匹配模式不存在");
+            }
+        }
         User user = userService.getLoginUser(request);
-        return ResultUtils.success(userService.matchUsers(num, user));
+        return ResultUtils.success(userService.matchUsers(num, user, matchMode));
     }
 
     /**
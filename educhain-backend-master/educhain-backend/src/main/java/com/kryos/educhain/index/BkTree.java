@@ -0,0 +1,114 @@
+package com.kryos.educhain.index;
+
+import com.kryos.educhain.utils.AlgorithmUtils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 标签名的 BK 树，度量为 {@link AlgorithmUtils#minDistance(String, String)}，按小写后的标签名比较
+ * 构建完成后只读，由调用方整体替换，查询无需加锁
+ */
+final class BkTree {
+
+    private Node root;
+
+    private int size;
+
+    /**
+     * 插入标签名，小写后相同的标签名放在同一个节点
+     */
+    void add(String name) {
+        String key = normalize(name);
+        if (root == null) {
+            root = new Node(key, name);
+            size++;
+            return;
+        }
+        Node node = root;
+        while (true) {
+            int distance = AlgorithmUtils.minDistance(key, node.key);
+            if (distance == 0) {
+                if (!node.names.contains(name)) {
+                    node.names.add(name);
+                    size++;
+                }
+                return;
+            }
+            Node child = node.children.get(distance);
+            if (child == null) {
+                node.children.put(distance, new Node(key, name));
+                size++;
+                return;
+            }
+            node = child;
+        }
+    }
+
+    /**
+     * 查找编辑距离不超过 maxDistance 的标签名
+     *
+     * @param query       查询标签
+     * @param maxDistance 允许的编辑距离
+     * @return 标签名 => 与查询的编辑距离
+     */
+    Map<String, Integer> search(String query, int maxDistance) {
+        Map<String, Integer> result = new LinkedHashMap<>();
+        if (root == null || query == null) {
+            return result;
+        }
+        String key = normalize(query);
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            int distance = AlgorithmUtils.minDistance(key, node.key);
+            if (distance <= maxDistance) {
+                for (String name : node.names) {
+                    result.put(name, distance);
+                }
+            }
+            // 三角不等式：只有与当前节点距离在 [d - max, d + max] 内的子树可能有结果
+            for (Map.Entry<Integer, Node> child : node.children.entrySet()) {
+                if (Math.abs(child.getKey() - distance) <= maxDistance) {
+                    stack.push(child.getValue());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 树中的标签名数量
+     */
+    int size() {
+        return size;
+    }
+
+    static String normalize(String tagName) {
+        return tagName.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static final class Node {
+
+        private final String key;
+
+        /**
+         * 小写后相同的标签名，如 Java 和 JAVA
+         */
+        private final List<String> names = new ArrayList<>(1);
+
+        private final Map<Integer, Node> children = new HashMap<>();
+
+        private Node(String key, String name) {
+            this.key = key;
+            this.names.add(name);
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.kryos.educhain.index;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.kryos.educhain.config.SearchConfig;
+import com.kryos.educhain.mapper.TagMapper;
+import com.kryos.educhain.model.domain.Tag;
+import com.kryos.educhain.utils.AlgorithmUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 模糊标签解析
+ * 把 tag 表中登记的标签名放进 BK 树（{@link BkTree}），度量为 {@link AlgorithmUtils#minDistance(String, String)}；
+ * 查询标签不存在时，在编辑距离 1~2 内找最接近的标签代替，如 Jave => Java，避免拼写错误的查询落到一次注定为空的求交上；
+ * 短标签和中文标签差一个字往往是另一个词（如 大一 / 大二），不做纠正；纠正结果返回给调用方，提示"您要找的是不是"
+ * 只认 tag 表中的标签，用户 tags json 里随手写的标签不算已存在，也不会成为纠正目标；
+ * 本实例增删标签后立即失效，其他实例的修改最多延迟 REFRESH_INTERVAL_MILLIS；解析结果按输入缓存，重建时清空
+ */
+@Component
+@Slf4j
+public class FuzzyTagResolver {
+
+    /**
+     * 解析结果缓存的最大条数，超出后整体清空
+     */
+    private static final int MAX_CACHE_SIZE = 10000;
+
+    /**
+     * 从 tag 表重建的间隔
+     */
+    private static final long REFRESH_INTERVAL_MILLIS = 60000;
+
+    @Resource
+    private TagMapper tagMapper;
+
+    @Resource
+    private TagStats tagStats;
+
+    @Resource
+    private TagBitmapIndex tagBitmapIndex;
+
+    @Resource
+    private SearchConfig searchConfig;
+
+    private volatile Snapshot snapshot;
+
+    private final Map<String, String> cache = new ConcurrentHashMap<>();
+
+    /**
+     * 解析一组查询标签，保持顺序并去掉解析后重复的标签
+     */
+    public List<String> resolve(List<String> tagNameList) {
+        return resolve(tagNameList, null);
+    }
+
+    /**
+     * 解析一组查询标签，保持顺序并去掉解析后重复的标签
+     *
+     * @param tagNameList 查询标签
+     * @param corrections 收集被纠正的标签（原标签 => 纠正后的标签），为 null 时不收集
+     */
+    public List<String> resolve(List<String> tagNameList, Map<String, String> corrections) {
+        if (!searchConfig.isFuzzyTagEnabled()) {
+            return tagNameList;
+        }
+        List<String> resolved = new ArrayList<>(tagNameList.size());
+        for (String tagName : tagNameList) {
+            String canonical = resolve(tagName, corrections);
+            if (!resolved.contains(canonical)) {
+                resolved.add(canonical);
+            }
+        }
+        return resolved;
+    }
+
+    /**
+     * 解析单个查询标签
+     *
+     * @param tagName 查询标签
+     * @return 已存在的标签原样返回；否则返回编辑距离内最接近的标签，距离相同时取用户多的；都没有时原样返回
+     */
+    public String resolve(String tagName) {
+        return resolve(tagName, null);
+    }
+
+    /**
+     * 解析单个查询标签
+     *
+     * @param tagName     查询标签
+     * @param corrections 标签被纠正时记入 原标签 => 纠正后的标签，为 null 时不收集
+     */
+    public String resolve(String tagName, Map<String, String> corrections) {
+        if (tagName == null || !searchConfig.isFuzzyTagEnabled()) {
+            return tagName;
+        }
+        Snapshot current = loadedSnapshot();
+        if (current.names.contains(tagName)) {
+            return tagName;
+        }
+        String canonical = cache.get(tagName);
+        if (canonical == null) {
+            canonical = search(current.tree, tagName);
+            if (cache.size() >= MAX_CACHE_SIZE) {
+                cache.clear();
+            }
+            cache.put(tagName, canonical);
+            if (!canonical.equals(tagName)) {
+                log.info("查询标签 [{}] 解析为 [{}]", tagName, canonical);
+            }
+        }
+        if (corrections != null && !canonical.equals(tagName)) {
+            corrections.put(tagName, canonical);
+        }
+        return canonical;
+    }
+
+    /**
+     * 标签增删后调用，下次解析时从 tag 表重建
+     */
+    public void invalidate() {
+        snapshot = null;
+    }
+
+    private String search(BkTree tree, String tagName) {
+        String best = null;
+        int bestDistance = Integer.MAX_VALUE;
+        long bestUsers = -1;
+        for (Map.Entry<String, Integer> candidate : tree.search(tagName, maxDistance(BkTree.normalize(tagName))).entrySet()) {
+            int distance = candidate.getValue();
+            if (distance > bestDistance) {
+                continue;
+            }
+            long users = userCount(candidate.getKey());
+            if (distance < bestDistance || users > bestUsers) {
+                best = candidate.getKey();
+                bestDistance = distance;
+                bestUsers = users;
+            }
+        }
+        return best == null ? tagName : best;
+    }
+
+    /**
+     * 标签的用户数：取共享的标签统计，不可用时取本地已加载的位图索引，不会触发任何全量加载
+     */
+    private long userCount(String tagName) {
+        Long count = tagStats.cardinality(tagName);
+        if (count == null) {
+            count = tagBitmapIndex.cardinalityIfLoaded(tagName);
+        }
+        return count == null ? 0 : count;
+    }
+
+    private Snapshot loadedSnapshot() {
+        Snapshot current = snapshot;
+        if (current != null && System.currentTimeMillis() - current.loadedAt < REFRESH_INTERVAL_MILLIS) {
+            return current;
+        }
+        synchronized (this) {
+            if (snapshot == current) {
+                snapshot = load(current);
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * 从 tag 表重建，失败时沿用旧的快照
+     */
+    private Snapshot load(Snapshot previous) {
+        long start = System.currentTimeMillis();
+        try {
+            QueryWrapper<Tag> queryWrapper = new QueryWrapper<>();
+            queryWrapper.select("tagName");
+            Set<String> names = new HashSet<>();
+            BkTree tree = new BkTree();
+            for (Tag tag : tagMapper.selectList(queryWrapper)) {
+                if (tag != null && StringUtils.isNotBlank(tag.getTagName()) && names.add(tag.getTagName())) {
+                    tree.add(tag.getTagName());
+                }
+            }
+            cache.clear();
+            log.info("模糊标签索引加载完成，共 {} 个标签，耗时 {} ms", tree.size(), System.currentTimeMillis() - start);
+            return new Snapshot(Collections.unmodifiableSet(names), tree, System.currentTimeMillis());
+        } catch (Exception e) {
+            log.warn("加载模糊标签索引失败: {}", e.getMessage());
+            if (previous != null) {
+                return new Snapshot(previous.names, previous.tree, System.currentTimeMillis());
+            }
+            return new Snapshot(Collections.emptySet(), new BkTree(), System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * 允许的编辑距离：不足 4 个字符只纠正大小写，4 个字符纠 1 个，更长的纠 2 个；
+     * 含中文等表意文字时每个字都有独立含义，至少 4 个字才纠 1 个，不纠 2 个
+     */
+    private static int maxDistance(String key) {
+        int length = key.codePointCount(0, key.length());
+        if (length < 4) {
+            return 0;
+        }
+        if (containsIdeograph(key)) {
+            return 1;
+        }
+        return length == 4 ? 1 : 2;
+    }
+
+    private static boolean containsIdeograph(String key) {
+        return key.codePoints().anyMatch(Character::isIdeographic);
+    }
+
+    /**
+     * 某一时刻 tag 表中的标签名和对应的 BK 树，整体替换
+     */
+    private static final class Snapshot {
+
+        private final Set<String> names;
+
+        private final BkTree tree;
+
+        private final long loadedAt;
+
+        private Snapshot(Set<String> names, BkTree tree, long loadedAt) {
+            this.names = names;
+            this.tree = tree;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.kryos.educhain.index;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 一次标签分页搜索（排序后的标签组合或布尔标签查询 + 页码 + 页大小 + 是否带细化筛选），热门搜索统计的单位
+ */
+public final class HotTagQuery {
+
+    private final List<String> tags;
+
+    /**
+     * 布尔标签查询，按标签组合搜索时为 null
+     */
+    private final String tagQuery;
+
+    private final long pageNum;
+
+    private final long pageSize;
+
+    private final boolean facets;
+
+    public HotTagQuery(List<String> tags, long pageNum, long pageSize, boolean facets) {
+        this(tags, null, pageNum, pageSize, facets);
+    }
+
+    public HotTagQuery(String tagQuery, long pageNum, long pageSize, boolean facets) {
+        this(Collections.emptyList(), tagQuery, pageNum, pageSize, facets);
+    }
+
+    private HotTagQuery(List<String> tags, String tagQuery, long pageNum, long pageSize, boolean facets) {
+        List<String> sortedTags = new ArrayList<>(tags);
+        Collections.sort(sortedTags);
+        this.tags = Collections.unmodifiableList(sortedTags);
+        this.tagQuery = tagQuery;
+        this.pageNum = pageNum;
+        this.pageSize = pageSize;
+        this.facets = facets;
+    }
+
+    public List<String> getTags() {
+        return tags;
+    }
+
+    public String getTagQuery() {
+        return tagQuery;
+    }
+
+    public long getPageNum() {
+        return pageNum;
+    }
+
+    public long getPageSize() {
+        return pageSize;
+    }
+
+    public boolean isFacets() {
+        return facets;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof HotTagQuery)) {
+            return false;
+        }
+        HotTagQuery that = (HotTagQuery) o;
+        return pageNum == that.pageNum && pageSize == that.pageSize && facets == that.facets
+                && Objects.equals(tags, that.tags) && Objects.equals(tagQuery, that.tagQuery);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(tags, tagQuery, pageNum, pageSize, facets);
+    }
+
+    @Override
+    public String toString() {
+        return (tagQuery != null ? tagQuery : String.join("_", tags)) + " 第 " + pageNum + " 页（每页 " + pageSize + (facets ? "，带细化筛选）" : "）");
+    }
+}
@@ -0,0 +1,238 @@
+package com.kryos.educhain.index;
+
+import com.google.gson.Gson;
+import com.kryos.educhain.config.SearchConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.CollectionUtils;
+
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * 热门标签搜索统计
+ * 搜索路径上只做一次 Count-Min sketch 计数，并维护估计次数最多的 K 个搜索（heavy hitters）；
+ * 每分钟把本地窗口的 Top-K 累加到 Redis 的小时桶 tag:query:hot:{yyyyMMddHH} 中并换一个新窗口，
+ * 多实例的计数在 Redis 中汇总；预热任务合并最近若干小时的桶，得到真实流量中最热的搜索
+ * 标签组合搜索和布尔标签查询都会记录，只记录通过参数校验的搜索
+ */
+@Component
+@Slf4j
+public class HotTagQueryTracker {
+
+    private static final String KEY_PREFIX = "tag:query:hot:";
+
+    /**
+     * 合并小时桶的临时键前缀，每次合并使用唯一的键，多个实例同时读取时互不覆盖
+     */
+    private static final String UNION_KEY_PREFIX = "tag:query:hot:union:";
+
+    private static final long UNION_KEY_TTL_SECONDS = 60;
+
+    private static final DateTimeFormatter HOUR_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHH");
+
+    private static final int SKETCH_DEPTH = 4;
+
+    private static final int SKETCH_WIDTH = 4096;
+
+    @Resource
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Resource
+    private SearchConfig searchConfig;
+
+    private final Gson gson = new Gson();
+
+    private volatile Window window = new Window();
+
+    /**
+     * 记录一次标签分页搜索，应在参数校验通过后调用，页码和页大小取限制范围后实际生效的值
+     */
+    public void record(List<String> tagNameList, long pageNum, long pageSize, boolean facets) {
+        if (!searchConfig.isHotQueryEnabled() || CollectionUtils.isEmpty(tagNameList)) {
+            return;
+        }
+        record(new HotTagQuery(tagNameList, pageNum, pageSize, facets));
+    }
+
+    /**
+     * 记录一次布尔标签查询，应在查询解析成功后调用
+     */
+    public void recordQuery(String tagQuery, long pageNum, long pageSize, boolean facets) {
+        if (!searchConfig.isHotQueryEnabled() || StringUtils.isBlank(tagQuery)) {
+            return;
+        }
+        record(new HotTagQuery(tagQuery.trim(), pageNum, pageSize, facets));
+    }
+
+    private void record(HotTagQuery query) {
+        if (query.getPageNum() < 1 || query.getPageSize() < 1) {
+            return;
+        }
+        window.record(gson.toJson(query), searchConfig.getHotQueryTopK());
+    }
+
+    /**
+     * 把本地窗口的 Top-K 累加到 Redis 当前小时的桶中
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void flush() {
+        if (!searchConfig.isHotQueryEnabled()) {
+            return;
+        }
+        Window flushed = window;
+        window = new Window();
+        Map<String, Integer> heavyHitters = flushed.heavyHitters();
+        if (heavyHitters.isEmpty()) {
+            return;
+        }
+        String key = KEY_PREFIX + LocalDateTime.now().format(HOUR_FORMAT);
+        long ttlHours = searchConfig.getHotQueryWindowHours() + 1;
+        try {
+            redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                    ZSetOperations<String, Object> zSetOps = (ZSetOperations<String, Object>) operations.opsForZSet();
+                    for (Map.Entry<String, Integer> entry : heavyHitters.entrySet()) {
+                        zSetOps.incrementScore(key, entry.getKey(), entry.getValue());
+                    }
+                    ((RedisOperations<String, Object>) operations).expire(key, ttlHours, TimeUnit.HOURS);
+                    return null;
+                }
+            });
+            log.info("写入 {} 个热门标签搜索到 {}", heavyHitters.size(), key);
+        } catch (Exception e) {
+            log.warn("写入热门标签搜索统计失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 最近 hotQueryWindowHours 小时内最热的搜索
+     *
+     * @param limit 返回数量
+     * @return 按搜索次数降序的搜索，统计不可用时为空列表
+     */
+    public List<HotTagQuery> topQueries(int limit) {
+        List<HotTagQuery> result = new ArrayList<>();
+        if (limit <= 0) {
+            return result;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < Math.max(1, searchConfig.getHotQueryWindowHours()); i++) {
+            keys.add(KEY_PREFIX + now.minusHours(i).format(HOUR_FORMAT));
+        }
+        String unionKey = UNION_KEY_PREFIX + UUID.randomUUID();
+        try {
+            redisTemplate.opsForZSet().unionAndStore(keys.get(0), keys.subList(1, keys.size()), unionKey);
+            // 删除失败时也会很快过期
+            redisTemplate.expire(unionKey, UNION_KEY_TTL_SECONDS, TimeUnit.SECONDS);
+            Set<Object> members = redisTemplate.opsForZSet().reverseRange(unionKey, 0, limit - 1);
+            if (members == null) {
+                return result;
+            }
+            for (Object member : members) {
+                try {
+                    HotTagQuery query = gson.fromJson(String.valueOf(member), HotTagQuery.class);
+                    // 旧版本在校验前记录，可能有非法的页码或页大小
+                    if (query.getPageNum() >= 1 && query.getPageSize() >= 1) {
+                        result.add(query);
+                    }
+                } catch (Exception e) {
+                    log.warn("忽略无法解析的热门标签搜索: {}", member);
+                }
+            }
+        } catch (Exception e) {
+            log.warn("读取热门标签搜索统计失败: {}", e.getMessage());
+        } finally {
+            try {
+                redisTemplate.delete(unionKey);
+            } catch (Exception e) {
+                log.warn("删除热门标签搜索合并结果失败: {}", e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 一个统计窗口：Count-Min sketch 估计每个搜索的次数，候选表保留估计次数最多的 K 个
+     */
+    static final class Window {
+
+        private final AtomicIntegerArray sketch = new AtomicIntegerArray(SKETCH_DEPTH * SKETCH_WIDTH);
+
+        private final Map<String, Integer> candidates = new ConcurrentHashMap<>();
+
+        /**
+         * 候选表中的最小次数（下界），估计次数不超过它的搜索不必加锁比较
+         */
+        private volatile int minCount;
+
+        void record(String member, int k) {
+            int estimate = increment(member);
+            // 只更新仍在候选表中的成员：与淘汰并发时不会把刚被移除的成员写回去
+            if (candidates.computeIfPresent(member, (key, count) -> Math.max(count, estimate)) != null) {
+                return;
+            }
+            if (candidates.size() >= k && estimate <= minCount) {
+                return;
+            }
+            synchronized (this) {
+                if (candidates.size() < k || candidates.containsKey(member)) {
+                    candidates.merge(member, estimate, Math::max);
+                    return;
+                }
+                String minMember = null;
+                int min = Integer.MAX_VALUE;
+                for (Map.Entry<String, Integer> entry : candidates.entrySet()) {
+                    if (entry.getValue() < min) {
+                        min = entry.getValue();
+                        minMember = entry.getKey();
+                    }
+                }
+                if (estimate > min) {
+                    candidates.remove(minMember);
+                    candidates.put(member, estimate);
+                } else {
+                    minCount = min;
+                }
+            }
+        }
+
+        Map<String, Integer> heavyHitters() {
+            return new HashMap<>(candidates);
+        }
+
+        /**
+         * 各行计数加一，返回各行中的最小值作为估计次数
+         */
+        private int increment(String member) {
+            int h1 = member.hashCode();
+            int h2 = Integer.reverse(h1 * 0x9E3779B9) | 1;
+            int estimate = Integer.MAX_VALUE;
+            for (int i = 0; i < SKETCH_DEPTH; i++) {
+                int index = i * SKETCH_WIDTH + Math.floorMod(h1 + i * h2, SKETCH_WIDTH);
+                estimate = Math.min(estimate, sketch.incrementAndGet(index));
+            }
+            return estimate;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.kryos.educhain.index;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 用户标签集合的 MinHash 签名 + LSH 分桶索引
+ * 签名分成 bands 段、每段 rows 个哈希值，任意一段完全相同的用户落进同一个桶；
+ * 查询时只取与当前用户同桶的用户作为候选，代价与桶大小有关而与总用户数无关
+ * 全量重建时构建一份新的桶再整体替换，重建期间查询仍读旧的桶；重建期间的增量更新在替换前补到新的桶上
+ */
+public class MinHashLshIndex {
+
+    /**
+     * 梅森素数 2^31 - 1
+     */
+    private static final long PRIME = 2147483647L;
+
+    private final int bands;
+
+    private final int rows;
+
+    private final long[] hashA;
+
+    private final long[] hashB;
+
+    /**
+     * 当前的桶，尚未构建时为 null
+     */
+    private volatile Buckets buckets;
+
+    /**
+     * 重建期间发生的增量更新（用户 id => 新画像，null 表示移除），重建完成后补到新的桶上
+     */
+    private Map<Long, TagProfile> pendingUpdates;
+
+    /**
+     * 保证同一时刻只有一个重建
+     */
+    private final Object rebuildLock = new Object();
+
+    public MinHashLshIndex(int bands, int rows, long seed) {
+        if (bands <= 0 || rows <= 0) {
+            throw new IllegalArgumentException("bands and rows must be positive");
+        }
+        this.bands = bands;
+        this.rows = rows;
+        int numHashes = bands * rows;
+        this.hashA = new long[numHashes];
+        this.hashB = new long[numHashes];
+        Random random = new Random(seed);
+        for (int i = 0; i < numHashes; i++) {
+            hashA[i] = 1 + random.nextInt(Integer.MAX_VALUE - 1);
+            hashB[i] = random.nextInt(Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * 是否已完成全量构建
+     */
+    public boolean isBuilt() {
+        return buckets != null;
+    }
+
+    /**
+     * 全量重建：在新的桶上构建完成后再替换，不阻塞查询和增量更新
+     */
+    public void rebuild(Collection<TagProfile> profiles) {
+        synchronized (rebuildLock) {
+            synchronized (this) {
+                pendingUpdates = new HashMap<>();
+            }
+            Buckets newBuckets = new Buckets();
+            for (TagProfile profile : profiles) {
+                put(newBuckets, profile);
+            }
+            synchronized (this) {
+                for (Map.Entry<Long, TagProfile> entry : pendingUpdates.entrySet()) {
+                    update(newBuckets, entry.getKey(), entry.getValue());
+                }
+                pendingUpdates = null;
+                buckets = newBuckets;
+            }
+        }
+    }
+
+    /**
+     * 用户标签变化后更新索引
+     *
+     * @param userId  用户 id
+     * @param profile 新画像，为 null 表示移除
+     */
+    public synchronized void update(long userId, TagProfile profile) {
+        Buckets current = buckets;
+        if (current != null) {
+            update(current, userId, profile);
+        }
+        if (pendingUpdates != null) {
+            pendingUpdates.put(userId, profile);
+        }
+    }
+
+    /**
+     * 取与给定标签至少在一个段上签名相同的用户
+     *
+     * @param sortedTagIds 升序去重的标签 id（负数视为未知标签，会被忽略）
+     * @return 候选用户 id
+     */
+    public Set<Long> candidates(int[] sortedTagIds) {
+        Buckets current = buckets;
+        long[] keys = bucketKeys(sortedTagIds);
+        if (current == null || keys == null) {
+            return Collections.emptySet();
+        }
+        Set<Long> result = new HashSet<>();
+        for (long key : keys) {
+            Set<Long> userIds = current.buckets.get(key);
+            if (userIds != null) {
+                result.addAll(userIds);
+            }
+        }
+        return result;
+    }
+
+    private void update(Buckets target, long userId, TagProfile profile) {
+        long[] oldKeys = target.userBucketKeys.remove(userId);
+        if (oldKeys != null) {
+            for (long key : oldKeys) {
+                Set<Long> userIds = target.buckets.get(key);
+                if (userIds != null) {
+                    userIds.remove(userId);
+                }
+            }
+        }
+        if (profile != null) {
+            put(target, profile);
+        }
+    }
+
+    private void put(Buckets target, TagProfile profile) {
+        long[] keys = bucketKeys(profile.getSortedTagIds());
+        if (keys == null) {
+            return;
+        }
+        target.userBucketKeys.put(profile.getUserId(), keys);
+        for (long key : keys) {
+            target.buckets.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(profile.getUserId());
+        }
+    }
+
+    /**
+     * 计算每个段的桶 key，没有有效标签时返回 null
+     */
+    private long[] bucketKeys(int[] sortedTagIds) {
+        int[] signature = signature(sortedTagIds);
+        if (signature == null) {
+            return null;
+        }
+        long[] keys = new long[bands];
+        for (int band = 0; band < bands; band++) {
+            long key = band;
+            for (int r = 0; r < rows; r++) {
+                key = key * 0x9E3779B97F4A7C15L + signature[band * rows + r];
+            }
+            keys[band] = key;
+        }
+        return keys;
+    }
+
+    /**
+     * MinHash 签名：每个哈希函数取集合内的最小值
+     */
+    private int[] signature(int[] sortedTagIds) {
+        int[] signature = null;
+        for (int tagId : sortedTagIds) {
+            if (tagId < 0) {
+                continue;
+            }
+            if (signature == null) {
+                signature = new int[hashA.length];
+                Arrays.fill(signature, Integer.MAX_VALUE);
+            }
+            for (int i = 0; i < hashA.length; i++) {
+                int h = (int) ((hashA[i] * tagId + hashB[i]) % PRIME);
+                if (h < signature[i]) {
+                    signature[i] = h;
+                }
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * 一份完整的分桶，重建时整体替换
+     */
+    private static class Buckets {
+
+        /**
+         * 桶 key => 用户 id
+         */
+        private final Map<Long, Set<Long>> buckets = new ConcurrentHashMap<>();
+
+        /**
+         * 用户 id => 所在的桶 key，用于增量更新时移除旧桶
+         */
+        private final Map<Long, long[]> userBucketKeys = new ConcurrentHashMap<>();
+    }
+}
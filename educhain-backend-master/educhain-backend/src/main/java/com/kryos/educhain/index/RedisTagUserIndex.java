@@ -0,0 +1,913 @@
+package com.kryos.educhain.index;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.kryos.educhain.config.SearchConfig;
+import com.kryos.educhain.mapper.UserMapper;
+import com.kryos.educhain.model.domain.User;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.roaringbitmap.RoaringBitmap;
+import org.roaringbitmap.longlong.LongIterator;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.SetOperations;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Redis 中的 标签 => 用户 id 集合，以及所有有标签用户的 id 有序集合
+ * 只收录状态正常的用户（与预热一致）；用户修改标签时只对新旧标签的差集做 SREM / SADD，和数据库更新在同一流程内完成；
+ * 定时任务默认只做对账，修正偏差
+ * 全量重建写入新的一代键空间 tagidx:v{n}:...，写完后原子地切换指针 tagidx:current，旧的一代延迟过期，
+ * 读者按指针取键，始终看到完整的索引。第 0 代为旧的键名 tag:{标签}:userIds / user:tagged:ids
+ */
+@Component
+@Slf4j
+public class RedisTagUserIndex {
+
+    /**
+     * 当前一代的编号
+     */
+    private static final String CURRENT_KEY = "tagidx:current";
+
+    /**
+     * 正在重建的一代的编号，重建期间增量更新会同时写入这一代
+     */
+    private static final String BUILDING_KEY = "tagidx:building";
+
+    private static final String SEQ_KEY = "tagidx:seq";
+
+    private static final String TAG_KEY_PREFIX = "tag:";
+
+    private static final String LEGACY_TAGGED_KEY = "user:tagged:ids";
+
+    private static final String KEY_SUFFIX = ":userIds";
+
+    /**
+     * 统计哈希中的完整性标记：只有对账或重建写过的哈希才包含全部标签，增量 HINCRBY 可能只建出一部分
+     */
+    public static final String STATS_READY_FIELD = "#ready";
+
+    /**
+     * 增量更新一代索引中的一个用户：KEYS = [统计, 有标签用户, 有标签用户位图, 标签集合...]，
+     * ARGV = [用户 id, 是否有标签, (标签, 1 新增 / 0 移除)...]
+     * 只有 SADD / SREM 真正改变了集合时才调整统计，重复或乱序的更新不会让计数漂移
+     */
+    private static final RedisScript<Long> APPLY_SCRIPT = new DefaultRedisScript<>(
+            "local userId = ARGV[1] "
+                    + "if ARGV[2] == '1' then redis.call('ZADD', KEYS[2], userId, userId) "
+                    + "else redis.call('ZREM', KEYS[2], userId) end "
+                    + "redis.call('SETBIT', KEYS[3], userId, tonumber(ARGV[2])) "
+                    + "for i = 4, #KEYS do "
+                    + "local field = ARGV[2 * i - 5] "
+                    + "if ARGV[2 * i - 4] == '1' then "
+                    + "if redis.call('SADD', KEYS[i], userId) == 1 then redis.call('HINCRBY', KEYS[1], field, 1) end "
+                    + "elseif redis.call('SREM', KEYS[i], userId) == 1 then redis.call('HINCRBY', KEYS[1], field, -1) end "
+                    + "end "
+                    + "return #KEYS - 3", Long.class);
+
+    /**
+     * 按集合的实际大小重写统计：KEYS = [统计, 标签集合...]，ARGV = [标签...]
+     * 在 Redis 内原子地读 SCARD 再写，不会覆盖掉同时发生的增量 HINCRBY
+     */
+    private static final RedisScript<Long> STATS_SCRIPT = new DefaultRedisScript<>(
+            "for i = 2, #KEYS do "
+                    + "local count = redis.call('SCARD', KEYS[i]) "
+                    + "if count > 0 then redis.call('HSET', KEYS[1], ARGV[i - 1], count) "
+                    + "else redis.call('HDEL', KEYS[1], ARGV[i - 1]) end "
+                    + "end "
+                    + "return #KEYS - 1", Long.class);
+
+    /**
+     * 脚本参数按字符串写入，与集合成员（Jackson 序列化的数字）和哈希字段（字符串）的字节一致
+     */
+    private static final RedisSerializer<String> SCRIPT_ARGS_SERIALIZER = RedisSerializer.string();
+
+    private static final RedisSerializer<Long> SCRIPT_RESULT_SERIALIZER = new GenericToStringSerializer<>(Long.class);
+
+    private static final Type TAG_LIST_TYPE = new TypeToken<List<String>>() {
+    }.getType();
+
+    private static final int BATCH_SIZE = 1000;
+
+    /**
+     * 本地缓存指针的时间，远小于旧一代的过期宽限期
+     */
+    private static final long POINTER_CACHE_MILLIS = 2000;
+
+    @Resource
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Resource
+    private SearchConfig searchConfig;
+
+    @Resource
+    private TagCategories tagCategories;
+
+    @Resource
+    private UserMapper userMapper;
+
+    private final Gson gson = new Gson();
+
+    private volatile long cachedGeneration = -1;
+
+    private volatile long cachedAt;
+
+    /**
+     * 某一代中标签对应的用户 id 集合键
+     */
+    public static String userIdsKey(long generation, String tagName) {
+        return tagKeyPrefix(generation) + tagName + KEY_SUFFIX;
+    }
+
+    /**
+     * 某一代中所有有标签用户的 id（有序集合，分数为用户 id），物化标签交集时用来按 id 排序
+     */
+    public static String taggedUserIdsKey(long generation) {
+        return generation == 0 ? LEGACY_TAGGED_KEY : generationPrefix(generation) + "tagged";
+    }
+
+    /**
+     * 某一代中所有有标签用户的 id（Redis 位图，偏移量为用户 id），NOT 查询用一次 GET 取得全集
+     */
+    public static String taggedBitsKey(long generation) {
+        return "tagidx:v" + generation + ":tagged:bits";
+    }
+
+    /**
+     * 某一代中各标签的用户数（哈希，字段为标签名），供查询规划使用
+     */
+    public static String statsKey(long generation) {
+        return "tagidx:v" + generation + ":stats";
+    }
+
+    /**
+     * 是否为索引自身的键（不属于可随意删除的搜索缓存）
+     */
+    public static boolean isIndexKey(String key) {
+        return key.startsWith("tagidx:") || LEGACY_TAGGED_KEY.equals(key)
+                || (key.startsWith(TAG_KEY_PREFIX) && key.endsWith(KEY_SUFFIX));
+    }
+
+    /**
+     * 当前一代的编号，同一次查询应只取一次，保证所有键来自同一代
+     *
+     * @return 编号，从未重建过时为 0（旧的键名）
+     */
+    public long currentGeneration() {
+        long now = System.currentTimeMillis();
+        if (cachedGeneration >= 0 && now - cachedAt < POINTER_CACHE_MILLIS) {
+            return cachedGeneration;
+        }
+        try {
+            Long generation = toLong(redisTemplate.opsForValue().get(CURRENT_KEY));
+            cachedGeneration = generation == null ? 0 : generation;
+            cachedAt = now;
+        } catch (Exception e) {
+            log.warn("读取标签索引当前代失败，沿用上次的值: {}", e.getMessage());
+        }
+        return Math.max(cachedGeneration, 0);
+    }
+
+    /**
+     * 是否已经完成过至少一次分代重建
+     */
+    public boolean hasGeneration() {
+        cachedAt = 0;
+        return currentGeneration() > 0;
+    }
+
+    /**
+     * 用户标签或状态变化后增量更新索引，所有命令放在一个 pipeline 中发送
+     * 非正常状态（如封禁）的用户视为没有标签
+     *
+     * @param userId      用户 id
+     * @param oldTagsJson 旧的标签 json
+     * @param oldStatus   旧的用户状态
+     * @param newTagsJson 新的标签 json
+     * @param newStatus   新的用户状态
+     */
+    public void onTagsChanged(long userId, String oldTagsJson, Integer oldStatus, String newTagsJson, Integer newStatus) {
+        Set<String> oldTags = indexable(oldStatus) ? parse(userId, oldTagsJson) : Collections.emptySet();
+        Set<String> newTags = indexable(newStatus) ? parse(userId, newTagsJson) : Collections.emptySet();
+        Set<String> removedTags = new HashSet<>(oldTags);
+        removedTags.removeAll(newTags);
+        Set<String> addedTags = new HashSet<>(newTags);
+        addedTags.removeAll(oldTags);
+        apply(userId, removedTags, addedTags, !newTags.isEmpty());
+    }
+
+    /**
+     * 从索引中移除用户（如用户被删除）
+     *
+     * @param userId   用户 id
+     * @param tagsJson 用户当前的标签 json
+     */
+    public void remove(long userId, String tagsJson) {
+        apply(userId, parse(userId, tagsJson), Collections.emptySet(), false);
+    }
+
+    /**
+     * 与数据库对账：在当前一代中补上缺少的成员，删掉多余的成员和已经没有用户的标签集合
+     * 应有的成员是对账开始时从数据库读取的快照，之后的增量更新会和快照不一致；
+     * 因此每个有偏差的用户都重新从数据库读取一次，以最新的数据为准，不会撤销刚刚发生的修改
+     *
+     * @param expected 标签 => 应有的用户 id
+     */
+    public void reconcile(Map<String, Roaring64NavigableMap> expected) {
+        long start = System.currentTimeMillis();
+        long generation = currentGeneration();
+        int failedTags = 0;
+        Roaring64NavigableMap taggedUserIds = new Roaring64NavigableMap();
+        // 先找出所有偏差，再统一按数据库的最新数据确认
+        List<Drift> drifts = new ArrayList<>();
+        Set<Long> driftUserIds = new HashSet<>();
+        for (Map.Entry<String, Roaring64NavigableMap> entry : expected.entrySet()) {
+            String key = userIdsKey(generation, entry.getKey());
+            taggedUserIds.or(entry.getValue());
+            try {
+                Drift drift = diff(key, entry.getKey(), DriftKind.SET, scanSetMembers(key), entry.getValue());
+                if (drift != null) {
+                    drifts.add(drift);
+                    driftUserIds.addAll(drift.missing);
+                    driftUserIds.addAll(drift.extra);
+                }
+                // 索引由增量更新维护，不能过期
+                redisTemplate.persist(key);
+                // 旧版本把索引键登记在标签缓存集合里，清除搜索缓存时会被一起删掉
+                redisTemplate.opsForSet().remove(TAG_KEY_PREFIX + entry.getKey() + ":keys", key);
+            } catch (Exception e) {
+                failedTags++;
+                log.error("标签 [{}] 的用户集合对账失败: {}", entry.getKey(), e.getMessage());
+            }
+        }
+        try {
+            String taggedKey = taggedUserIdsKey(generation);
+            Drift drift = diff(taggedKey, null, DriftKind.ZSET, scanZSetMembers(taggedKey), taggedUserIds);
+            if (drift != null) {
+                drifts.add(drift);
+                driftUserIds.addAll(drift.missing);
+                driftUserIds.addAll(drift.extra);
+            }
+        } catch (Exception e) {
+            log.error("有标签用户 id 有序集合对账失败: {}", e.getMessage());
+        }
+        try {
+            // 升级前的一代没有位图，这里会整体补上
+            String bitsKey = taggedBitsKey(generation);
+            Roaring64NavigableMap actualIds = new Roaring64NavigableMap();
+            RoaringBitmap bits = readBits(bitsKey);
+            if (bits != null) {
+                bits.forEach((int id) -> actualIds.addLong(Integer.toUnsignedLong(id)));
+            }
+            Drift drift = diff(bitsKey, null, DriftKind.BITS, actualIds, taggedUserIds);
+            if (drift != null) {
+                drifts.add(drift);
+                driftUserIds.addAll(drift.missing);
+                driftUserIds.addAll(drift.extra);
+            }
+        } catch (Exception e) {
+            log.error("有标签用户 id 位图对账失败: {}", e.getMessage());
+        }
+        long[] fixed = new long[2];
+        long skipped = 0;
+        if (!drifts.isEmpty()) {
+            Map<Long, Set<String>> latestTags = loadLatestTags(driftUserIds);
+            for (Drift drift : drifts) {
+                try {
+                    skipped += fix(drift, latestTags, fixed);
+                } catch (Exception e) {
+                    log.error("修正索引 {} 失败: {}", drift.key, e.getMessage());
+                }
+            }
+        }
+        int droppedTags = 0;
+        Set<String> statsTags = new HashSet<>(expected.keySet());
+        try {
+            String keyPrefix = tagKeyPrefix(generation);
+            for (String key : scanKeys(keyPrefix + "*" + KEY_SUFFIX)) {
+                String tagName = key.substring(keyPrefix.length(), key.length() - KEY_SUFFIX.length());
+                statsTags.add(tagName);
+                // 对账期间刚有用户加上的标签不在快照中，集合不为空时保留
+                if (!expected.containsKey(tagName) && !hasLatestMember(key, tagName, driftUserIds)) {
+                    redisTemplate.delete(key);
+                    droppedTags++;
+                }
+            }
+        } catch (Exception e) {
+            log.warn("清理已无用户的标签集合失败: {}", e.getMessage());
+        }
+        writeStats(generation, statsTags);
+        log.info("标签-用户索引第 {} 代对账完成，共 {} 个标签，补充 {} 个成员，移除 {} 个成员，{} 个偏差已被增量更新修正，删除 {} 个空标签，失败 {} 个标签，耗时 {} ms",
+                generation, expected.size(), fixed[0], fixed[1], skipped, droppedTags, failedTags, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 开始全量重建：分配新的一代并登记为正在重建，此后的增量更新会同时写入新旧两代
+     * 重建读取数据库之后、写入之前发生的少量变化留给下次对账修正
+     *
+     * @return 新一代的编号
+     */
+    public long beginRebuild() {
+        Long generation = redisTemplate.opsForValue().increment(SEQ_KEY);
+        if (generation == null) {
+            throw new IllegalStateException("分配标签索引新一代编号失败");
+        }
+        redisTemplate.opsForValue().set(BUILDING_KEY, generation, 2, TimeUnit.HOURS);
+        log.info("开始重建标签-用户索引第 {} 代", generation);
+        return generation;
+    }
+
+    /**
+     * 把一批用户写入正在重建的一代，所有命令放在一个 pipeline 中发送；统计在切换前按集合大小统一写入
+     *
+     * @param generation   正在重建的一代
+     * @param tagToUserIds 这一批的 标签 => 用户 id 位图
+     * @param userIds      这一批中有标签的用户 id 位图
+     */
+    public void appendChunk(long generation, Map<String, Roaring64NavigableMap> tagToUserIds, Roaring64NavigableMap userIds) {
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                SetOperations<String, Object> setOps = (SetOperations<String, Object>) operations.opsForSet();
+                ZSetOperations<String, Object> zSetOps = (ZSetOperations<String, Object>) operations.opsForZSet();
+                for (Map.Entry<String, Roaring64NavigableMap> entry : tagToUserIds.entrySet()) {
+                    setOps.add(userIdsKey(generation, entry.getKey()), toMembers(entry.getValue()));
+                }
+                ValueOperations<String, Object> valueOps = (ValueOperations<String, Object>) operations.opsForValue();
+                Set<ZSetOperations.TypedTuple<Object>> tuples = new HashSet<>();
+                LongIterator iterator = userIds.getLongIterator();
+                while (iterator.hasNext()) {
+                    long userId = iterator.next();
+                    tuples.add(new DefaultTypedTuple<>(userId, (double) userId));
+                    valueOps.setBit(taggedBitsKey(generation), userId, true);
+                }
+                if (!tuples.isEmpty()) {
+                    zSetOps.add(taggedUserIdsKey(generation), tuples);
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 新的一代全部写完后切换指针，旧的一代在宽限期后过期
+     *
+     * @param generation 重建完成的一代
+     */
+    public void finishRebuild(long generation) {
+        cachedAt = 0;
+        long oldGeneration = currentGeneration();
+        Set<String> tagNames = new HashSet<>();
+        String keyPrefix = tagKeyPrefix(generation);
+        for (String key : scanKeys(keyPrefix + "*" + KEY_SUFFIX)) {
+            tagNames.add(key.substring(keyPrefix.length(), key.length() - KEY_SUFFIX.length()));
+        }
+        writeStats(generation, tagNames);
+        // 指针是单个键，SET 是原子的，读者要么看到旧的一代，要么看到完整的新一代
+        redisTemplate.opsForValue().set(CURRENT_KEY, generation);
+        cachedGeneration = generation;
+        cachedAt = System.currentTimeMillis();
+        clearBuilding();
+        // 正在读旧一代的请求还能在宽限期内读完
+        expireGeneration(oldGeneration, searchConfig.getTagIndexGcGraceSeconds());
+        log.info("标签-用户索引已切换到第 {} 代，第 {} 代将在 {} 秒后回收",
+                generation, oldGeneration, searchConfig.getTagIndexGcGraceSeconds());
+    }
+
+    /**
+     * 重建失败时丢弃写了一半的一代，读者继续使用当前一代
+     *
+     * @param generation 正在重建的一代
+     */
+    public void abortRebuild(long generation) {
+        clearBuilding();
+        expireGeneration(generation, 0);
+        log.warn("已放弃标签-用户索引第 {} 代，继续使用第 {} 代", generation, currentGeneration());
+    }
+
+    /**
+     * 当前一代的倒排表，按需从 Redis 读取集合，供布尔标签查询在本地求值
+     * 同一个对象内的所有读取来自同一代，读过的集合会被复用；分类用一次 SUNION 合并其子标签集合
+     */
+    public TagPostings postings() {
+        long generation = currentGeneration();
+        Map<String, RoaringBitmap> loaded = new HashMap<>();
+        return new TagPostings() {
+            private RoaringBitmap all;
+
+            @Override
+            public RoaringBitmap posting(String tagName) {
+                return loaded.computeIfAbsent(tagName, k -> {
+                    Set<String> children = tagCategories.children(k);
+                    if (children == null || children.isEmpty()) {
+                        return toBitmap(redisTemplate.opsForSet().members(userIdsKey(generation, k)));
+                    }
+                    List<String> childKeys = new ArrayList<>(children.size());
+                    for (String child : children) {
+                        childKeys.add(userIdsKey(generation, child));
+                    }
+                    return toBitmap(redisTemplate.opsForSet().union(userIdsKey(generation, k), childKeys));
+                });
+            }
+
+            @Override
+            public RoaringBitmap all() {
+                if (all == null) {
+                    // 位图一次 GET 即可读完；升级后尚未对账的一代还没有位图，退回有序集合
+                    all = readBits(taggedBitsKey(generation));
+                    if (all == null) {
+                        all = toBitmap(redisTemplate.opsForZSet().range(taggedUserIdsKey(generation), 0, -1));
+                    }
+                }
+                return all;
+            }
+        };
+    }
+
+    /**
+     * 把 Redis 返回的成员转换为用户 id（Jackson 反序列化后可能是 Integer、Long 或 String）
+     */
+    public static List<Long> toUserIdList(Collection<Object> idObjs) {
+        List<Long> userIdList = new ArrayList<>(idObjs.size());
+        for (Object idObj : idObjs) {
+            try {
+                if (idObj instanceof Long) {
+                    userIdList.add((Long) idObj);
+                } else if (idObj instanceof Integer) {
+                    userIdList.add(((Integer) idObj).longValue());
+                } else if (idObj instanceof String) {
+                    userIdList.add(Long.parseLong((String) idObj));
+                }
+            } catch (Exception e) {
+                log.error("无法将对象转换为Long: {}", idObj);
+            }
+        }
+        return userIdList;
+    }
+
+    private void apply(long userId, Set<String> removedTags, Set<String> addedTags, boolean tagged) {
+        try {
+            List<Long> generations = new ArrayList<>(2);
+            generations.add(currentGeneration());
+            Long building = toLong(redisTemplate.opsForValue().get(BUILDING_KEY));
+            if (building != null && !generations.contains(building)) {
+                generations.add(building);
+            }
+            for (long generation : generations) {
+                List<String> keys = new ArrayList<>(removedTags.size() + addedTags.size() + 3);
+                List<Object> args = new ArrayList<>((removedTags.size() + addedTags.size() + 1) * 2);
+                keys.add(statsKey(generation));
+                keys.add(taggedUserIdsKey(generation));
+                keys.add(taggedBitsKey(generation));
+                args.add(String.valueOf(userId));
+                args.add(tagged ? "1" : "0");
+                for (String tagName : removedTags) {
+                    keys.add(userIdsKey(generation, tagName));
+                    args.add(tagName);
+                    args.add("0");
+                }
+                for (String tagName : addedTags) {
+                    keys.add(userIdsKey(generation, tagName));
+                    args.add(tagName);
+                    args.add("1");
+                }
+                redisTemplate.execute(APPLY_SCRIPT, SCRIPT_ARGS_SERIALIZER, SCRIPT_RESULT_SERIALIZER, keys, args.toArray());
+            }
+            log.info("用户 {} 的标签索引已增量更新，移除 {}，新增 {}", userId, removedTags, addedTags);
+        } catch (Exception e) {
+            log.error("增量更新用户 {} 的标签索引失败，等待定时任务对账修正: {}", userId, e.getMessage());
+        }
+    }
+
+    /**
+     * 按集合的实际大小重写统计哈希并标记为完整，分批在 Redis 内原子地读写，
+     * 不会丢掉同时发生的增量 HINCRBY；已经没有用户的标签从统计中删除
+     *
+     * @param tagNames 需要统计的标签，包括刚被删除集合的标签
+     */
+    private void writeStats(long generation, Collection<String> tagNames) {
+        try {
+            String statsKey = statsKey(generation);
+            List<String> tagList = new ArrayList<>(tagNames);
+            for (int from = 0; from < tagList.size(); from += BATCH_SIZE) {
+                List<String> batch = tagList.subList(from, Math.min(from + BATCH_SIZE, tagList.size()));
+                List<String> keys = new ArrayList<>(batch.size() + 1);
+                keys.add(statsKey);
+                for (String tagName : batch) {
+                    keys.add(userIdsKey(generation, tagName));
+                }
+                redisTemplate.execute(STATS_SCRIPT, SCRIPT_ARGS_SERIALIZER, SCRIPT_RESULT_SERIALIZER, keys, batch.toArray());
+            }
+            redisTemplate.opsForHash().put(statsKey, STATS_READY_FIELD, 1);
+        } catch (Exception e) {
+            log.error("写入标签统计失败: {}", e.getMessage());
+        }
+    }
+
+    private void clearBuilding() {
+        try {
+            redisTemplate.delete(BUILDING_KEY);
+        } catch (Exception e) {
+            log.warn("清除重建标记失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 让某一代的所有键在宽限期后过期
+     */
+    private void expireGeneration(long generation, long graceSeconds) {
+        try {
+            Set<String> keys = new HashSet<>(scanKeys(userIdsKey(generation, "*")));
+            keys.add(taggedUserIdsKey(generation));
+            keys.add(taggedBitsKey(generation));
+            keys.add(statsKey(generation));
+            for (String key : keys) {
+                if (graceSeconds <= 0) {
+                    redisTemplate.delete(key);
+                } else {
+                    redisTemplate.expire(key, graceSeconds, TimeUnit.SECONDS);
+                }
+            }
+        } catch (Exception e) {
+            log.warn("回收标签索引第 {} 代失败: {}", generation, e.getMessage());
+        }
+    }
+
+    private static String generationPrefix(long generation) {
+        return generation == 0 ? "" : "tagidx:v" + generation + ":";
+    }
+
+    private static String tagKeyPrefix(long generation) {
+        return generationPrefix(generation) + TAG_KEY_PREFIX;
+    }
+
+    private static RoaringBitmap toBitmap(Collection<Object> members) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        if (members == null) {
+            return bitmap;
+        }
+        for (Long userId : toUserIdList(members)) {
+            // 位图按 32 位无符号整数存储 id
+            if (userId >= 0 && userId <= 0xFFFFFFFFL) {
+                bitmap.add(userId.intValue());
+            }
+        }
+        return bitmap;
+    }
+
+    private static Long toLong(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof String) {
+            return Long.parseLong((String) value);
+        }
+        return null;
+    }
+
+    /**
+     * 对比现有成员和快照中应有的成员
+     *
+     * @param tagName 标签名，有标签用户的有序集合和位图为 null
+     * @return 偏差，没有偏差时返回 null
+     */
+    private Drift diff(String key, String tagName, DriftKind kind, Roaring64NavigableMap actualIds,
+                       Roaring64NavigableMap expectedIds) {
+        Roaring64NavigableMap missing = new Roaring64NavigableMap();
+        missing.or(expectedIds);
+        missing.andNot(actualIds);
+        Roaring64NavigableMap extra = new Roaring64NavigableMap();
+        extra.or(actualIds);
+        extra.andNot(expectedIds);
+        if (missing.isEmpty() && extra.isEmpty()) {
+            return null;
+        }
+        return new Drift(key, tagName, kind, toIdList(missing), toIdList(extra));
+    }
+
+    /**
+     * 按数据库的最新数据修正偏差，分批补充和移除；最新数据与 Redis 一致的偏差（对账期间的增量更新）跳过
+     *
+     * @param latestTags 有偏差的用户 => 最新的标签（已删除或状态异常的用户不在其中）
+     * @param fixed      累加 [补充数, 移除数]
+     * @return 跳过的偏差数
+     */
+    private long fix(Drift drift, Map<Long, Set<String>> latestTags, long[] fixed) {
+        List<Long> missing = new ArrayList<>();
+        for (Long userId : drift.missing) {
+            if (belongs(drift, latestTags.get(userId))) {
+                missing.add(userId);
+            }
+        }
+        List<Long> extra = new ArrayList<>();
+        for (Long userId : drift.extra) {
+            if (!belongs(drift, latestTags.get(userId))) {
+                extra.add(userId);
+            }
+        }
+        if (drift.kind == DriftKind.BITS) {
+            setBits(drift.key, missing, extra);
+        }
+        for (int from = 0; drift.kind != DriftKind.BITS && from < missing.size(); from += BATCH_SIZE) {
+            List<Long> batch = missing.subList(from, Math.min(from + BATCH_SIZE, missing.size()));
+            if (drift.kind == DriftKind.ZSET) {
+                Set<ZSetOperations.TypedTuple<Object>> tuples = new HashSet<>();
+                for (Long userId : batch) {
+                    tuples.add(new DefaultTypedTuple<>(userId, userId.doubleValue()));
+                }
+                redisTemplate.opsForZSet().add(drift.key, tuples);
+            } else {
+                redisTemplate.opsForSet().add(drift.key, batch.toArray());
+            }
+        }
+        for (int from = 0; drift.kind != DriftKind.BITS && from < extra.size(); from += BATCH_SIZE) {
+            Object[] batch = extra.subList(from, Math.min(from + BATCH_SIZE, extra.size())).toArray();
+            if (drift.kind == DriftKind.ZSET) {
+                redisTemplate.opsForZSet().remove(drift.key, batch);
+            } else {
+                redisTemplate.opsForSet().remove(drift.key, batch);
+            }
+        }
+        if (!missing.isEmpty() || !extra.isEmpty()) {
+            log.info("索引 {} 存在偏差，补充 {} 个成员，移除 {} 个成员", drift.key, missing.size(), extra.size());
+        }
+        fixed[0] += missing.size();
+        fixed[1] += extra.size();
+        return drift.missing.size() + drift.extra.size() - missing.size() - extra.size();
+    }
+
+    /**
+     * 在一个 pipeline 中置位和清零位图中的用户
+     */
+    private void setBits(String key, List<Long> setIds, List<Long> clearIds) {
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                ValueOperations<String, Object> valueOps = (ValueOperations<String, Object>) operations.opsForValue();
+                for (Long userId : setIds) {
+                    valueOps.setBit(key, userId, true);
+                }
+                for (Long userId : clearIds) {
+                    valueOps.setBit(key, userId, false);
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 读取 Redis 位图，偏移量即用户 id（每个字节的最高位是最小的偏移量）
+     *
+     * @return 用户 id 位图，键不存在时为 null
+     */
+    private RoaringBitmap readBits(String key) {
+        byte[] bytes = redisTemplate.execute((RedisCallback<byte[]>) connection ->
+                connection.get(key.getBytes(StandardCharsets.UTF_8)));
+        if (bytes == null) {
+            return null;
+        }
+        RoaringBitmap bitmap = new RoaringBitmap();
+        for (int i = 0; i < bytes.length; i++) {
+            int b = bytes[i] & 0xFF;
+            while (b != 0) {
+                int bit = Integer.numberOfLeadingZeros(b) - 24;
+                bitmap.add((int) ((long) i * 8 + bit));
+                b &= ~(0x80 >>> bit);
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * 按最新的标签，用户是否应在该索引中
+     */
+    private static boolean belongs(Drift drift, Set<String> tags) {
+        if (tags == null || tags.isEmpty()) {
+            return false;
+        }
+        return drift.tagName == null || tags.contains(drift.tagName);
+    }
+
+    /**
+     * 快照中没有的标签集合，其中是否有按最新数据确实拥有该标签的用户
+     */
+    private boolean hasLatestMember(String key, String tagName, Set<Long> checkedUserIds) {
+        Roaring64NavigableMap members = scanSetMembers(key);
+        if (members.isEmpty()) {
+            return false;
+        }
+        List<Long> userIds = new ArrayList<>();
+        LongIterator iterator = members.getLongIterator();
+        while (iterator.hasNext()) {
+            long userId = iterator.next();
+            if (!checkedUserIds.contains(userId)) {
+                userIds.add(userId);
+            }
+        }
+        Map<Long, Set<String>> latestTags = loadLatestTags(userIds);
+        for (Set<String> tags : latestTags.values()) {
+            if (tags.contains(tagName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 从数据库分批读取用户最新的标签，只包含未删除且状态正常的用户
+     */
+    private Map<Long, Set<String>> loadLatestTags(Collection<Long> userIds) {
+        Map<Long, Set<String>> latestTags = new HashMap<>(userIds.size() * 2);
+        List<Long> idList = new ArrayList<>(userIds);
+        for (int from = 0; from < idList.size(); from += BATCH_SIZE) {
+            QueryWrapper<User> queryWrapper = new QueryWrapper<>();
+            queryWrapper.select("id", "tags", "userStatus")
+                    .in("id", idList.subList(from, Math.min(from + BATCH_SIZE, idList.size())));
+            for (User user : userMapper.selectList(queryWrapper)) {
+                if (indexable(user.getUserStatus())) {
+                    latestTags.put(user.getId(), parse(user.getId(), user.getTags()));
+                }
+            }
+        }
+        return latestTags;
+    }
+
+    /**
+     * 只有状态正常的用户进入索引
+     */
+    private static boolean indexable(Integer userStatus) {
+        return userStatus == null || userStatus == 0;
+    }
+
+    /**
+     * 用 SCAN 代替 KEYS 查找键，不阻塞 Redis
+     */
+    private Set<String> scanKeys(String pattern) {
+        Set<String> keys = redisTemplate.execute((RedisCallback<Set<String>>) connection -> {
+            Set<String> result = new HashSet<>();
+            Cursor<byte[]> cursor = connection.scan(ScanOptions.scanOptions().match(pattern).count(BATCH_SIZE).build());
+            try {
+                while (cursor.hasNext()) {
+                    result.add(new String(cursor.next(), StandardCharsets.UTF_8));
+                }
+            } finally {
+                try {
+                    cursor.close();
+                } catch (Exception e) {
+                    log.warn("关闭 SCAN 游标失败: {}", e.getMessage());
+                }
+            }
+            return result;
+        });
+        return keys == null ? Collections.emptySet() : keys;
+    }
+
+    private Set<String> parse(long userId, String tagsJson) {
+        if (StringUtils.isBlank(tagsJson)) {
+            return Collections.emptySet();
+        }
+        try {
+            List<String> tagList = gson.fromJson(tagsJson, TAG_LIST_TYPE);
+            if (tagList == null) {
+                return Collections.emptySet();
+            }
+            Set<String> tags = new HashSet<>(tagList);
+            tags.remove(null);
+            return tags;
+        } catch (Exception e) {
+            log.warn("解析用户 {} 的标签失败: {}", userId, e.getMessage());
+            return Collections.emptySet();
+        }
+    }
+
+    /**
+     * 用 SSCAN 分批读取集合成员，不会一次把大集合读进内存，也不会长时间阻塞 Redis
+     */
+    private Roaring64NavigableMap scanSetMembers(String key) {
+        Roaring64NavigableMap userIds = new Roaring64NavigableMap();
+        Cursor<Object> cursor = redisTemplate.opsForSet().scan(key, ScanOptions.scanOptions().count(BATCH_SIZE).build());
+        try {
+            while (cursor.hasNext()) {
+                addUserId(userIds, cursor.next());
+            }
+        } finally {
+            closeCursor(cursor);
+        }
+        return userIds;
+    }
+
+    /**
+     * 用 ZSCAN 分批读取有序集合成员
+     */
+    private Roaring64NavigableMap scanZSetMembers(String key) {
+        Roaring64NavigableMap userIds = new Roaring64NavigableMap();
+        Cursor<ZSetOperations.TypedTuple<Object>> cursor =
+                redisTemplate.opsForZSet().scan(key, ScanOptions.scanOptions().count(BATCH_SIZE).build());
+        try {
+            while (cursor.hasNext()) {
+                addUserId(userIds, cursor.next().getValue());
+            }
+        } finally {
+            closeCursor(cursor);
+        }
+        return userIds;
+    }
+
+    private static void closeCursor(Cursor<?> cursor) {
+        try {
+            cursor.close();
+        } catch (Exception e) {
+            log.warn("关闭 SCAN 游标失败: {}", e.getMessage());
+        }
+    }
+
+    private static void addUserId(Roaring64NavigableMap userIds, Object member) {
+        try {
+            Long userId = toLong(member);
+            if (userId != null) {
+                userIds.addLong(userId);
+            }
+        } catch (NumberFormatException e) {
+            log.error("无法将对象转换为Long: {}", member);
+        }
+    }
+
+    private static Object[] toMembers(Roaring64NavigableMap userIds) {
+        long[] ids = userIds.toArray();
+        Object[] members = new Object[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            members[i] = ids[i];
+        }
+        return members;
+    }
+
+    private static List<Long> toIdList(Roaring64NavigableMap userIds) {
+        List<Long> idList = new ArrayList<>((int) userIds.getLongCardinality());
+        LongIterator iterator = userIds.getLongIterator();
+        while (iterator.hasNext()) {
+            idList.add(iterator.next());
+        }
+        return idList;
+    }
+
+    private enum DriftKind {
+        SET, ZSET, BITS
+    }
+
+    /**
+     * 某个索引键与快照的偏差
+     */
+    private static class Drift {
+
+        private final String key;
+
+        /**
+         * 标签名，有标签用户的有序集合和位图为 null
+         */
+        private final String tagName;
+
+        private final DriftKind kind;
+
+        private final List<Long> missing;
+
+        private final List<Long> extra;
+
+        private Drift(String key, String tagName, DriftKind kind, List<Long> missing, List<Long> extra) {
+            this.key = key;
+            this.tagName = tagName;
+            this.kind = kind;
+            this.missing = missing;
+            this.extra = extra;
+        }
+    }
+}
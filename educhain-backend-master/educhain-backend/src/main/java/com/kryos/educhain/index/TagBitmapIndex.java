@@ -0,0 +1,419 @@
+package com.kryos.educhain.index;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.kryos.educhain.mapper.UserMapper;
+import com.kryos.educhain.model.domain.User;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.PeekableIntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 进程内的 标签 => 用户 id 压缩位图索引（Roaring Bitmap）
+ * 只收录状态正常的用户，求交、计数和分页都在本地完成，标签搜索不再依赖 Redis 集合
+ * 位图发布后不再修改，更新时复制一份改完再替换，读操作无需加锁
+ * 索引是每个实例各自一份：本实例的修改同时记入变更日志 {@link TagChangeLog}，
+ * 各实例每隔几秒读取新的变更，从数据库重新读取这些用户后更新本地索引
+ * 另外为每个分类（父标签）预先求好子标签位图的并集，按分类搜索只需一次查找；
+ * 用户修改标签时增量维护，分类本身变化时整体重算
+ */
+@Component
+@Slf4j
+public class TagBitmapIndex implements TagPostings {
+
+    private static final Type TAG_LIST_TYPE = new TypeToken<List<String>>() {
+    }.getType();
+
+    private static final RoaringBitmap EMPTY = new RoaringBitmap();
+
+    @Resource
+    private UserMapper userMapper;
+
+    @Resource
+    private TagChangeLog tagChangeLog;
+
+    @Resource
+    private TagCategories tagCategories;
+
+    private final Gson gson = new Gson();
+
+    private volatile Map<String, RoaringBitmap> postings;
+
+    private volatile CategoryUnions categoryUnions;
+
+    /**
+     * 所有有标签的用户，随增量更新写时复制维护，NOT 查询直接以它为全集
+     */
+    private volatile RoaringBitmap taggedUsers = EMPTY;
+
+    /**
+     * 本地索引已同步到的变更序号
+     */
+    private volatile long appliedSeq;
+
+    /**
+     * 同时拥有所有标签的用户，分类按其下任一子标签匹配
+     *
+     * @param tagNameList 标签列表
+     * @return 用户 id 位图（只读，不要修改），任一标签不存在时为空位图
+     */
+    public RoaringBitmap intersect(List<String> tagNameList) {
+        List<RoaringBitmap> bitmaps = new ArrayList<>(tagNameList.size());
+        for (String tagName : new HashSet<>(tagNameList)) {
+            RoaringBitmap bitmap = posting(tagName);
+            if (bitmap.isEmpty()) {
+                return EMPTY;
+            }
+            bitmaps.add(bitmap);
+        }
+        if (bitmaps.isEmpty()) {
+            return EMPTY;
+        }
+        // 从最小的位图开始求交，中间结果一旦为空就结束
+        bitmaps.sort(Comparator.comparingInt(RoaringBitmap::getCardinality));
+        RoaringBitmap result = bitmaps.get(0);
+        for (int i = 1; i < bitmaps.size() && !result.isEmpty(); i++) {
+            result = RoaringBitmap.and(result, bitmaps.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * 拥有该标签的用户；分类返回预先求好的子标签并集（含直接拥有分类名的用户）
+     */
+    @Override
+    public RoaringBitmap posting(String tagName) {
+        if (tagName == null) {
+            return EMPTY;
+        }
+        Map<String, RoaringBitmap> current = loadedPostings();
+        RoaringBitmap bitmap = tagCategories.isCategory(tagName)
+                ? loadedCategoryUnions().unions.get(tagName) : current.get(tagName);
+        return bitmap == null ? EMPTY : bitmap;
+    }
+
+    /**
+     * 标签的用户数，索引尚未加载时返回 null，不会触发加载（供标签联想等轻量路径使用）
+     */
+    public Long cardinalityIfLoaded(String tagName) {
+        Map<String, RoaringBitmap> current = postings;
+        if (current == null || tagName == null) {
+            return null;
+        }
+        RoaringBitmap bitmap = current.get(tagName);
+        return bitmap == null ? 0L : bitmap.getLongCardinality();
+    }
+
+    @Override
+    public RoaringBitmap all() {
+        loadedPostings();
+        return taggedUsers;
+    }
+
+    /**
+     * 按 id 升序取位图中的一页
+     *
+     * @param bitmap 用户 id 位图
+     * @param offset 跳过的数量
+     * @param limit  最多返回的数量
+     * @return 用户 id 列表
+     */
+    public static List<Long> slice(RoaringBitmap bitmap, long offset, int limit) {
+        long cardinality = bitmap.getLongCardinality();
+        if (offset < 0 || limit <= 0 || offset >= cardinality) {
+            return Collections.emptyList();
+        }
+        List<Long> userIdList = new ArrayList<>((int) Math.min(limit, cardinality - offset));
+        PeekableIntIterator iterator = bitmap.getIntIterator();
+        iterator.advanceIfNeeded(bitmap.select((int) offset));
+        while (iterator.hasNext() && userIdList.size() < limit) {
+            userIdList.add(Integer.toUnsignedLong(iterator.next()));
+        }
+        return userIdList;
+    }
+
+    /**
+     * 用户标签或状态变化后更新索引，并记入变更日志通知其他实例
+     *
+     * @param userId     用户 id
+     * @param tagsJson   新的标签 json
+     * @param userStatus 用户状态，非正常状态的用户从索引中移除
+     */
+    public void update(long userId, String tagsJson, Integer userStatus) {
+        apply(userId, tagsJson, userStatus);
+        tagChangeLog.publish(userId);
+    }
+
+    /**
+     * 移除用户（如用户被删除）
+     */
+    public void remove(long userId) {
+        update(userId, null, null);
+    }
+
+    /**
+     * 读取其他实例记入变更日志的修改，从数据库重新读取这些用户后更新本地索引
+     */
+    @Scheduled(fixedDelay = 5000)
+    public void syncChanges() {
+        if (postings == null) {
+            return;
+        }
+        try {
+            long fromSeq = appliedSeq;
+            TagChangeLog.Changes changes = tagChangeLog.read(fromSeq);
+            if (changes == null) {
+                return;
+            }
+            if (changes.isTruncated()) {
+                log.info("标签位图索引落后变更日志过多，全量重建");
+                reload();
+                return;
+            }
+            Set<Long> userIds = changes.getUserIds();
+            Map<Long, User> userMap = tagChangeLog.loadUsers(userIds);
+            for (Long userId : userIds) {
+                User user = userMap.get(userId);
+                // 查不到说明用户已被删除
+                apply(userId, user == null ? null : user.getTags(), user == null ? null : user.getUserStatus());
+            }
+            // 序号和日志原子写入，不大于该序号的变更要么已读到，要么被同一用户更新的序号覆盖
+            appliedSeq = changes.getSeq();
+            if (!userIds.isEmpty()) {
+                log.info("标签位图索引同步 {} 个用户的变更，序号 {} -> {}", userIds.size(), fromSeq, appliedSeq);
+            }
+        } catch (Exception e) {
+            log.warn("同步标签位图索引变更失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 更新本地索引
+     */
+    private synchronized void apply(long userId, String tagsJson, Integer userStatus) {
+        if (!indexable(userId)) {
+            return;
+        }
+        Map<String, RoaringBitmap> current = loadedPostings();
+        Set<String> newTags = userStatus != null && userStatus != 0 ? Collections.emptySet() : parse(userId, tagsJson);
+        int id = (int) userId;
+        Set<String> changedTags = new HashSet<>();
+        for (Map.Entry<String, RoaringBitmap> entry : current.entrySet()) {
+            if (!newTags.contains(entry.getKey()) && entry.getValue().contains(id)) {
+                RoaringBitmap copy = entry.getValue().clone();
+                copy.remove(id);
+                current.put(entry.getKey(), copy);
+                changedTags.add(entry.getKey());
+            }
+        }
+        for (String tagName : newTags) {
+            RoaringBitmap bitmap = current.get(tagName);
+            if (bitmap == null || !bitmap.contains(id)) {
+                RoaringBitmap copy = bitmap == null ? new RoaringBitmap() : bitmap.clone();
+                copy.add(id);
+                current.put(tagName, copy);
+                changedTags.add(tagName);
+            }
+        }
+        updateCategoryUnions(id, newTags, changedTags);
+        RoaringBitmap tagged = taggedUsers;
+        if (newTags.isEmpty() == tagged.contains(id)) {
+            RoaringBitmap copy = tagged.clone();
+            if (newTags.isEmpty()) {
+                copy.remove(id);
+            } else {
+                copy.add(id);
+            }
+            taggedUsers = copy;
+        }
+    }
+
+    /**
+     * 增量维护受影响分类的并集：用户仍拥有该分类或其任一子标签时在并集中，否则移除
+     */
+    private void updateCategoryUnions(int id, Set<String> newTags, Set<String> changedTags) {
+        CategoryUnions unions = categoryUnions;
+        if (unions == null || unions.loadCount != tagCategories.loadCount()) {
+            // 尚未计算或分类已变化，下次使用时整体重算
+            return;
+        }
+        Set<String> affectedCategories = new HashSet<>();
+        for (String tagName : changedTags) {
+            affectedCategories.addAll(tagCategories.categoriesOf(tagName));
+            if (tagCategories.isCategory(tagName)) {
+                affectedCategories.add(tagName);
+            }
+        }
+        for (String category : affectedCategories) {
+            Set<String> children = tagCategories.children(category);
+            if (children == null) {
+                continue;
+            }
+            boolean member = newTags.contains(category);
+            for (String child : children) {
+                if (member) {
+                    break;
+                }
+                member = newTags.contains(child);
+            }
+            RoaringBitmap union = unions.unions.getOrDefault(category, EMPTY);
+            if (member != union.contains(id)) {
+                RoaringBitmap copy = union.clone();
+                if (member) {
+                    copy.add(id);
+                } else {
+                    copy.remove(id);
+                }
+                unions.unions.put(category, copy);
+            }
+        }
+    }
+
+    /**
+     * 从数据库全量重建索引
+     */
+    public synchronized void reload() {
+        long start = System.currentTimeMillis();
+        // 扫描期间的变更序号更大，之后由 syncChanges 重放
+        long seq = tagChangeLog.currentSeq(appliedSeq);
+        Map<String, RoaringBitmap> newPostings = new HashMap<>();
+        userMapper.scanIdAndTags(context -> {
+            User user = context.getResultObject();
+            if (user.getUserStatus() != null && user.getUserStatus() != 0) {
+                return;
+            }
+            if (!indexable(user.getId())) {
+                return;
+            }
+            for (String tagName : parse(user.getId(), user.getTags())) {
+                newPostings.computeIfAbsent(tagName, k -> new RoaringBitmap()).add((int) user.getId());
+            }
+        });
+        long bytes = 0;
+        for (RoaringBitmap bitmap : newPostings.values()) {
+            bitmap.runOptimize();
+            bytes += bitmap.getSizeInBytes();
+        }
+        RoaringBitmap newTaggedUsers = FastAggregation.or(newPostings.values().iterator());
+        newTaggedUsers.runOptimize();
+        taggedUsers = newTaggedUsers;
+        postings = new ConcurrentHashMap<>(newPostings);
+        categoryUnions = null;
+        appliedSeq = seq;
+        log.info("标签位图索引加载完成，共 {} 个标签，占用约 {} KB，耗时 {} ms",
+                newPostings.size(), bytes / 1024, System.currentTimeMillis() - start);
+    }
+
+    private Map<String, RoaringBitmap> loadedPostings() {
+        Map<String, RoaringBitmap> current = postings;
+        if (current == null) {
+            synchronized (this) {
+                if (postings == null) {
+                    reload();
+                }
+                current = postings;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 分类并集，分类变化（或索引重建）后在首次使用时整体重算
+     */
+    private CategoryUnions loadedCategoryUnions() {
+        Map<String, RoaringBitmap> current = loadedPostings();
+        long loadCount = tagCategories.loadCount();
+        CategoryUnions unions = categoryUnions;
+        if (unions != null && unions.loadCount == loadCount) {
+            return unions;
+        }
+        synchronized (this) {
+            unions = categoryUnions;
+            if (unions != null && unions.loadCount == loadCount) {
+                return unions;
+            }
+            long start = System.currentTimeMillis();
+            Map<String, RoaringBitmap> newUnions = new ConcurrentHashMap<>();
+            for (Map.Entry<String, Set<String>> entry : tagCategories.all().entrySet()) {
+                List<RoaringBitmap> bitmaps = new ArrayList<>(entry.getValue().size() + 1);
+                RoaringBitmap own = current.get(entry.getKey());
+                if (own != null) {
+                    bitmaps.add(own);
+                }
+                for (String child : entry.getValue()) {
+                    RoaringBitmap bitmap = current.get(child);
+                    if (bitmap != null) {
+                        bitmaps.add(bitmap);
+                    }
+                }
+                RoaringBitmap union = FastAggregation.or(bitmaps.iterator());
+                union.runOptimize();
+                newUnions.put(entry.getKey(), union);
+            }
+            unions = new CategoryUnions(loadCount, newUnions);
+            categoryUnions = unions;
+            log.info("分类位图并集计算完成，共 {} 个分类，耗时 {} ms", newUnions.size(), System.currentTimeMillis() - start);
+            return unions;
+        }
+    }
+
+    /**
+     * 位图按 32 位无符号整数存储 id
+     */
+    private boolean indexable(long userId) {
+        if (userId < 0 || userId > 0xFFFFFFFFL) {
+            log.warn("用户 id {} 超出位图索引范围，跳过", userId);
+            return false;
+        }
+        return true;
+    }
+
+    private Set<String> parse(long userId, String tagsJson) {
+        if (StringUtils.isBlank(tagsJson)) {
+            return Collections.emptySet();
+        }
+        try {
+            List<String> tagList = gson.fromJson(tagsJson, TAG_LIST_TYPE);
+            if (tagList == null) {
+                return Collections.emptySet();
+            }
+            Set<String> tags = new HashSet<>(tagList);
+            tags.remove(null);
+            return tags;
+        } catch (Exception e) {
+            log.warn("解析用户 {} 的标签失败: {}", userId, e.getMessage());
+            return Collections.emptySet();
+        }
+    }
+
+    private static class CategoryUnions {
+
+        /**
+         * 计算时 TagCategories 的加载次数
+         */
+        private final long loadCount;
+
+        private final Map<String, RoaringBitmap> unions;
+
+        private CategoryUnions(long loadCount, Map<String, RoaringBitmap> unions) {
+            this.loadCount = loadCount;
+            this.unions = unions;
+        }
+    }
+}
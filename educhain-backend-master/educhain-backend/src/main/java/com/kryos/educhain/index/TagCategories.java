@@ -0,0 +1,223 @@
+package com.kryos.educhain.index;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.kryos.educhain.constant.UserConstant;
+import com.kryos.educhain.mapper.TagMapper;
+import com.kryos.educhain.mapper.UserMapper;
+import com.kryos.educhain.model.domain.Tag;
+import com.kryos.educhain.model.domain.User;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 标签分类（父标签 => 子标签名）
+ * 来自 tag 表的 parentId / isParent，一次查询加载；只有管理员创建的标签（userId 为空或属于管理员）
+ * 能挂在分类下，用户自定义标签不会改变分类的子标签
+ * 父子关系变化后本实例立即重新加载，同时 tag:category:version 递增，其他实例最多每 5 秒检查一次版本，变化后重新加载
+ */
+@Component
+@Slf4j
+public class TagCategories {
+
+    /**
+     * 标签分类版本号，分类的父子关系变化时 INCR
+     */
+    public static final String VERSION_KEY = "tag:category:version";
+
+    private static final long VERSION_CHECK_INTERVAL_MILLIS = 5000;
+
+    @Resource
+    private TagMapper tagMapper;
+
+    @Resource
+    private UserMapper userMapper;
+
+    @Resource
+    private RedisTemplate<String, Object> redisTemplate;
+
+    private volatile Snapshot snapshot;
+
+    private volatile long checkedAt;
+
+    /**
+     * 分类下的子标签
+     *
+     * @param tagName 标签名
+     * @return 子标签名集合（只读），不是分类时返回 null
+     */
+    public Set<String> children(String tagName) {
+        return tagName == null ? null : loadedSnapshot().children.get(tagName);
+    }
+
+    /**
+     * 是否是分类
+     */
+    public boolean isCategory(String tagName) {
+        return children(tagName) != null;
+    }
+
+    /**
+     * 标签列表中是否有分类
+     */
+    public boolean containsCategory(Collection<String> tagNames) {
+        for (String tagName : tagNames) {
+            if (isCategory(tagName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 子标签所属的分类（同名子标签可能挂在多个分类下）
+     *
+     * @return 分类名集合（只读），不属于任何分类时为空集合
+     */
+    public Set<String> categoriesOf(String tagName) {
+        Set<String> categories = tagName == null ? null : loadedSnapshot().parents.get(tagName);
+        return categories == null ? Collections.emptySet() : categories;
+    }
+
+    /**
+     * 所有分类及其子标签（只读）
+     */
+    public Map<String, Set<String>> all() {
+        return loadedSnapshot().children;
+    }
+
+    /**
+     * 加载次数，每次重新加载后变化，供派生数据（如分类位图）判断是否需要重算
+     */
+    public long loadCount() {
+        return loadedSnapshot().loadCount;
+    }
+
+    /**
+     * 从 tag 表重新加载
+     */
+    public synchronized void reload() {
+        Snapshot current = snapshot;
+        long remoteVersion = remoteVersion(current == null ? 0 : current.remoteVersion);
+        QueryWrapper<Tag> queryWrapper = new QueryWrapper<>();
+        queryWrapper.select("id", "tagName", "userId", "parentId", "isParent")
+                .eq("isDelete", 0)
+                .orderByAsc("id");
+        List<Tag> tagList = tagMapper.selectList(queryWrapper);
+        Set<Long> adminIds = adminIds();
+        Map<Long, String> categoryNames = new HashMap<>();
+        for (Tag tag : tagList) {
+            if (tag.getIsParent() != null && tag.getIsParent() == 1 && StringUtils.isNotBlank(tag.getTagName())) {
+                categoryNames.put(tag.getId(), tag.getTagName());
+            }
+        }
+        Map<String, Set<String>> children = new HashMap<>();
+        for (String categoryName : categoryNames.values()) {
+            children.computeIfAbsent(categoryName, k -> new LinkedHashSet<>());
+        }
+        Map<String, Set<String>> parents = new HashMap<>();
+        for (Tag tag : tagList) {
+            String categoryName = tag.getParentId() == null ? null : categoryNames.get(tag.getParentId());
+            if (categoryName == null || categoryNames.containsKey(tag.getId()) || StringUtils.isBlank(tag.getTagName())) {
+                continue;
+            }
+            if (tag.getUserId() != null && !adminIds.contains(tag.getUserId())) {
+                continue;
+            }
+            children.get(categoryName).add(tag.getTagName());
+            parents.computeIfAbsent(tag.getTagName(), k -> new LinkedHashSet<>()).add(categoryName);
+        }
+        children.replaceAll((k, v) -> Collections.unmodifiableSet(v));
+        parents.replaceAll((k, v) -> Collections.unmodifiableSet(v));
+        long loadCount = current == null ? 1 : current.loadCount + 1;
+        snapshot = new Snapshot(remoteVersion, loadCount, Collections.unmodifiableMap(children),
+                Collections.unmodifiableMap(parents));
+        checkedAt = System.currentTimeMillis();
+        log.info("标签分类加载完成，共 {} 个分类，{} 个子标签，版本 {}", children.size(), parents.size(), remoteVersion);
+    }
+
+    /**
+     * 管理员的用户 id
+     */
+    private Set<Long> adminIds() {
+        QueryWrapper<User> queryWrapper = new QueryWrapper<>();
+        queryWrapper.select("id").eq("userRole", UserConstant.ADMIN_ROLE);
+        Set<Long> adminIds = new HashSet<>();
+        for (User user : userMapper.selectList(queryWrapper)) {
+            adminIds.add(user.getId());
+        }
+        return adminIds;
+    }
+
+    private Snapshot loadedSnapshot() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                if (snapshot == null) {
+                    reload();
+                }
+                return snapshot;
+            }
+        }
+        long now = System.currentTimeMillis();
+        if (now - checkedAt < VERSION_CHECK_INTERVAL_MILLIS) {
+            return current;
+        }
+        checkedAt = now;
+        if (remoteVersion(current.remoteVersion) != current.remoteVersion) {
+            synchronized (this) {
+                if (snapshot == current) {
+                    reload();
+                }
+                return snapshot;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 读取 Redis 中的版本号，失败时沿用本地版本
+     */
+    private long remoteVersion(long fallback) {
+        try {
+            Object version = redisTemplate.opsForValue().get(VERSION_KEY);
+            return version instanceof Number ? ((Number) version).longValue() : 0;
+        } catch (Exception e) {
+            log.warn("读取标签分类版本失败: {}", e.getMessage());
+            return fallback;
+        }
+    }
+
+    private static class Snapshot {
+
+        private final long remoteVersion;
+
+        private final long loadCount;
+
+        private final Map<String, Set<String>> children;
+
+        /**
+         * 子标签名 => 所属分类
+         */
+        private final Map<String, Set<String>> parents;
+
+        private Snapshot(long remoteVersion, long loadCount, Map<String, Set<String>> children,
+                         Map<String, Set<String>> parents) {
+            this.remoteVersion = remoteVersion;
+            this.loadCount = loadCount;
+            this.children = children;
+            this.parents = parents;
+        }
+    }
+}
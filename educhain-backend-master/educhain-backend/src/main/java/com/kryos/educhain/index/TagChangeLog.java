@@ -0,0 +1,152 @@
+package com.kryos.educhain.index;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.kryos.educhain.mapper.UserMapper;
+import com.kryos.educhain.model.domain.User;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 用户标签变更日志 tag:bitmap:changes（成员为用户 id，分数为序号，同一用户只保留最新的序号）
+ * 用户标签或状态变化、事务提交后记入日志；各实例的进程内索引（标签位图、标签画像、LSH）
+ * 各自记录已同步到的序号，定时读取新的变更，从数据库重新读取这些用户后更新本地数据
+ */
+@Component
+@Slf4j
+public class TagChangeLog {
+
+    private static final String CHANGES_KEY = "tag:bitmap:changes";
+
+    private static final String SEQ_KEY = "tag:bitmap:seq";
+
+    /**
+     * 变更日志保留的用户数，落后更多的实例直接全量重建
+     */
+    private static final int MAX_CHANGES = 10000;
+
+    private static final RedisScript<Long> PUBLISH_SCRIPT = new DefaultRedisScript<>(
+            "local seq = redis.call('INCR', KEYS[1]) "
+                    + "redis.call('ZADD', KEYS[2], seq, ARGV[1]) "
+                    + "redis.call('ZREMRANGEBYRANK', KEYS[2], 0, -tonumber(ARGV[2]) - 1) "
+                    + "return seq", Long.class);
+
+    @Resource
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Resource
+    private UserMapper userMapper;
+
+    /**
+     * 记入变更日志，只保留最近 MAX_CHANGES 个用户
+     * 取序号和写日志在同一个脚本中完成，读到某个序号时，不大于它的变更都已在日志中
+     * 应在数据库事务提交后调用，其他实例读到变更时一定能查到新数据
+     */
+    public void publish(long userId) {
+        try {
+            redisTemplate.execute(PUBLISH_SCRIPT, Arrays.asList(SEQ_KEY, CHANGES_KEY), userId, MAX_CHANGES);
+        } catch (Exception e) {
+            log.warn("记录用户 {} 的标签变更失败，其他实例在下次重建前可能读到旧数据: {}", userId, e.getMessage());
+        }
+    }
+
+    /**
+     * 当前序号，全量重建前读取，扫描期间的变更序号更大，之后重放
+     *
+     * @param fallback Redis 不可用时沿用的序号
+     */
+    public long currentSeq(long fallback) {
+        try {
+            Object seq = redisTemplate.opsForValue().get(SEQ_KEY);
+            return seq instanceof Number ? ((Number) seq).longValue() : 0;
+        } catch (Exception e) {
+            log.warn("读取标签变更序号失败: {}", e.getMessage());
+            return fallback;
+        }
+    }
+
+    /**
+     * 读取 fromSeq 之后的变更
+     *
+     * @param fromSeq 已同步到的序号
+     * @return 新的变更，没有新变更时返回 null
+     */
+    public Changes read(long fromSeq) {
+        long remoteSeq = currentSeq(fromSeq);
+        if (remoteSeq <= fromSeq) {
+            return null;
+        }
+        Set<Object> members = redisTemplate.opsForZSet().rangeByScore(CHANGES_KEY, fromSeq + 1, remoteSeq);
+        Long retained = redisTemplate.opsForZSet().zCard(CHANGES_KEY);
+        // 日志已满且全部是新变更，更早的可能已被截断
+        boolean truncated = retained != null && retained >= MAX_CHANGES && members != null && members.size() >= retained;
+        Set<Long> userIds = members == null ? Collections.emptySet()
+                : new LinkedHashSet<>(RedisTagUserIndex.toUserIdList(members));
+        return new Changes(remoteSeq, userIds, truncated);
+    }
+
+    /**
+     * 从数据库读取变更用户当前的标签和状态
+     *
+     * @return 用户 id => 用户，查不到的用户（已删除）不在结果中
+     */
+    public Map<Long, User> loadUsers(Collection<Long> userIds) {
+        Map<Long, User> userMap = new HashMap<>();
+        if (userIds.isEmpty()) {
+            return userMap;
+        }
+        QueryWrapper<User> queryWrapper = new QueryWrapper<>();
+        queryWrapper.select("id", "tags", "userStatus").in("id", userIds);
+        for (User user : userMapper.selectList(queryWrapper)) {
+            userMap.put(user.getId(), user);
+        }
+        return userMap;
+    }
+
+    /**
+     * 一次读取到的变更
+     */
+    public static final class Changes {
+
+        /**
+         * 读取时的最新序号，应用完这些变更后即同步到该序号
+         */
+        private final long seq;
+
+        private final Set<Long> userIds;
+
+        /**
+         * 是否可能漏掉了被截断的变更，此时只能全量重建
+         */
+        private final boolean truncated;
+
+        private Changes(long seq, Set<Long> userIds, boolean truncated) {
+            this.seq = seq;
+            this.userIds = userIds;
+            this.truncated = truncated;
+        }
+
+        public long getSeq() {
+            return seq;
+        }
+
+        public Set<Long> getUserIds() {
+            return userIds;
+        }
+
+        public boolean isTruncated() {
+            return truncated;
+        }
+    }
+}
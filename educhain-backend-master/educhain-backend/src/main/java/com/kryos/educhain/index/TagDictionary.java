@@ -0,0 +1,111 @@
+package com.kryos.educhain.index;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.kryos.educhain.mapper.TagMapper;
+import com.kryos.educhain.model.domain.Tag;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 标签字典
+ * 把标签名映射为从 0 开始的稠密 int id，热路径上用 int 比较代替字符串比较
+ * 以 tag 表为种子，用户 json 里出现的未登记标签会追加分配 id；id 一经分配不再回收
+ */
+@Component
+@Slf4j
+public class TagDictionary {
+
+    @Resource
+    private TagMapper tagMapper;
+
+    private final Map<String, Integer> nameToId = new ConcurrentHashMap<>();
+
+    private final List<String> idToName = new CopyOnWriteArrayList<>();
+
+    private volatile boolean loaded = false;
+
+    /**
+     * 查询标签 id
+     *
+     * @param tagName 标签名
+     * @return 标签 id，未登记时返回 -1
+     */
+    public int idOf(String tagName) {
+        ensureLoaded();
+        if (tagName == null) {
+            return -1;
+        }
+        Integer id = nameToId.get(tagName);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * 查询标签 id，未登记时分配新 id
+     */
+    public int getOrAssign(String tagName) {
+        int id = idOf(tagName);
+        if (id >= 0 || tagName == null) {
+            return id;
+        }
+        synchronized (this) {
+            Integer existing = nameToId.get(tagName);
+            if (existing != null) {
+                return existing;
+            }
+            int newId = idToName.size();
+            idToName.add(tagName);
+            nameToId.put(tagName, newId);
+            return newId;
+        }
+    }
+
+    /**
+     * 根据 id 取标签名
+     */
+    public String nameOf(int id) {
+        ensureLoaded();
+        if (id < 0 || id >= idToName.size()) {
+            return null;
+        }
+        return idToName.get(id);
+    }
+
+    /**
+     * 已分配的 id 数量
+     */
+    public int size() {
+        ensureLoaded();
+        return idToName.size();
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+            QueryWrapper<Tag> queryWrapper = new QueryWrapper<>();
+            queryWrapper.select("id", "tagName");
+            queryWrapper.orderByAsc("id");
+            List<Tag> tagList = tagMapper.selectList(queryWrapper);
+            for (Tag tag : tagList) {
+                String tagName = tag.getTagName();
+                if (StringUtils.isNotBlank(tagName) && !nameToId.containsKey(tagName)) {
+                    nameToId.put(tagName, idToName.size());
+                    idToName.add(tagName);
+                }
+            }
+            loaded = true;
+            log.info("标签字典加载完成，共 {} 个标签", idToName.size());
+        }
+    }
+}
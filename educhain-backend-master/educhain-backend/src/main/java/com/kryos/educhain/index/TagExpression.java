@@ -0,0 +1,293 @@
+package com.kryos.educhain.index;
+
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+/**
+ * 布尔标签表达式（AND / OR / NOT），由 TagQueryParser 解析得到
+ * 求值时在倒排表上做交、并、差：AND 先按用户数从小到大求交，再减去其中的 NOT 条件；OR 一次性求并
+ */
+public abstract class TagExpression {
+
+    /**
+     * 若干标签的 AND
+     */
+    public static TagExpression allOf(Collection<String> tagNames) {
+        List<TagExpression> operands = new ArrayList<>(tagNames.size());
+        for (String tagName : new LinkedHashSet<>(tagNames)) {
+            operands.add(new Tag(tagName));
+        }
+        return operands.size() == 1 ? operands.get(0) : new And(operands);
+    }
+
+    /**
+     * 在倒排表上求值
+     *
+     * @param postings 倒排表
+     * @return 满足表达式的用户 id 位图（只读，不要修改）
+     */
+    public abstract RoaringBitmap evaluate(TagPostings postings);
+
+    /**
+     * 表达式中出现的所有标签
+     */
+    public Set<String> tags() {
+        Set<String> tags = new LinkedHashSet<>();
+        collectTags(tags);
+        return tags;
+    }
+
+    /**
+     * 如果表达式只是若干标签的 AND，返回这些标签，可以直接复用多标签搜索；否则返回 null
+     */
+    public List<String> conjunctionTags() {
+        return null;
+    }
+
+    /**
+     * 是否含有 NOT：结果依赖全体有标签的用户，任何用户的标签变化都可能影响它
+     */
+    public boolean containsNot() {
+        return false;
+    }
+
+    /**
+     * 替换表达式中的标签名（如拼写纠错），返回新的表达式
+     */
+    public abstract TagExpression mapTags(UnaryOperator<String> mapper);
+
+    /**
+     * 规范化的表达式文本：AND / OR 的子项排序，语义相同的写法得到相同的文本，可用作缓存键
+     */
+    @Override
+    public abstract String toString();
+
+    abstract void collectTags(Set<String> tags);
+
+    static final class Tag extends TagExpression {
+
+        private final String name;
+
+        Tag(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public RoaringBitmap evaluate(TagPostings postings) {
+            return postings.posting(name);
+        }
+
+        @Override
+        public List<String> conjunctionTags() {
+            return Collections.singletonList(name);
+        }
+
+        @Override
+        public TagExpression mapTags(UnaryOperator<String> mapper) {
+            return new Tag(mapper.apply(name));
+        }
+
+        @Override
+        void collectTags(Set<String> tags) {
+            tags.add(name);
+        }
+
+        @Override
+        public String toString() {
+            return "\"" + name.replace("\"", "") + "\"";
+        }
+    }
+
+    static final class Not extends TagExpression {
+
+        private final TagExpression operand;
+
+        Not(TagExpression operand) {
+            this.operand = operand;
+        }
+
+        TagExpression operand() {
+            return operand;
+        }
+
+        @Override
+        public RoaringBitmap evaluate(TagPostings postings) {
+            return RoaringBitmap.andNot(postings.all(), operand.evaluate(postings));
+        }
+
+        @Override
+        public boolean containsNot() {
+            return true;
+        }
+
+        @Override
+        public TagExpression mapTags(UnaryOperator<String> mapper) {
+            return new Not(operand.mapTags(mapper));
+        }
+
+        @Override
+        void collectTags(Set<String> tags) {
+            operand.collectTags(tags);
+        }
+
+        @Override
+        public String toString() {
+            return "NOT " + operand;
+        }
+    }
+
+    static final class And extends TagExpression {
+
+        private final List<TagExpression> operands;
+
+        And(List<TagExpression> operands) {
+            this.operands = operands;
+        }
+
+        List<TagExpression> operands() {
+            return operands;
+        }
+
+        @Override
+        public RoaringBitmap evaluate(TagPostings postings) {
+            List<RoaringBitmap> positives = new ArrayList<>();
+            List<TagExpression> negatives = new ArrayList<>();
+            for (TagExpression operand : operands) {
+                if (operand instanceof Not) {
+                    negatives.add(((Not) operand).operand);
+                } else {
+                    positives.add(operand.evaluate(postings));
+                }
+            }
+            RoaringBitmap result;
+            if (positives.isEmpty()) {
+                result = postings.all();
+            } else {
+                // 从最小的集合开始求交，中间结果一旦为空就结束
+                positives.sort(Comparator.comparingInt(RoaringBitmap::getCardinality));
+                result = positives.get(0);
+                for (int i = 1; i < positives.size() && !result.isEmpty(); i++) {
+                    result = RoaringBitmap.and(result, positives.get(i));
+                }
+            }
+            for (int i = 0; i < negatives.size() && !result.isEmpty(); i++) {
+                result = RoaringBitmap.andNot(result, negatives.get(i).evaluate(postings));
+            }
+            return result;
+        }
+
+        @Override
+        public boolean containsNot() {
+            for (TagExpression operand : operands) {
+                if (operand.containsNot()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public TagExpression mapTags(UnaryOperator<String> mapper) {
+            return new And(mapOperands(operands, mapper));
+        }
+
+        @Override
+        public List<String> conjunctionTags() {
+            List<String> tags = new ArrayList<>(operands.size());
+            for (TagExpression operand : operands) {
+                if (!(operand instanceof Tag)) {
+                    return null;
+                }
+                tags.add(((Tag) operand).name);
+            }
+            return tags;
+        }
+
+        @Override
+        void collectTags(Set<String> tags) {
+            for (TagExpression operand : operands) {
+                operand.collectTags(tags);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return join(operands, " AND ");
+        }
+    }
+
+    static final class Or extends TagExpression {
+
+        private final List<TagExpression> operands;
+
+        Or(List<TagExpression> operands) {
+            this.operands = operands;
+        }
+
+        List<TagExpression> operands() {
+            return operands;
+        }
+
+        @Override
+        public RoaringBitmap evaluate(TagPostings postings) {
+            RoaringBitmap[] bitmaps = new RoaringBitmap[operands.size()];
+            for (int i = 0; i < bitmaps.length; i++) {
+                bitmaps[i] = operands.get(i).evaluate(postings);
+            }
+            return FastAggregation.or(bitmaps);
+        }
+
+        @Override
+        public boolean containsNot() {
+            for (TagExpression operand : operands) {
+                if (operand.containsNot()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public TagExpression mapTags(UnaryOperator<String> mapper) {
+            return new Or(mapOperands(operands, mapper));
+        }
+
+        @Override
+        void collectTags(Set<String> tags) {
+            for (TagExpression operand : operands) {
+                operand.collectTags(tags);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return join(operands, " OR ");
+        }
+    }
+
+    private static List<TagExpression> mapOperands(List<TagExpression> operands, UnaryOperator<String> mapper) {
+        List<TagExpression> mapped = new ArrayList<>(operands.size());
+        for (TagExpression operand : operands) {
+            mapped.add(operand.mapTags(mapper));
+        }
+        return mapped;
+    }
+
+    private static String join(List<TagExpression> operands, String operator) {
+        List<String> parts = new ArrayList<>(operands.size());
+        for (TagExpression operand : operands) {
+            parts.add(operand.toString());
+        }
+        Collections.sort(parts);
+        return "(" + String.join(operator, parts) + ")";
+    }
+}
@@ -0,0 +1,151 @@
+package com.kryos.educhain.index;
+
+import com.kryos.educhain.config.SearchConfig;
+import com.kryos.educhain.model.vo.TagFacetVO;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * 标签搜索的"细化筛选"统计
+ * 对结果集中的用户只扫描一遍内存标签画像，按标签 id 在数组上计数，再取共现最多的前 N 个标签，
+ * 不需要为每个候选标签各做一次求交
+ * 结果集超过 facetSampleSize 时只扫描均匀抽取的样本：有倒排表时对样本选出的候选标签求交得到准确用户数，
+ * 否则按抽样比例估算
+ */
+@Component
+public class TagFacetCounter {
+
+    /**
+     * 抽样时多取的候选标签倍数，求交后再截取前 N 个，减少抽样误差造成的遗漏
+     */
+    private static final int CANDIDATE_FACTOR = 2;
+
+    @Resource
+    private TagProfileStore tagProfileStore;
+
+    @Resource
+    private TagDictionary tagDictionary;
+
+    @Resource
+    private SearchConfig searchConfig;
+
+    /**
+     * 统计位图中用户的共现标签
+     *
+     * @param userIds      结果集用户 id
+     * @param postings     倒排表，用于求准确的用户数；为 null 时按抽样比例估算
+     * @param excludedTags 不参与统计的标签（查询本身的标签）
+     * @param limit        返回的标签数
+     * @return 按用户数降序的标签
+     */
+    public List<TagFacetVO> count(RoaringBitmap userIds, TagPostings postings, Collection<String> excludedTags, int limit) {
+        // 先加载画像再按字典大小建计数数组，否则首次加载时分配的标签 id 都落在数组之外
+        tagProfileStore.ensureLoaded();
+        int[] counts = new int[tagDictionary.size()];
+        long cardinality = userIds.getLongCardinality();
+        int sampleSize = Math.max(1, searchConfig.getFacetSampleSize());
+        if (cardinality <= sampleSize) {
+            IntIterator iterator = userIds.getIntIterator();
+            while (iterator.hasNext()) {
+                accumulate(Integer.toUnsignedLong(iterator.next()), counts);
+            }
+            return top(counts, excludedTags, limit);
+        }
+        // 按排名均匀抽样
+        long step = cardinality / sampleSize;
+        int sampled = 0;
+        for (long rank = 0; rank < cardinality && sampled < sampleSize; rank += step) {
+            accumulate(Integer.toUnsignedLong(userIds.select((int) rank)), counts);
+            sampled++;
+        }
+        if (postings == null) {
+            return scale(top(counts, excludedTags, limit), cardinality, sampled);
+        }
+        List<TagFacetVO> candidates = top(counts, excludedTags, limit * CANDIDATE_FACTOR);
+        for (TagFacetVO candidate : candidates) {
+            candidate.setCount(RoaringBitmap.andCardinality(userIds, postings.posting(candidate.getTagName())));
+        }
+        candidates.sort((a, b) -> Long.compare(b.getCount(), a.getCount()));
+        return candidates.size() > limit ? new ArrayList<>(candidates.subList(0, limit)) : candidates;
+    }
+
+    /**
+     * 统计结果集样本的共现标签，用户数按样本占结果集的比例估算
+     *
+     * @param sample       结果集中抽取的用户 id
+     * @param total        结果集的用户数
+     * @param excludedTags 不参与统计的标签（查询本身的标签）
+     * @param limit        返回的标签数
+     */
+    public List<TagFacetVO> countSample(Collection<Long> sample, long total, Collection<String> excludedTags, int limit) {
+        tagProfileStore.ensureLoaded();
+        int[] counts = new int[tagDictionary.size()];
+        for (Long userId : sample) {
+            accumulate(userId, counts);
+        }
+        List<TagFacetVO> facets = top(counts, excludedTags, limit);
+        return sample.size() >= total ? facets : scale(facets, total, sample.size());
+    }
+
+    private void accumulate(long userId, int[] counts) {
+        TagProfile profile = tagProfileStore.get(userId);
+        if (profile == null) {
+            return;
+        }
+        for (int tagId : profile.getSortedTagIds()) {
+            // 统计过程中字典新分配的 id 不在本次计数范围内
+            if (tagId >= 0 && tagId < counts.length) {
+                counts[tagId]++;
+            }
+        }
+    }
+
+    private static List<TagFacetVO> scale(List<TagFacetVO> facets, long total, long sampled) {
+        if (sampled <= 0) {
+            return facets;
+        }
+        for (TagFacetVO facet : facets) {
+            facet.setCount(Math.round((double) facet.getCount() * total / sampled));
+        }
+        return facets;
+    }
+
+    private List<TagFacetVO> top(int[] counts, Collection<String> excludedTags, int limit) {
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+        for (String tagName : excludedTags) {
+            int tagId = tagDictionary.idOf(tagName);
+            if (tagId >= 0 && tagId < counts.length) {
+                counts[tagId] = 0;
+            }
+        }
+        // 小顶堆保留前 N 个，用户数相同时 id 小的优先，结果稳定
+        PriorityQueue<Integer> heap = new PriorityQueue<>(limit + 1, (a, b) ->
+                counts[a] != counts[b] ? Integer.compare(counts[a], counts[b]) : Integer.compare(b, a));
+        for (int tagId = 0; tagId < counts.length; tagId++) {
+            if (counts[tagId] == 0) {
+                continue;
+            }
+            heap.offer(tagId);
+            if (heap.size() > limit) {
+                heap.poll();
+            }
+        }
+        List<TagFacetVO> facets = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            int tagId = heap.poll();
+            facets.add(new TagFacetVO(tagDictionary.nameOf(tagId), counts[tagId]));
+        }
+        Collections.reverse(facets);
+        return facets;
+    }
+}
@@ -0,0 +1,24 @@
+package com.kryos.educhain.index;
+
+import org.roaringbitmap.RoaringBitmap;
+
+/**
+ * 标签 => 用户 id 倒排表，供布尔标签查询求值
+ */
+public interface TagPostings {
+
+    /**
+     * 拥有该标签的用户
+     *
+     * @param tagName 标签名
+     * @return 用户 id 位图（只读，不要修改），标签不存在时为空位图
+     */
+    RoaringBitmap posting(String tagName);
+
+    /**
+     * 所有有标签的用户，NOT 没有可减的正向条件时以它为全集
+     *
+     * @return 用户 id 位图（只读，不要修改）
+     */
+    RoaringBitmap all();
+}
@@ -0,0 +1,78 @@
+package com.kryos.educhain.index;
+
+import java.util.Arrays;
+
+/**
+ * 用户标签画像
+ * 保存用户标签在 {@link TagDictionary} 中的 id：原始顺序用于编辑距离，有序副本用于求交集
+ */
+public final class TagProfile {
+
+    private final long userId;
+
+    /**
+     * 标签 id，保持用户 json 中的顺序
+     */
+    private final int[] tagIds;
+
+    /**
+     * 升序去重后的标签 id
+     */
+    private final int[] sortedTagIds;
+
+    public TagProfile(long userId, int[] tagIds) {
+        this.userId = userId;
+        this.tagIds = tagIds;
+        int[] sorted = Arrays.copyOf(tagIds, tagIds.length);
+        Arrays.sort(sorted);
+        int n = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[n++] = sorted[i];
+            }
+        }
+        this.sortedTagIds = n == sorted.length ? sorted : Arrays.copyOf(sorted, n);
+    }
+
+    public long getUserId() {
+        return userId;
+    }
+
+    public int[] getTagIds() {
+        return tagIds;
+    }
+
+    public int[] getSortedTagIds() {
+        return sortedTagIds;
+    }
+
+    /**
+     * 是否拥有某个标签
+     */
+    public boolean contains(int tagId) {
+        return Arrays.binarySearch(sortedTagIds, tagId) >= 0;
+    }
+
+    /**
+     * 与另一个画像的共同标签数（有序数组归并求交）
+     */
+    public int intersectionSize(TagProfile other) {
+        int[] a = sortedTagIds;
+        int[] b = other.sortedTagIds;
+        int i = 0;
+        int j = 0;
+        int count = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                count++;
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return count;
+    }
+}
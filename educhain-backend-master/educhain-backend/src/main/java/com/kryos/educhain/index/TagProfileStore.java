@@ -0,0 +1,295 @@
+package com.kryos.educhain.index;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.kryos.educhain.mapper.UserMapper;
+import com.kryos.educhain.model.domain.User;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 用户标签画像的内存存储
+ * 首次使用时从 user 表全量加载，之后在用户修改标签时增量更新，匹配热路径上不再解析 json
+ * 同时维护 标签 id => 用户 id 的倒排表（Roaring Bitmap，写时复制），用于匹配前的候选召回
+ * 只收录状态正常的用户；其他实例的修改通过变更日志 {@link TagChangeLog} 同步，已同步到的序号记录在 appliedSeq 中
+ */
+@Component
+@Slf4j
+public class TagProfileStore {
+
+    private static final Type TAG_LIST_TYPE = new TypeToken<List<String>>() {
+    }.getType();
+
+    /**
+     * json 中出现 null 元素时使用的 id
+     */
+    private static final int NULL_TAG_ID = Integer.MIN_VALUE;
+
+    private static final RoaringBitmap EMPTY = new RoaringBitmap();
+
+    @Resource
+    private UserMapper userMapper;
+
+    @Resource
+    private TagDictionary tagDictionary;
+
+    @Resource
+    private TagChangeLog tagChangeLog;
+
+    private final Gson gson = new Gson();
+
+    private volatile Index index;
+
+    /**
+     * 已同步到的变更序号
+     */
+    private volatile long appliedSeq;
+
+    /**
+     * 是否已加载，未加载时不需要同步变更
+     */
+    public boolean isLoaded() {
+        return index != null;
+    }
+
+    /**
+     * 确保画像已加载（首次调用时全量加载），加载过程中标签 json 里的标签会分配字典 id
+     */
+    public void ensureLoaded() {
+        loadedIndex();
+    }
+
+    public long getAppliedSeq() {
+        return appliedSeq;
+    }
+
+    public void setAppliedSeq(long appliedSeq) {
+        this.appliedSeq = appliedSeq;
+    }
+
+    /**
+     * 全部用户画像（弱一致视图）
+     */
+    public Collection<TagProfile> profiles() {
+        return loadedIndex().profiles.values();
+    }
+
+    /**
+     * 获取某个用户的画像
+     *
+     * @param userId 用户 id
+     * @return 画像，用户无标签时返回 null
+     */
+    public TagProfile get(long userId) {
+        return loadedIndex().profiles.get(userId);
+    }
+
+    /**
+     * 拥有某个标签的用户 id
+     *
+     * @param tagId 标签 id
+     * @return 用户 id 位图（只读，不要修改），没有用户时为空位图
+     */
+    public RoaringBitmap postings(int tagId) {
+        RoaringBitmap userIds = loadedIndex().postings.get(tagId);
+        return userIds == null ? EMPTY : userIds;
+    }
+
+    /**
+     * 用户标签或状态变化后更新画像
+     *
+     * @param userId     用户 id
+     * @param tagsJson   新的标签 json
+     * @param userStatus 用户状态，非正常状态的用户移出画像
+     */
+    public synchronized void update(long userId, String tagsJson, Integer userStatus) {
+        Index current = loadedIndex();
+        TagProfile profile = isNormal(userStatus) ? parse(userId, tagsJson) : null;
+        TagProfile oldProfile = profile == null ? current.profiles.remove(userId) : current.profiles.put(userId, profile);
+        if (oldProfile != null) {
+            current.removePostings(oldProfile);
+        }
+        if (profile != null) {
+            current.addPostings(profile);
+        }
+    }
+
+    /**
+     * 移除用户画像（如用户被删除）
+     */
+    public synchronized void remove(long userId) {
+        Index current = loadedIndex();
+        TagProfile oldProfile = current.profiles.remove(userId);
+        if (oldProfile != null) {
+            current.removePostings(oldProfile);
+        }
+    }
+
+    /**
+     * 把查询标签编码成 id 数组
+     * 字典中不存在的标签编码为互不相同的负数，保证它们不会与任何用户标签相等
+     */
+    public int[] encode(List<String> tagList) {
+        if (tagList == null) {
+            return new int[0];
+        }
+        int[] ids = new int[tagList.size()];
+        int unknown = 0;
+        for (int i = 0; i < ids.length; i++) {
+            String tagName = tagList.get(i);
+            if (tagName == null) {
+                ids[i] = NULL_TAG_ID;
+                continue;
+            }
+            int id = tagDictionary.idOf(tagName);
+            ids[i] = id >= 0 ? id : -(++unknown);
+        }
+        return ids;
+    }
+
+    /**
+     * 从数据库全量重建画像
+     */
+    public synchronized void reload() {
+        long start = System.currentTimeMillis();
+        // 扫描期间的变更序号更大，之后由同步任务重放
+        long seq = tagChangeLog.currentSeq(appliedSeq);
+        // 先加载字典，避免在流式读取的过程中再去查 tag 表
+        tagDictionary.size();
+        Index newIndex = new Index(index == null ? 16 : index.profiles.size());
+        userMapper.scanIdAndTags(context -> {
+            User user = context.getResultObject();
+            if (!isNormal(user.getUserStatus())) {
+                return;
+            }
+            TagProfile profile = parse(user.getId(), user.getTags());
+            if (profile != null) {
+                newIndex.profiles.put(user.getId(), profile);
+                newIndex.addPostingsInPlace(profile);
+            }
+        });
+        newIndex.postings.values().forEach(RoaringBitmap::runOptimize);
+        index = newIndex;
+        appliedSeq = seq;
+        log.info("用户标签画像加载完成，共 {} 个用户，{} 个标签倒排表，耗时 {} ms",
+                newIndex.profiles.size(), newIndex.postings.size(), System.currentTimeMillis() - start);
+    }
+
+    private Index loadedIndex() {
+        Index current = index;
+        if (current == null) {
+            synchronized (this) {
+                if (index == null) {
+                    reload();
+                }
+                current = index;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 状态正常（封禁等其他状态的用户不参与匹配）
+     */
+    private static boolean isNormal(Integer userStatus) {
+        return userStatus == null || userStatus == 0;
+    }
+
+    /**
+     * 解析标签 json 为画像，无标签或格式错误时返回 null
+     */
+    private TagProfile parse(long userId, String tagsJson) {
+        if (StringUtils.isBlank(tagsJson)) {
+            return null;
+        }
+        List<String> tagList;
+        try {
+            tagList = gson.fromJson(tagsJson, TAG_LIST_TYPE);
+        } catch (Exception e) {
+            log.warn("解析用户 {} 的标签失败: {}", userId, e.getMessage());
+            return null;
+        }
+        if (tagList == null) {
+            return null;
+        }
+        int[] ids = new int[tagList.size()];
+        for (int i = 0; i < ids.length; i++) {
+            String tagName = tagList.get(i);
+            ids[i] = tagName == null ? NULL_TAG_ID : tagDictionary.getOrAssign(tagName);
+        }
+        return new TagProfile(userId, ids);
+    }
+
+    /**
+     * 画像与倒排表，重建时整体替换
+     * 倒排表中的位图发布后不再修改，增量更新时复制一份改完再替换（调用方持有 TagProfileStore 的锁）
+     */
+    private static class Index {
+
+        private final Map<Long, TagProfile> profiles;
+
+        private final Map<Integer, RoaringBitmap> postings = new ConcurrentHashMap<>();
+
+        Index(int expectedUsers) {
+            this.profiles = new ConcurrentHashMap<>(Math.max(16, expectedUsers * 4 / 3));
+        }
+
+        /**
+         * 重建时使用，位图尚未发布，直接修改
+         */
+        void addPostingsInPlace(TagProfile profile) {
+            if (!indexable(profile.getUserId())) {
+                return;
+            }
+            for (int tagId : profile.getSortedTagIds()) {
+                if (tagId >= 0) {
+                    postings.computeIfAbsent(tagId, k -> new RoaringBitmap()).add((int) profile.getUserId());
+                }
+            }
+        }
+
+        void addPostings(TagProfile profile) {
+            if (!indexable(profile.getUserId())) {
+                return;
+            }
+            for (int tagId : profile.getSortedTagIds()) {
+                if (tagId >= 0) {
+                    RoaringBitmap userIds = postings.get(tagId);
+                    RoaringBitmap copy = userIds == null ? new RoaringBitmap() : userIds.clone();
+                    copy.add((int) profile.getUserId());
+                    postings.put(tagId, copy);
+                }
+            }
+        }
+
+        void removePostings(TagProfile profile) {
+            if (!indexable(profile.getUserId())) {
+                return;
+            }
+            for (int tagId : profile.getSortedTagIds()) {
+                RoaringBitmap userIds = postings.get(tagId);
+                if (userIds != null && userIds.contains((int) profile.getUserId())) {
+                    RoaringBitmap copy = userIds.clone();
+                    copy.remove((int) profile.getUserId());
+                    postings.put(tagId, copy);
+                }
+            }
+        }
+
+        /**
+         * 位图按 32 位无符号整数存储 id，超出范围的用户不进倒排表（召回不到时匹配退化为全量扫描）
+         */
+        private static boolean indexable(long userId) {
+            return userId >= 0 && userId <= 0xFFFFFFFFL;
+        }
+    }
+}
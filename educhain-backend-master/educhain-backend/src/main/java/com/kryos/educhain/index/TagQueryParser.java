@@ -0,0 +1,230 @@
+package com.kryos.educhain.index;
+
+import com.kryos.educhain.common.ErrorCode;
+import com.kryos.educhain.exception.BusinessException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 布尔标签查询解析器
+ * 语法（优先级 NOT > AND > OR > 逗号，关键字不区分大小写）：
+ * <pre>
+ * expr  := or ( "," or )*                             逗号分隔的各段之间是 AND
+ * or    := and ( ("OR" | "|") and )*
+ * and   := unary ( [ "AND" | "&" ] unary )*           相邻的条件默认是 AND
+ * unary := ("NOT" | "!") unary | "(" expr ")" | 标签 | "带空格或关键字的标签"
+ * </pre>
+ * 例如：Java OR Python, NOT 游戏 等价于 (Java OR Python) AND NOT 游戏
+ */
+public class TagQueryParser {
+
+    private static final int MAX_LENGTH = 256;
+
+    private static final int MAX_TAGS = 20;
+
+    private static final int MAX_DEPTH = 16;
+
+    private static final String SYMBOLS = "()&|!,，（）\"";
+
+    private enum TokenType {
+        TAG, AND, OR, NOT, COMMA, LEFT, RIGHT, END
+    }
+
+    private static final class Token {
+
+        private final TokenType type;
+
+        private final String text;
+
+        private Token(TokenType type, String text) {
+            this.type = type;
+            this.text = text;
+        }
+    }
+
+    private final List<Token> tokens;
+
+    private int position;
+
+    private int depth;
+
+    private int tagCount;
+
+    private TagQueryParser(List<Token> tokens) {
+        this.tokens = tokens;
+    }
+
+    /**
+     * 解析布尔标签查询
+     *
+     * @param query 查询文本
+     * @return 表达式
+     */
+    public static TagExpression parse(String query) {
+        if (query == null || query.trim().isEmpty()) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR, "标签查询为空");
+        }
+        if (query.length() > MAX_LENGTH) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR, "标签查询过长");
+        }
+        TagQueryParser parser = new TagQueryParser(tokenize(query));
+        TagExpression expression = parser.parseClauses();
+        if (parser.peek().type != TokenType.END) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR, "标签查询在 \"" + parser.peek().text + "\" 处有多余的内容");
+        }
+        return expression;
+    }
+
+    private TagExpression parseClauses() {
+        List<TagExpression> operands = new ArrayList<>();
+        operands.add(parseOr());
+        while (peek().type == TokenType.COMMA) {
+            position++;
+            operands.add(parseOr());
+        }
+        return operands.size() == 1 ? operands.get(0) : new TagExpression.And(flatten(operands, TagExpression.And.class));
+    }
+
+    private TagExpression parseOr() {
+        List<TagExpression> operands = new ArrayList<>();
+        operands.add(parseAnd());
+        while (peek().type == TokenType.OR) {
+            position++;
+            operands.add(parseAnd());
+        }
+        return operands.size() == 1 ? operands.get(0) : new TagExpression.Or(flatten(operands, TagExpression.Or.class));
+    }
+
+    private TagExpression parseAnd() {
+        List<TagExpression> operands = new ArrayList<>();
+        operands.add(parseUnary());
+        while (true) {
+            TokenType type = peek().type;
+            if (type == TokenType.AND) {
+                position++;
+            } else if (type != TokenType.TAG && type != TokenType.NOT && type != TokenType.LEFT) {
+                break;
+            }
+            operands.add(parseUnary());
+        }
+        return operands.size() == 1 ? operands.get(0) : new TagExpression.And(flatten(operands, TagExpression.And.class));
+    }
+
+    private TagExpression parseUnary() {
+        Token token = peek();
+        switch (token.type) {
+            case NOT:
+                position++;
+                TagExpression operand = parseUnary();
+                // NOT NOT x 等价于 x
+                return operand instanceof TagExpression.Not ? ((TagExpression.Not) operand).operand() : new TagExpression.Not(operand);
+            case LEFT:
+                position++;
+                if (++depth > MAX_DEPTH) {
+                    throw new BusinessException(ErrorCode.PARAMS_ERROR, "标签查询嵌套过深");
+                }
+                TagExpression expression = parseClauses();
+                if (peek().type != TokenType.RIGHT) {
+                    throw new BusinessException(ErrorCode.PARAMS_ERROR, "标签查询缺少右括号");
+                }
+                position++;
+                depth--;
+                return expression;
+            case TAG:
+                position++;
+                if (++tagCount > MAX_TAGS) {
+                    throw new BusinessException(ErrorCode.PARAMS_ERROR, "标签查询最多包含 " + MAX_TAGS + " 个标签");
+                }
+                return new TagExpression.Tag(token.text);
+            default:
+                throw new BusinessException(ErrorCode.PARAMS_ERROR,
+                        token.type == TokenType.END ? "标签查询不完整" : "标签查询在 \"" + token.text + "\" 处缺少标签");
+        }
+    }
+
+    private Token peek() {
+        return tokens.get(position);
+    }
+
+    /**
+     * 把同类的子表达式展开：a AND (b AND c) => a AND b AND c
+     */
+    private static List<TagExpression> flatten(List<TagExpression> operands, Class<? extends TagExpression> type) {
+        List<TagExpression> flat = new ArrayList<>(operands.size());
+        for (TagExpression operand : operands) {
+            if (type.isInstance(operand)) {
+                flat.addAll(operand instanceof TagExpression.And
+                        ? ((TagExpression.And) operand).operands() : ((TagExpression.Or) operand).operands());
+            } else {
+                flat.add(operand);
+            }
+        }
+        return flat;
+    }
+
+    private static List<Token> tokenize(String query) {
+        List<Token> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < query.length()) {
+            char c = query.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '(' || c == '（') {
+                tokens.add(new Token(TokenType.LEFT, String.valueOf(c)));
+                i++;
+            } else if (c == ')' || c == '）') {
+                tokens.add(new Token(TokenType.RIGHT, String.valueOf(c)));
+                i++;
+            } else if (c == '&') {
+                i = skipRepeated(query, i, c);
+                tokens.add(new Token(TokenType.AND, "&"));
+            } else if (c == ',' || c == '，') {
+                tokens.add(new Token(TokenType.COMMA, String.valueOf(c)));
+                i++;
+            } else if (c == '|') {
+                i = skipRepeated(query, i, c);
+                tokens.add(new Token(TokenType.OR, "|"));
+            } else if (c == '!') {
+                tokens.add(new Token(TokenType.NOT, "!"));
+                i++;
+            } else if (c == '"') {
+                int end = query.indexOf('"', i + 1);
+                if (end < 0) {
+                    throw new BusinessException(ErrorCode.PARAMS_ERROR, "标签查询缺少右引号");
+                }
+                String tag = query.substring(i + 1, end).trim();
+                if (tag.isEmpty()) {
+                    throw new BusinessException(ErrorCode.PARAMS_ERROR, "标签不能为空");
+                }
+                tokens.add(new Token(TokenType.TAG, tag));
+                i = end + 1;
+            } else {
+                int start = i;
+                while (i < query.length() && !Character.isWhitespace(query.charAt(i))
+                        && SYMBOLS.indexOf(query.charAt(i)) < 0) {
+                    i++;
+                }
+                String word = query.substring(start, i);
+                if ("AND".equalsIgnoreCase(word)) {
+                    tokens.add(new Token(TokenType.AND, word));
+                } else if ("OR".equalsIgnoreCase(word)) {
+                    tokens.add(new Token(TokenType.OR, word));
+                } else if ("NOT".equalsIgnoreCase(word)) {
+                    tokens.add(new Token(TokenType.NOT, word));
+                } else {
+                    tokens.add(new Token(TokenType.TAG, word));
+                }
+            }
+        }
+        tokens.add(new Token(TokenType.END, ""));
+        return tokens;
+    }
+
+    private static int skipRepeated(String query, int i, char c) {
+        while (i < query.length() && query.charAt(i) == c) {
+            i++;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,37 @@
+package com.kryos.educhain.index;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 多标签求交的执行计划
+ */
+public class TagQueryPlan {
+
+    /**
+     * 按用户数升序排列的标签，求交时从最小的集合开始
+     */
+    private final List<String> orderedTags;
+
+    /**
+     * 是否已确认结果为空（某个标签在当前一代中没有用户）
+     */
+    private final boolean empty;
+
+    private TagQueryPlan(List<String> orderedTags, boolean empty) {
+        this.orderedTags = orderedTags;
+        this.empty = empty;
+    }
+
+    static TagQueryPlan of(List<String> orderedTags, boolean empty) {
+        return new TagQueryPlan(Collections.unmodifiableList(orderedTags), empty);
+    }
+
+    public List<String> getOrderedTags() {
+        return orderedTags;
+    }
+
+    public boolean isEmpty() {
+        return empty;
+    }
+}
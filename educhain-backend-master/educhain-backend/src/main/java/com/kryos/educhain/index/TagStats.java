@@ -0,0 +1,152 @@
+package com.kryos.educhain.index;
+
+import com.kryos.educhain.config.SearchConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 标签统计（各标签的用户数）和多标签查询规划
+ * 统计来自当前一代索引的 tagidx:v{n}:stats 哈希，在本地缓存一小段时间；
+ * 规划时按用户数从小到大排列标签；本地缓存可能落后于其他实例的更新，计数为 0 或缺失的标签视为用户数未知，
+ * 排在最后，只有在当前一代中确认集合为空时才判定结果为空
+ */
+@Component
+@Slf4j
+public class TagStats {
+
+    @Resource
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Resource
+    private RedisTagUserIndex redisTagUserIndex;
+
+    @Resource
+    private SearchConfig searchConfig;
+
+    private volatile Snapshot snapshot;
+
+    /**
+     * 为一组标签生成求交计划
+     * 统计中计数为 0 或缺失的标签，用一次 SCARD 在当前一代确认，确实没有用户时计划为空，可以直接返回空结果；
+     * 不会因为本地缓存落后而误判
+     *
+     * @param tagNames 标签列表（不含分类，分类没有自己的集合）
+     * @return 计划；统计不可用时保持原顺序，且不判定为空
+     */
+    public TagQueryPlan plan(Collection<String> tagNames) {
+        List<String> tags = new ArrayList<>(new LinkedHashSet<>(tagNames));
+        Snapshot current = loadedSnapshot();
+        if (current == null) {
+            return TagQueryPlan.of(tags, false);
+        }
+        tags.sort(Comparator.comparingLong(tag -> knownCount(current, tag)));
+        return TagQueryPlan.of(tags, confirmEmpty(current, tags));
+    }
+    /**
+     * 标签的用户数
+     *
+     * @return 用户数，统计不可用或计数为 0（可能尚未同步）时为 null
+     */
+    public Long cardinality(String tagName) {
+        Snapshot current = loadedSnapshot();
+        if (current == null) {
+            return null;
+        }
+        long count = knownCount(current, tagName);
+        return count == Long.MAX_VALUE ? null : count;
+    }
+
+    /**
+     * 丢弃本地缓存，下次使用时重新读取
+     */
+    public void invalidate() {
+        snapshot = null;
+    }
+
+    /**
+     * 计数未知的标签排在最后，依次用 SCARD 确认；只要有一个标签的集合为空，交集就为空
+     */
+    private boolean confirmEmpty(Snapshot current, List<String> orderedTags) {
+        try {
+            for (int i = orderedTags.size() - 1; i >= 0; i--) {
+                String tagName = orderedTags.get(i);
+                if (knownCount(current, tagName) != Long.MAX_VALUE) {
+                    break;
+                }
+                Long size = redisTemplate.opsForSet().size(RedisTagUserIndex.userIdsKey(current.generation, tagName));
+                if (size != null && size == 0) {
+                    return true;
+                }
+            }
+        } catch (Exception e) {
+            log.warn("确认标签集合是否为空失败: {}", e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * 统计中的用户数，缺失或不大于 0 时视为未知，返回 Long.MAX_VALUE
+     */
+    private static long knownCount(Snapshot current, String tagName) {
+        Long count = current.counts.get(tagName);
+        return count == null || count <= 0 ? Long.MAX_VALUE : count;
+    }
+
+    private Snapshot loadedSnapshot() {
+        long generation = redisTagUserIndex.currentGeneration();
+        Snapshot current = snapshot;
+        long now = System.currentTimeMillis();
+        if (current != null && current.generation == generation
+                && now - current.loadedAt < searchConfig.getTagStatsTtlSeconds() * 1000) {
+            return current.complete ? current : null;
+        }
+        try {
+            Map<Object, Object> entries = redisTemplate.opsForHash().entries(RedisTagUserIndex.statsKey(generation));
+            Map<String, Long> counts = new HashMap<>(entries.size() * 2);
+            boolean complete = false;
+            for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+                String field = String.valueOf(entry.getKey());
+                if (RedisTagUserIndex.STATS_READY_FIELD.equals(field)) {
+                    complete = true;
+                } else if (entry.getValue() instanceof Number) {
+                    counts.put(field, ((Number) entry.getValue()).longValue());
+                }
+            }
+            current = new Snapshot(generation, now, complete, Collections.unmodifiableMap(counts));
+            snapshot = current;
+            return complete ? current : null;
+        } catch (Exception e) {
+            log.warn("读取标签统计失败，本次不做查询规划: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static class Snapshot {
+
+        private final long generation;
+
+        private final long loadedAt;
+
+        private final boolean complete;
+
+        private final Map<String, Long> counts;
+
+        private Snapshot(long generation, long loadedAt, boolean complete, Map<String, Long> counts) {
+            this.generation = generation;
+            this.loadedAt = loadedAt;
+            this.complete = complete;
+            this.counts = counts;
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package com.kryos.educhain.index;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.kryos.educhain.mapper.TagMapper;
+import com.kryos.educhain.model.domain.Tag;
+import com.kryos.educhain.model.vo.TagSuggestionVO;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.ToLongFunction;
+
+/**
+ * 标签名联想索引
+ * 把 tag 表中的标签名按小写排成有序数组，前缀查询用二分定位区间，再按拥有该标签的用户数取前 N 个；
+ * 数组写时复制，查询无锁且不访问数据库，增删标签时增量更新
+ * 增删标签时 tag:suggest:version 递增，其他实例最多每 5 秒检查一次版本，变化后重新加载；
+ * 用户数优先取所有实例共享的标签统计，统计不可用时退回本地已加载的标签位图索引，联想不会触发任何全量加载
+ */
+@Component
+@Slf4j
+public class TagSuggestIndex {
+
+    private static final int MAX_LIMIT = 50;
+
+    /**
+     * 联想索引版本号，增删标签时 INCR
+     */
+    private static final String VERSION_KEY = "tag:suggest:version";
+
+    private static final long VERSION_CHECK_INTERVAL_MILLIS = 5000;
+
+    private static final Comparator<Entry> ORDER = Comparator.comparing((Entry e) -> e.key).thenComparing(e -> e.tagName);
+
+    @Resource
+    private TagMapper tagMapper;
+
+    @Resource
+    private TagBitmapIndex tagBitmapIndex;
+
+    @Resource
+    private TagStats tagStats;
+
+    @Resource
+    private RedisTemplate<String, Object> redisTemplate;
+
+    private volatile Entry[] entries;
+
+    /**
+     * 当前数组对应的 Redis 版本号
+     */
+    private volatile long loadedVersion;
+
+    private volatile long checkedAt;
+
+    /**
+     * 标签名 => tag 表中的行 id；不同用户可以创建同名的自定义标签，最后一行删除时才移除标签名
+     */
+    private final Map<String, Set<Long>> rowIds = new HashMap<>();
+
+    /**
+     * 按前缀联想标签名（不区分大小写）
+     *
+     * @param prefix 前缀
+     * @param limit  返回数量
+     * @return 按用户数降序的标签，用户数相同时短的在前
+     */
+    public List<TagSuggestionVO> suggest(String prefix, int limit) {
+        if (StringUtils.isBlank(prefix) || limit <= 0) {
+            return new ArrayList<>();
+        }
+        return topByPrefix(loadedEntries(), prefix, Math.min(limit, MAX_LIMIT), this::userCount);
+    }
+
+    /**
+     * 在按小写标签名排好序的数组中二分定位前缀区间，按用户数取前 N 个
+     *
+     * @param sorted    {@link #sortedEntries} 排好序的标签
+     * @param prefix    前缀
+     * @param limit     返回数量
+     * @param userCount 标签名 => 用户数
+     * @return 按用户数降序的标签，用户数相同时短的在前
+     */
+    static List<TagSuggestionVO> topByPrefix(Entry[] sorted, String prefix, int limit, ToLongFunction<String> userCount) {
+        if (StringUtils.isBlank(prefix) || limit <= 0) {
+            return new ArrayList<>();
+        }
+        String key = normalize(prefix);
+        int from = lowerBound(sorted, key);
+        Comparator<Suggestion> rank = Comparator.comparingLong((Suggestion s) -> s.userCount)
+                .thenComparing(s -> s.entry.tagName.length(), Comparator.reverseOrder())
+                .thenComparing(s -> s.entry.key, Comparator.reverseOrder());
+        // 小顶堆保留前 N 个
+        PriorityQueue<Suggestion> heap = new PriorityQueue<>(limit + 1, rank);
+        for (int i = from; i < sorted.length && sorted[i].key.startsWith(key); i++) {
+            heap.offer(new Suggestion(sorted[i], userCount.applyAsLong(sorted[i].tagName)));
+            if (heap.size() > limit) {
+                heap.poll();
+            }
+        }
+        List<TagSuggestionVO> result = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            Suggestion suggestion = heap.poll();
+            result.add(new TagSuggestionVO(suggestion.entry.tagName, suggestion.userCount));
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * 按小写标签名排序的联想数组
+     *
+     * @param tagNames 不重复的标签名
+     */
+    static Entry[] sortedEntries(Collection<String> tagNames) {
+        Entry[] sorted = new Entry[tagNames.size()];
+        int i = 0;
+        for (String tagName : tagNames) {
+            sorted[i++] = new Entry(tagName);
+        }
+        Arrays.sort(sorted, ORDER);
+        return sorted;
+    }
+
+    /**
+     * 新增标签后登记标签名
+     */
+    public synchronized void add(Tag tag) {
+        if (!isSuggestible(tag)) {
+            return;
+        }
+        Entry[] current = loadedEntries();
+        Set<Long> ids = rowIds.computeIfAbsent(tag.getTagName(), k -> new HashSet<>());
+        ids.add(tag.getId());
+        if (ids.size() > 1) {
+            return;
+        }
+        Entry entry = new Entry(tag.getTagName());
+        int index = Arrays.binarySearch(current, entry, ORDER);
+        if (index >= 0) {
+            return;
+        }
+        int insertAt = -index - 1;
+        Entry[] updated = new Entry[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, insertAt);
+        updated[insertAt] = entry;
+        System.arraycopy(current, insertAt, updated, insertAt + 1, current.length - insertAt);
+        entries = updated;
+        publish();
+    }
+
+    /**
+     * 删除标签后移除标签名
+     */
+    public synchronized void remove(Tag tag) {
+        if (!isSuggestible(tag)) {
+            return;
+        }
+        Entry[] current = loadedEntries();
+        Set<Long> ids = rowIds.get(tag.getTagName());
+        if (ids == null) {
+            return;
+        }
+        ids.remove(tag.getId());
+        if (!ids.isEmpty()) {
+            return;
+        }
+        rowIds.remove(tag.getTagName());
+        int index = Arrays.binarySearch(current, new Entry(tag.getTagName()), ORDER);
+        if (index < 0) {
+            return;
+        }
+        Entry[] updated = new Entry[current.length - 1];
+        System.arraycopy(current, 0, updated, 0, index);
+        System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+        entries = updated;
+        publish();
+    }
+
+    /**
+     * 从 tag 表全量重建
+     */
+    public synchronized void reload() {
+        long start = System.currentTimeMillis();
+        long version = remoteVersion(loadedVersion);
+        QueryWrapper<Tag> queryWrapper = new QueryWrapper<>();
+        queryWrapper.select("id", "tagName", "isParent");
+        List<Tag> tagList = tagMapper.selectList(queryWrapper);
+        rowIds.clear();
+        List<String> tagNames = new ArrayList<>();
+        for (Tag tag : tagList) {
+            if (!isSuggestible(tag)) {
+                continue;
+            }
+            Set<Long> ids = rowIds.computeIfAbsent(tag.getTagName(), k -> new HashSet<>());
+            if (ids.isEmpty()) {
+                tagNames.add(tag.getTagName());
+            }
+            ids.add(tag.getId());
+        }
+        Entry[] loaded = sortedEntries(tagNames);
+        entries = loaded;
+        loadedVersion = version;
+        checkedAt = System.currentTimeMillis();
+        log.info("标签联想索引加载完成，共 {} 个标签，版本 {}，耗时 {} ms", loaded.length, version, System.currentTimeMillis() - start);
+    }
+
+    private Entry[] loadedEntries() {
+        Entry[] current = entries;
+        if (current == null) {
+            synchronized (this) {
+                if (entries == null) {
+                    reload();
+                }
+                return entries;
+            }
+        }
+        long now = System.currentTimeMillis();
+        if (now - checkedAt < VERSION_CHECK_INTERVAL_MILLIS) {
+            return current;
+        }
+        checkedAt = now;
+        if (remoteVersion(loadedVersion) != loadedVersion) {
+            synchronized (this) {
+                if (entries == current) {
+                    reload();
+                }
+                return entries;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 标签的用户数：优先取 Redis 中所有实例共享的标签统计，不可用时取本地已加载的位图索引，都没有时为 0
+     */
+    private long userCount(String tagName) {
+        Long count = tagStats.cardinality(tagName);
+        if (count == null) {
+            count = tagBitmapIndex.cardinalityIfLoaded(tagName);
+        }
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * 本实例增删标签后递增版本，通知其他实例重新加载；本实例已增量更新，紧接着的一次递增不需要重新加载
+     */
+    private void publish() {
+        try {
+            Long version = redisTemplate.opsForValue().increment(VERSION_KEY);
+            if (version != null && version == loadedVersion + 1) {
+                loadedVersion = version;
+            }
+        } catch (Exception e) {
+            log.warn("更新标签联想索引版本失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 读取 Redis 中的版本号，失败时沿用本地版本
+     */
+    private long remoteVersion(long fallback) {
+        try {
+            Object version = redisTemplate.opsForValue().get(VERSION_KEY);
+            return version instanceof Number ? ((Number) version).longValue() : 0;
+        } catch (Exception e) {
+            log.warn("读取标签联想索引版本失败: {}", e.getMessage());
+            return fallback;
+        }
+    }
+
+    /**
+     * 分类（父标签）不参与联想
+     */
+    private static boolean isSuggestible(Tag tag) {
+        return tag != null && StringUtils.isNotBlank(tag.getTagName())
+                && (tag.getIsParent() == null || tag.getIsParent() == 0);
+    }
+
+    private static String normalize(String text) {
+        return text.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 第一个 key >= 前缀的位置
+     */
+    private static int lowerBound(Entry[] sorted, String key) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid].key.compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    static final class Entry {
+
+        /**
+         * 小写标签名，用于排序和前缀匹配
+         */
+        private final String key;
+
+        private final String tagName;
+
+        private Entry(String tagName) {
+            this.key = normalize(tagName);
+            this.tagName = tagName;
+        }
+    }
+
+    private static final class Suggestion {
+
+        private final Entry entry;
+
+        private final long userCount;
+
+        private Suggestion(Entry entry, long userCount) {
+            this.entry = entry;
+            this.userCount = userCount;
+        }
+    }
+}
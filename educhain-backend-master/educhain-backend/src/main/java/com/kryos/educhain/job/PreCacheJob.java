@@ -2,7 +2,13 @@ package com.kryos.educhain.job;
 
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.kryos.educhain.config.SearchConfig;
+import com.kryos.educhain.index.HotTagQuery;
+import com.kryos.educhain.index.HotTagQueryTracker;
+import com.kryos.educhain.index.TagBitmapIndex;
 import com.kryos.educhain.mapper.UserMapper;
+import com.kryos.educhain.match.PrecomputedMatchStore;
+import com.kryos.educhain.match.UserMatchEngine;
 import com.kryos.educhain.model.domain.User;
 import com.kryos.educhain.service.UserService;
 import lombok.extern.slf4j.Slf4j;
@@ -14,9 +20,7 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
@@ -37,21 +41,24 @@ public class PreCacheJob {
     @Resource
     private RedissonClient redissonClient;
 
+    @Resource
+    private UserMatchEngine userMatchEngine;
+
+    @Resource
+    private PrecomputedMatchStore precomputedMatchStore;
+
+    @Resource
+    private TagBitmapIndex tagBitmapIndex;
+
+    @Resource
+    private HotTagQueryTracker hotTagQueryTracker;
+
+    @Resource
+    private SearchConfig searchConfig;
+
     // 重点用户
     private List<Long> mainUserList = Arrays.asList(1L);
     
-    // 热门标签列表
-    private List<List<String>> hotTagsList = Arrays.asList(
-            Collections.singletonList("音乐"),        // 单标签：音乐
-            Collections.singletonList("Java"),        // 单标签：Java
-            Arrays.asList("音乐", "游戏"),            // 多标签组合：音乐+游戏
-            Arrays.asList("Java", "Python")           // 多标签组合：Java+Python
-    );
-    
-    // 定义分页大小和预热的页码
-    private static final int PAGE_SIZE = 10;
-    private static final List<Integer> PRELOAD_PAGE_NUMS = Arrays.asList(1, 2); // 预热第1页和第2页
-
     // 每天执行，预热推荐用户
     @Scheduled(cron = "0 0 3 * * *") // 秒 分 时 日 月 年
     public void doCacheRecommendUser() {
@@ -214,83 +221,28 @@ public class PreCacheJob {
                     }
                 }
                 
-                // 为热门标签组合预热优化版搜索结果
+                // 预热真实流量中最热的标签搜索（标签组合或布尔查询 + 页码）
+                // 本地位图索引提供查询时分页不写缓存，只预热会写入 Redis 的细化筛选标签
                 int totalOptimizedCacheCount = 0;
                 int failedCacheCount = 0;
-                
-                // 预热热门标签组合的优化版搜索结果
-                for (List<String> tags : hotTagsList) {
-                    // 对标签进行排序，确保相同的标签组合生成相同的缓存键
-                    List<String> sortedTags = new ArrayList<>(tags);
-                    Collections.sort(sortedTags);
-                    
-                    // 为每个热门标签组合预热指定的页码
-                    for (Integer pageNum : PRELOAD_PAGE_NUMS) {
-                        log.info("预热优化版分页结果: {}，页码: {}, 每页大小: {}", 
-                                String.join("_", sortedTags), pageNum, PAGE_SIZE);
-                        
-                        try {
-                            // 直接调用优化版分页方法获取结果并缓存
-                            Page<User> userPage = userService.searchUsersByTagsOptimized(tags, PAGE_SIZE, pageNum);
-                            log.info("优化版标签 {} 第 {} 页预热成功，共找到 {} 名用户", 
-                                    String.join("_", sortedTags), pageNum, userPage.getTotal());
-                            totalOptimizedCacheCount++;
-                            
-                            // 预热成功后稍微暂停，避免对Redis造成过大压力
-                            try {
-                                Thread.sleep(50);
-                            } catch (InterruptedException ie) {
-                                Thread.currentThread().interrupt();
-                            }
-                        } catch (Exception e) {
-                            failedCacheCount++;
-                            log.error("优化版标签分页预热失败: tags={}, page={}, size={}, error={}", 
-                                    String.join("_", sortedTags), pageNum, PAGE_SIZE, e.getMessage());
-                            
-                            // 暂停一下，避免连续失败
-                            try {
-                                Thread.sleep(500);
-                            } catch (InterruptedException ie) {
-                                Thread.currentThread().interrupt();
-                            }
-                        }
+                List<HotTagQuery> hotQueries = hotTagQueryTracker.topQueries(searchConfig.getHotQueryPrewarmSize());
+                log.info("最近 {} 小时内的热门标签搜索共 {} 个", searchConfig.getHotQueryWindowHours(), hotQueries.size());
+                for (HotTagQuery query : hotQueries) {
+                    if (searchConfig.isLocalIndexEnabled() && !query.isFacets()) {
+                        continue;
                     }
-                }
-                
-                // 添加额外的热门组合预热
-                List<List<String>> additionalCombinations = Arrays.asList(
-                    Arrays.asList("Java", "开发"),
-                    Arrays.asList("作曲", "唱歌"),
-                    Arrays.asList("游戏", "键盘手"),
-                    Arrays.asList("Java", "音乐", "动漫")
-                );
-                
-                for (List<String> tags : additionalCombinations) {
                     try {
-                        // 只预热第一页
-                        log.info("预热优化版额外标签组合: {}，页码: 1", String.join("_", tags));
-                        Page<User> userPage = userService.searchUsersByTagsOptimized(tags, PAGE_SIZE, 1);
-                        log.info("优化版额外标签组合 {} 预热成功，共找到 {} 名用户", 
-                                String.join("_", tags), userPage.getTotal());
+                        // 页码和页大小由搜索方法限制在合法范围内
+                        Page<User> userPage = query.getTagQuery() != null
+                                ? userService.searchUsersByTagQuery(query.getTagQuery(),
+                                query.getPageSize(), query.getPageNum(), query.isFacets())
+                                : userService.searchUsersByTagsOptimized(query.getTags(),
+                                query.getPageSize(), query.getPageNum(), query.isFacets());
+                        log.info("热门标签搜索 {} 预热成功，共找到 {} 名用户", query, userPage.getTotal());
                         totalOptimizedCacheCount++;
-                        
-                        // 预热成功后稍微暂停，避免对Redis造成过大压力
-                        try {
-                            Thread.sleep(50);
-                        } catch (InterruptedException ie) {
-                            Thread.currentThread().interrupt();
-                        }
                     } catch (Exception e) {
                         failedCacheCount++;
-                        log.error("优化版额外标签组合预热失败: tags={}, error={}", 
-                                String.join("_", tags), e.getMessage());
-                        
-                        // 暂停一下，避免连续失败
-                        try {
-                            Thread.sleep(500);
-                        } catch (InterruptedException ie) {
-                            Thread.currentThread().interrupt();
-                        }
+                        log.error("热门标签搜索预热失败: {}, error={}", query, e.getMessage());
                     }
                 }
                 
@@ -312,6 +264,51 @@ public class PreCacheJob {
         }
     }
     
+    /**
+     * 重建本实例内存中的用户标签画像、LSH 索引和标签位图索引，校正增量同步遗漏的部分
+     * 这些索引每个实例各一份，不加分布式锁，每个实例都要执行
+     * 每天凌晨4点20分执行一次
+     */
+    @Scheduled(cron = "0 20 4 * * *")
+    public void doRebuildLocalIndexes() {
+        try {
+            userMatchEngine.rebuild();
+        } catch (Exception e) {
+            log.error("重建用户匹配索引失败: {}", e.getMessage(), e);
+        }
+        try {
+            tagBitmapIndex.reload();
+        } catch (Exception e) {
+            log.error("重建标签位图索引失败: {}", e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * 全量重算活跃用户的预计算匹配列表，校正增量更新遗漏的部分
+     * 每天凌晨4点半执行一次（在匹配索引重建之后）
+     */
+    @Scheduled(cron = "0 30 4 * * *")
+    public void doPrecomputeMatchLists() {
+        RLock lock = redissonClient.getLock("educhain:precachejob:matchlists:lock");
+        try {
+            // 只有一个线程能获取到锁
+            if (lock.tryLock(0, -1, TimeUnit.MILLISECONDS)) {
+                long startTime = System.currentTimeMillis();
+                int count = precomputedMatchStore.refreshActiveUsers();
+                log.info("预计算匹配列表完成，共 {} 个活跃用户，耗时 {} ms", count, System.currentTimeMillis() - startTime);
+            }
+        } catch (InterruptedException e) {
+            log.error("预计算匹配列表任务异常", e);
+        } catch (Exception e) {
+            log.error("预计算匹配列表过程中出现异常", e);
+        } finally {
+            // 只能释放自己的锁
+            if (lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+    
     /**
      * 手动触发标签缓存预热（用于测试和重置缓存）
      */
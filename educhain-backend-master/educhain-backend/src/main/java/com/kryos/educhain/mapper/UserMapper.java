@@ -2,12 +2,40 @@ package com.kryos.educhain.mapper;
 
 import com.kryos.educhain.model.domain.User;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.session.ResultHandler;
+
+import java.util.List;
 
 /**
  * 用户 Mapper
  */
 public interface UserMapper extends BaseMapper<User> {
 
+    /**
+     * 流式扫描所有有标签用户的 id、tags 和 userStatus，逐行回调，不在内存中保留整表
+     *
+     * @param resultHandler 每行的处理器
+     */
+    void scanIdAndTags(ResultHandler<User> resultHandler);
+
+    /**
+     * 按 id 升序取 lastId 之后的一批状态正常、有标签的用户（不含密码）
+     *
+     * @param lastId 上一批的最大 id，第一批传 0
+     * @param limit  每批数量
+     * @return 用户列表
+     */
+    List<User> selectTaggedUsersAfterId(@Param("lastId") long lastId, @Param("limit") int limit);
+
+    /**
+     * 按主键 keyset 分页读取有标签的未删除用户（不区分状态），只查 id 和 tags
+     *
+     * @param lastId 上一批的最大 id，第一批传 0
+     * @param limit  每批数量
+     * @return 用户列表（只有 id、tags）
+     */
+    List<User> selectIdAndTagsAfterId(@Param("lastId") long lastId, @Param("limit") int limit);
 }
 
 
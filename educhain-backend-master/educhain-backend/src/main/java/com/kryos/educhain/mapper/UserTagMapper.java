@@ -0,0 +1,51 @@
+package com.kryos.educhain.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.kryos.educhain.model.domain.User;
+import com.kryos.educhain.model.domain.UserTag;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 用户标签关系 Mapper
+ */
+public interface UserTagMapper extends BaseMapper<UserTag> {
+
+    /**
+     * 批量插入某个用户的标签关系，已存在的忽略
+     *
+     * @param userId 用户 id
+     * @param tagIds 标签 id
+     * @return 插入的行数
+     */
+    int insertIgnoreBatch(@Param("userId") long userId, @Param("tagIds") Collection<Long> tagIds);
+
+    /**
+     * 批量插入多个用户的标签关系，已存在的忽略
+     *
+     * @param rows 标签关系（userId、tagId）
+     * @return 插入的行数
+     */
+    int insertIgnoreRows(@Param("rows") Collection<UserTag> rows);
+
+    /**
+     * 查询同时拥有所有标签的正常用户（按 id 升序）
+     *
+     * @param tagIds 标签 id（不重复）
+     * @param offset 跳过的数量
+     * @param limit  返回数量，为 null 时返回全部
+     * @return 用户
+     */
+    List<User> selectUsersByTagIds(@Param("tagIds") Collection<Long> tagIds,
+                                   @Param("offset") Long offset, @Param("limit") Long limit);
+
+    /**
+     * 统计同时拥有所有标签的正常用户数
+     *
+     * @param tagIds 标签 id（不重复）
+     * @return 用户数
+     */
+    long countUsersByTagIds(@Param("tagIds") Collection<Long> tagIds);
+}
@@ -0,0 +1,422 @@
+package com.kryos.educhain.match;
+
+import com.kryos.educhain.config.MatchConfig;
+import com.kryos.educhain.index.TagProfile;
+import com.kryos.educhain.index.TagProfileStore;
+import com.kryos.educhain.utils.AlgorithmUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 预计算的用户匹配列表
+ * 每个活跃用户的 Top-K 匹配结果存放在 Redis 有序集合 educhain:user:match:{userId} 中（成员为用户 id，分数为编辑距离），
+ * /user/match 直接读取，读取代价为 O(K)；用户修改标签后在后台线程中更新各活跃用户列表里该用户的分数，
+ * 无法保证列表仍是精确 Top-K 的列表直接删除，下次读取时重算；定时任务负责全量校正
+ * 分数都基于本实例的内存画像计算，画像通过变更日志在各实例间同步，全量重算前先同步到最新
+ */
+@Component
+@Slf4j
+public class PrecomputedMatchStore {
+
+    private static final String KEY_PREFIX = "educhain:user:match:";
+
+    /**
+     * 活跃用户：成员为用户 id，分数为最近一次请求匹配的时间戳
+     */
+    private static final String ACTIVE_KEY = "educhain:user:match:active";
+
+    /**
+     * 后台更新时每次读取的活跃用户数
+     */
+    private static final int ACTIVE_BATCH_SIZE = 500;
+
+    /**
+     * 本地记录的活跃时间戳数量上限，超过后清空重新记录
+     */
+    private static final int MAX_LOCAL_STAMPS = 100000;
+
+    @Resource
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Resource
+    private UserMatchEngine userMatchEngine;
+
+    @Resource
+    private TagProfileStore tagProfileStore;
+
+    @Resource
+    private MatchConfig matchConfig;
+
+    @Resource
+    private ExecutorService matchRefreshExecutor;
+
+    /**
+     * 修改过标签、等待后台更新的用户
+     */
+    private final Set<Long> pendingUserIds = ConcurrentHashMap.newKeySet();
+
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+
+    /**
+     * 本实例最近一次写入活跃时间戳的时间，用于限制写入频率
+     */
+    private final Map<Long, Long> activeStamps = new ConcurrentHashMap<>();
+
+    /**
+     * 读取某个用户的匹配结果，列表不存在时现算并写入
+     *
+     * @param userId 用户 id
+     * @param num    返回数量
+     * @return 按编辑距离升序、id 升序排列的用户 id；不适用预计算（未开启、num 超过列表长度、用户无画像或 Redis 异常）时返回 null
+     */
+    public List<Long> match(long userId, int num) {
+        if (!isEnabled() || num <= 0 || num > matchConfig.getPrecomputeSize()) {
+            return null;
+        }
+        try {
+            stampActive(userId);
+            TopKCollector collector = read(userId);
+            if (collector == null) {
+                collector = refresh(userId);
+                if (collector == null) {
+                    return null;
+                }
+            }
+            List<Long> userIdList = collector.sortedIds();
+            return userIdList.size() > num ? userIdList.subList(0, num) : userIdList;
+        } catch (Exception e) {
+            log.warn("读取用户 {} 的预计算匹配列表失败: {}", userId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 重新计算并写入某个用户的匹配列表
+     *
+     * @param userId 用户 id
+     * @return 新的匹配结果，用户没有标签画像时返回 null
+     */
+    public TopKCollector refresh(long userId) {
+        TopKCollector collector = userMatchEngine.matchProfile(userId, matchConfig.getPrecomputeSize());
+        write(userId, collector);
+        return collector;
+    }
+
+    /**
+     * 用户标签变化（或用户被删除）后异步更新，不阻塞请求线程
+     * 编辑距离与标签列表长度有关，不共享标签的用户之间排名也会变化，因此更新所有活跃用户的列表
+     *
+     * @param userId 用户 id
+     */
+    public void onTagsChanged(long userId) {
+        if (!isEnabled()) {
+            return;
+        }
+        pendingUserIds.add(userId);
+        if (drainScheduled.compareAndSet(false, true)) {
+            try {
+                matchRefreshExecutor.execute(this::drainPendingChanges);
+            } catch (RejectedExecutionException e) {
+                drainScheduled.set(false);
+                log.warn("提交预计算匹配列表更新任务失败，等待定时任务校正: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 删除某个用户的匹配列表（如用户被删除），并在后台从其他用户的列表中移除该用户
+     */
+    public void evict(long userId) {
+        try {
+            redisTemplate.delete(KEY_PREFIX + userId);
+            redisTemplate.opsForZSet().remove(ACTIVE_KEY, userId);
+            activeStamps.remove(userId);
+        } catch (Exception e) {
+            log.warn("删除用户 {} 的预计算匹配列表失败: {}", userId, e.getMessage());
+        }
+        // 从其他用户的列表中移除
+        onTagsChanged(userId);
+    }
+
+    /**
+     * 为近期活跃的用户全量重算匹配列表（定时任务调用）
+     *
+     * @return 重算的用户数
+     */
+    public int refreshActiveUsers() {
+        if (!isEnabled()) {
+            return 0;
+        }
+        // 先清掉超过活跃期的用户，它们的列表靠过期时间回收
+        long cutoff = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(matchConfig.getPrecomputeActiveDays());
+        redisTemplate.opsForZSet().removeRangeByScore(ACTIVE_KEY, 0, cutoff);
+        activeStamps.clear();
+        // 拿到锁的实例不一定处理过最近的修改，先把其他实例的修改同步到本地画像
+        userMatchEngine.syncChanges();
+        int count = 0;
+        for (Long userId : activeUserIds()) {
+            try {
+                refresh(userId);
+                count++;
+            } catch (Exception e) {
+                log.warn("重算用户 {} 的匹配列表失败: {}", userId, e.getMessage());
+            }
+        }
+        return count;
+    }
+
+    private boolean isEnabled() {
+        return matchConfig.isPrecomputeEnabled() && matchConfig.isProfileCacheEnabled();
+    }
+
+    private Set<Long> activeUserIds() {
+        Set<Object> members = redisTemplate.opsForZSet().range(ACTIVE_KEY, 0, -1);
+        if (members == null || members.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<Long> userIds = new HashSet<>(members.size() * 4 / 3 + 1);
+        for (Object member : members) {
+            if (member instanceof Number) {
+                userIds.add(((Number) member).longValue());
+            }
+        }
+        return userIds;
+    }
+
+    /**
+     * 记录活跃时间戳；同一用户在 precomputeActiveStampMinutes 内只写一次 Redis
+     */
+    private void stampActive(long userId) {
+        long now = System.currentTimeMillis();
+        Long last = activeStamps.get(userId);
+        if (last != null && now - last < TimeUnit.MINUTES.toMillis(matchConfig.getPrecomputeActiveStampMinutes())) {
+            return;
+        }
+        if (activeStamps.size() >= MAX_LOCAL_STAMPS) {
+            activeStamps.clear();
+        }
+        redisTemplate.opsForZSet().add(ACTIVE_KEY, userId, now);
+        activeStamps.put(userId, now);
+    }
+
+    /**
+     * 后台处理所有待更新的用户：这些用户自己的列表删除后懒重算，其他活跃用户的列表中重新计算这些用户的分数
+     */
+    private void drainPendingChanges() {
+        drainScheduled.set(false);
+        Set<Long> changedUserIds = new HashSet<>();
+        for (Iterator<Long> iterator = pendingUserIds.iterator(); iterator.hasNext(); ) {
+            changedUserIds.add(iterator.next());
+            iterator.remove();
+        }
+        if (changedUserIds.isEmpty()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        int rescored = 0;
+        int invalidated = 0;
+        try {
+            List<String> ownKeys = new ArrayList<>(changedUserIds.size());
+            Map<Long, TagProfile> changedProfiles = new HashMap<>();
+            for (Long userId : changedUserIds) {
+                ownKeys.add(KEY_PREFIX + userId);
+                changedProfiles.put(userId, tagProfileStore.get(userId));
+            }
+            redisTemplate.delete(ownKeys);
+            for (long offset = 0; ; offset += ACTIVE_BATCH_SIZE) {
+                Set<Object> members = redisTemplate.opsForZSet().range(ACTIVE_KEY, offset, offset + ACTIVE_BATCH_SIZE - 1);
+                if (members == null || members.isEmpty()) {
+                    break;
+                }
+                for (Object member : members) {
+                    if (!(member instanceof Number) || changedUserIds.contains(((Number) member).longValue())) {
+                        continue;
+                    }
+                    try {
+                        Boolean kept = rescore(((Number) member).longValue(), changedProfiles);
+                        if (kept == null) {
+                            continue;
+                        }
+                        if (kept) {
+                            rescored++;
+                        } else {
+                            invalidated++;
+                        }
+                    } catch (Exception e) {
+                        log.warn("更新用户 {} 的预计算匹配列表失败: {}", member, e.getMessage());
+                    }
+                }
+                if (members.size() < ACTIVE_BATCH_SIZE) {
+                    break;
+                }
+            }
+            log.info("{} 个用户标签变化，更新 {} 个预计算匹配列表，删除 {} 个待重算，耗时 {} ms",
+                    changedUserIds.size(), rescored, invalidated, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("更新预计算匹配列表失败，等待定时任务校正: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 在某个活跃用户的列表中重新计算被修改用户的分数
+     * 读取和写回之间用 WATCH 保护：期间列表被其他线程或实例改写时事务不执行，直接删除列表，下次读取时重算
+     *
+     * @return 列表没有变化时返回 null，更新后写回返回 true，删除待重算返回 false
+     */
+    private Boolean rescore(long ownerId, Map<Long, TagProfile> changedProfiles) {
+        TagProfile ownerProfile = tagProfileStore.get(ownerId);
+        if (ownerProfile == null) {
+            return null;
+        }
+        String key = KEY_PREFIX + ownerId;
+        return redisTemplate.execute(new SessionCallback<Boolean>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Boolean execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                ops.watch(key);
+                TopKCollector current = read(ops, ownerId);
+                TopKCollector collector = current == null ? null : rescored(current, ownerProfile, changedProfiles);
+                if (collector == null) {
+                    ops.unwatch();
+                    return null;
+                }
+                boolean full = current.size() >= matchConfig.getPrecomputeSize();
+                boolean keep = collector.size() > 0 && !(full && !collector.isFull());
+                ops.multi();
+                if (keep) {
+                    queueWrite(ops, key, collector);
+                } else {
+                    ops.delete(key);
+                }
+                List<Object> results = ops.exec();
+                if (results == null || results.isEmpty()) {
+                    // 并发改写，不能确定结果仍是精确的 Top-K
+                    ops.delete(key);
+                    return false;
+                }
+                return keep;
+            }
+        });
+    }
+
+    /**
+     * 重新计算被修改用户的分数
+     * 原列表已满时，列表外的用户都排在原第 K 名之后，被修改用户只有仍不晚于原第 K 名才能确定名次；
+     * 否则列表会少于 K 名，由调用方删除待重算
+     *
+     * @return 新的列表，没有变化时返回 null
+     */
+    private TopKCollector rescored(TopKCollector current, TagProfile ownerProfile, Map<Long, TagProfile> changedProfiles) {
+        int k = matchConfig.getPrecomputeSize();
+        List<Long> userIdList = current.sortedIds();
+        int[] scores = current.sortedScores();
+        boolean full = userIdList.size() >= k;
+        long lastId = userIdList.get(userIdList.size() - 1);
+        int lastScore = scores[scores.length - 1];
+        TopKCollector collector = new TopKCollector(k);
+        boolean changed = false;
+        for (int i = 0; i < userIdList.size(); i++) {
+            if (changedProfiles.containsKey(userIdList.get(i))) {
+                changed = true;
+            } else {
+                collector.offer(userIdList.get(i), scores[i]);
+            }
+        }
+        for (Map.Entry<Long, TagProfile> entry : changedProfiles.entrySet()) {
+            if (entry.getValue() == null) {
+                continue;
+            }
+            int maxDistance = full ? lastScore : Integer.MAX_VALUE;
+            int distance = AlgorithmUtils.minDistance(ownerProfile.getTagIds(), entry.getValue().getTagIds(), maxDistance);
+            if (distance > maxDistance || (full && distance == lastScore && entry.getKey() > lastId)) {
+                continue;
+            }
+            collector.offer(entry.getKey(), distance);
+            changed = true;
+        }
+        return changed ? collector : null;
+    }
+
+    /**
+     * 读取列表，不存在时返回 null
+     */
+    private TopKCollector read(long userId) {
+        return read(redisTemplate, userId);
+    }
+
+    private TopKCollector read(RedisOperations<String, Object> ops, long userId) {
+        Set<ZSetOperations.TypedTuple<Object>> tuples = ops.opsForZSet().rangeWithScores(KEY_PREFIX + userId, 0, -1);
+        if (tuples == null || tuples.isEmpty()) {
+            return null;
+        }
+        // 同分时 Redis 按成员字节序排列，这里重新按 (距离, id) 排序
+        TopKCollector collector = new TopKCollector(Math.max(tuples.size(), matchConfig.getPrecomputeSize()));
+        for (ZSetOperations.TypedTuple<Object> tuple : tuples) {
+            if (tuple.getValue() instanceof Number && tuple.getScore() != null) {
+                collector.offer(((Number) tuple.getValue()).longValue(), tuple.getScore().intValue());
+            }
+        }
+        return collector;
+    }
+
+    /**
+     * 写入唯一的临时键，在一个 MULTI 中 ZADD + EXPIRE + RENAME
+     * 并发写同一用户时互不干扰，读者不会看到写了一半的列表，也不会看到没有过期时间的列表
+     */
+    private void write(long userId, TopKCollector collector) {
+        String key = KEY_PREFIX + userId;
+        if (collector == null || collector.size() == 0) {
+            redisTemplate.delete(key);
+            return;
+        }
+        redisTemplate.execute(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                ops.multi();
+                queueWrite(ops, key, collector);
+                return ops.exec();
+            }
+        });
+    }
+
+    /**
+     * 在已开启的 MULTI 中排入写列表的命令
+     */
+    private void queueWrite(RedisOperations<String, Object> ops, String key, TopKCollector collector) {
+        String tmpKey = key + ":tmp:" + UUID.randomUUID();
+        Set<ZSetOperations.TypedTuple<Object>> tuples = new HashSet<>();
+        List<Long> userIdList = collector.sortedIds();
+        int[] scores = collector.sortedScores();
+        for (int i = 0; i < userIdList.size(); i++) {
+            tuples.add(new DefaultTypedTuple<>(userIdList.get(i), (double) scores[i]));
+        }
+        ops.opsForZSet().add(tmpKey, tuples);
+        ops.expire(tmpKey, matchConfig.getPrecomputeTtlHours(), TimeUnit.HOURS);
+        ops.rename(tmpKey, key);
+    }
+}
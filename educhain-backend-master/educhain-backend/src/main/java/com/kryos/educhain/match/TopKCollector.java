@@ -0,0 +1,165 @@
+package com.kryos.educhain.match;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 有界 Top-K 收集器
+ * 内部是按“差”排序的大顶堆，堆顶始终是当前第 K 名，扫描 N 个候选的代价为 N·logK
+ * 排序规则：分数（编辑距离）升序，分数相同时按用户 id 升序
+ */
+public class TopKCollector {
+
+    private final int k;
+
+    private final long[] ids;
+
+    private final int[] scores;
+
+    private int size;
+
+    public TopKCollector(int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive");
+        }
+        this.k = k;
+        this.ids = new long[k];
+        this.scores = new int[k];
+    }
+
+    /**
+     * 尝试加入一个候选
+     *
+     * @param id    用户 id
+     * @param score 分数，越小越相似
+     * @return 是否进入了 Top-K
+     */
+    public boolean offer(long id, int score) {
+        if (size < k) {
+            ids[size] = id;
+            scores[size] = score;
+            siftUp(size++);
+            return true;
+        }
+        // 不比堆顶（当前第 K 名）好，直接丢弃
+        if (!worse(ids[0], scores[0], id, score)) {
+            return false;
+        }
+        ids[0] = id;
+        scores[0] = score;
+        siftDown(0);
+        return true;
+    }
+
+    /**
+     * 当前进入 Top-K 所需的分数上界（含），未满时为 Integer.MAX_VALUE
+     * 分数严格大于该值的候选不可能进入结果，可用于提前剪枝
+     */
+    public int threshold() {
+        return size < k ? Integer.MAX_VALUE : scores[0];
+    }
+
+    /**
+     * 合并另一个收集器的结果
+     */
+    public void merge(TopKCollector other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.ids[i], other.scores[i]);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isFull() {
+        return size == k;
+    }
+
+    /**
+     * 按排序规则输出用户 id（最相似的在前）
+     */
+    public List<Long> sortedIds() {
+        int[] order = sortedOrder();
+        List<Long> result = new ArrayList<>(size);
+        for (int idx : order) {
+            result.add(ids[idx]);
+        }
+        return result;
+    }
+
+    /**
+     * 按排序规则输出分数，与 {@link #sortedIds()} 一一对应
+     */
+    public int[] sortedScores() {
+        int[] order = sortedOrder();
+        int[] result = new int[size];
+        for (int i = 0; i < order.length; i++) {
+            result[i] = scores[order[i]];
+        }
+        return result;
+    }
+
+    private int[] sortedOrder() {
+        // K 很小（<= 20），插入排序足够
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            int j = i;
+            while (j > 0 && worse(ids[order[j - 1]], scores[order[j - 1]], ids[i], scores[i])) {
+                order[j] = order[j - 1];
+                j--;
+            }
+            order[j] = i;
+        }
+        return order;
+    }
+
+    /**
+     * a 是否排在 b 之后
+     */
+    private static boolean worse(long idA, int scoreA, long idB, int scoreB) {
+        if (scoreA != scoreB) {
+            return scoreA > scoreB;
+        }
+        return idA > idB;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!worse(ids[i], scores[i], ids[parent], scores[parent])) {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= size) {
+                break;
+            }
+            int largest = left;
+            int right = left + 1;
+            if (right < size && worse(ids[right], scores[right], ids[left], scores[left])) {
+                largest = right;
+            }
+            if (!worse(ids[largest], scores[largest], ids[i], scores[i])) {
+                break;
+            }
+            swap(i, largest);
+            i = largest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        long id = ids[a];
+        ids[a] = ids[b];
+        ids[b] = id;
+        int score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+    }
+}
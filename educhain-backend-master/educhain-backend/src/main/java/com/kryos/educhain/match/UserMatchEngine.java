@@ -0,0 +1,425 @@
+package com.kryos.educhain.match;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.kryos.educhain.config.MatchConfig;
+import com.kryos.educhain.index.MinHashLshIndex;
+import com.kryos.educhain.index.TagChangeLog;
+import com.kryos.educhain.index.TagProfile;
+import com.kryos.educhain.index.TagProfileStore;
+import com.kryos.educhain.mapper.UserMapper;
+import com.kryos.educhain.model.domain.User;
+import com.kryos.educhain.model.enums.MatchModeEnum;
+import com.kryos.educhain.utils.AlgorithmUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+
+/**
+ * 用户匹配引擎
+ * 边扫描边维护有界 Top-K 堆，不再为全体用户构造 (用户, 距离) 列表后整体排序
+ * 内存画像和 LSH 索引每个实例各一份，其他实例的修改每隔几秒从变更日志同步
+ */
+@Component
+@Slf4j
+public class UserMatchEngine {
+
+    private static final Type TAG_LIST_TYPE = new TypeToken<List<String>>() {
+    }.getType();
+
+    @Resource
+    private UserMapper userMapper;
+
+    @Resource
+    private MatchConfig matchConfig;
+
+    @Resource
+    private ForkJoinPool matchForkJoinPool;
+
+    @Resource
+    private TagProfileStore tagProfileStore;
+
+    @Resource
+    private MinHashLshIndex minHashLshIndex;
+
+    @Resource
+    private TagChangeLog tagChangeLog;
+
+    @Resource
+    private ExecutorService matchRefreshExecutor;
+
+    private final Gson gson = new Gson();
+
+    /**
+     * 是否已提交 LSH 索引的后台构建任务
+     */
+    private final AtomicBoolean lshBuildScheduled = new AtomicBoolean();
+
+    /**
+     * 计算与给定标签最相似的用户
+     *
+     * @param tagList     当前用户的标签
+     * @param loginUserId 当前用户 id（不参与匹配）
+     * @param num         返回数量
+     * @param mode        匹配模式，为 null 时使用配置的默认模式
+     * @return 按编辑距离升序、id 升序排列的用户 id
+     */
+    public List<Long> match(List<String> tagList, long loginUserId, int num, MatchModeEnum mode) {
+        if (num <= 0) {
+            return Collections.emptyList();
+        }
+        if (tagList == null) {
+            tagList = Collections.emptyList();
+        }
+        if (mode == null) {
+            mode = MatchModeEnum.getEnumByValue(matchConfig.getMode());
+        }
+        TopKCollector collector;
+        if (matchConfig.isProfileCacheEnabled()) {
+            // 基于内存画像打分，不查库也不解析 json
+            collector = matchProfiles(tagProfileStore.encode(tagList), loginUserId, num, mode);
+        } else {
+            // 流式扫描 user 表，边读边打分，每个请求只保留 Top-K
+            List<String> finalTagList = tagList;
+            TopKCollector streamCollector = new TopKCollector(num);
+            userMapper.scanIdAndTags(context -> scoreUser(context.getResultObject(), finalTagList, loginUserId, streamCollector));
+            collector = streamCollector;
+        }
+        return collector.sortedIds();
+    }
+
+    /**
+     * 以某个用户当前的标签画像为查询做精确匹配（用于预计算匹配列表）
+     *
+     * @param userId 用户 id
+     * @param num    返回数量
+     * @return 带分数的 Top-K 结果，用户没有标签画像时返回 null
+     */
+    public TopKCollector matchProfile(long userId, int num) {
+        TagProfile profile = tagProfileStore.get(userId);
+        if (profile == null || num <= 0) {
+            return null;
+        }
+        return matchProfiles(profile.getTagIds(), userId, num, MatchModeEnum.EXACT);
+    }
+
+    /**
+     * 用户标签或状态变化后同步画像和 LSH 索引
+     *
+     * @param userId     用户 id
+     * @param tagsJson   新的标签 json
+     * @param userStatus 用户状态，非正常状态的用户移出匹配范围
+     */
+    public void updateUserTags(long userId, String tagsJson, Integer userStatus) {
+        tagProfileStore.update(userId, tagsJson, userStatus);
+        if (minHashLshIndex.isBuilt()) {
+            minHashLshIndex.update(userId, tagProfileStore.get(userId));
+        }
+    }
+
+    /**
+     * 用户被删除后移出匹配范围
+     */
+    public void removeUser(long userId) {
+        tagProfileStore.remove(userId);
+        if (minHashLshIndex.isBuilt()) {
+            minHashLshIndex.update(userId, null);
+        }
+    }
+
+    /**
+     * 读取其他实例记入变更日志的修改，从数据库重新读取这些用户后更新画像和 LSH 索引
+     */
+    @Scheduled(fixedDelay = 5000)
+    public synchronized void syncChanges() {
+        if (!matchConfig.isProfileCacheEnabled() || !tagProfileStore.isLoaded()) {
+            return;
+        }
+        try {
+            long fromSeq = tagProfileStore.getAppliedSeq();
+            TagChangeLog.Changes changes = tagChangeLog.read(fromSeq);
+            if (changes == null) {
+                return;
+            }
+            if (changes.isTruncated()) {
+                log.info("用户匹配索引落后变更日志过多，全量重建");
+                rebuild();
+                return;
+            }
+            Map<Long, User> userMap = tagChangeLog.loadUsers(changes.getUserIds());
+            for (Long userId : changes.getUserIds()) {
+                User user = userMap.get(userId);
+                if (user == null) {
+                    // 查不到说明用户已被删除
+                    removeUser(userId);
+                } else {
+                    updateUserTags(userId, user.getTags(), user.getUserStatus());
+                }
+            }
+            tagProfileStore.setAppliedSeq(changes.getSeq());
+            if (!changes.getUserIds().isEmpty()) {
+                log.info("用户匹配索引同步 {} 个用户的变更，序号 {} -> {}", changes.getUserIds().size(), fromSeq, changes.getSeq());
+            }
+        } catch (Exception e) {
+            log.warn("同步用户匹配索引变更失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 从数据库全量重建画像和 LSH 索引（每晚各实例分别执行）
+     */
+    public synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+        tagProfileStore.reload();
+        minHashLshIndex.rebuild(tagProfileStore.profiles());
+        log.info("用户匹配索引重建完成，耗时 {} ms", System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 基于内存画像召回候选并打分
+     */
+    private TopKCollector matchProfiles(int[] queryTagIds, long loginUserId, int num, MatchModeEnum mode) {
+        Collection<TagProfile> candidates = mode == MatchModeEnum.APPROXIMATE
+                ? approximateCandidates(queryTagIds, loginUserId, num)
+                : generateCandidates(queryTagIds, loginUserId, num);
+        return scoreAll(candidates, num,
+                (profile, c) -> scoreProfile(profile, queryTagIds, loginUserId, c));
+    }
+
+    /**
+     * 近似召回：只取与当前用户 MinHash 签名至少有一段相同的用户
+     * LSH 索引尚未构建时在后台构建，本次以及召回数量不足 num 时退化为精确模式的召回
+     */
+    private Collection<TagProfile> approximateCandidates(int[] queryTagIds, long loginUserId, int num) {
+        if (!minHashLshIndex.isBuilt()) {
+            scheduleLshBuild();
+            return generateCandidates(queryTagIds, loginUserId, num);
+        }
+        int[] sortedTagIds = Arrays.stream(queryTagIds).filter(id -> id >= 0).sorted().distinct().toArray();
+        Set<Long> userIds = minHashLshIndex.candidates(sortedTagIds);
+        List<TagProfile> candidates = new ArrayList<>(userIds.size());
+        for (Long userId : userIds) {
+            if (userId == loginUserId) {
+                continue;
+            }
+            TagProfile profile = tagProfileStore.get(userId);
+            if (profile != null) {
+                candidates.add(profile);
+            }
+        }
+        if (candidates.size() < num) {
+            log.debug("LSH 召回数量 {} 不足 {}，退化为精确召回", candidates.size(), num);
+            return generateCandidates(queryTagIds, loginUserId, num);
+        }
+        return candidates;
+    }
+
+    /**
+     * 在后台线程构建 LSH 索引，不占用请求线程
+     */
+    private void scheduleLshBuild() {
+        if (!lshBuildScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            matchRefreshExecutor.execute(() -> {
+                try {
+                    if (!minHashLshIndex.isBuilt()) {
+                        minHashLshIndex.rebuild(tagProfileStore.profiles());
+                        log.info("LSH 索引构建完成");
+                    }
+                } catch (Exception e) {
+                    log.error("构建 LSH 索引失败: {}", e.getMessage(), e);
+                } finally {
+                    lshBuildScheduled.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            lshBuildScheduled.set(false);
+            log.warn("提交 LSH 索引构建任务失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 候选召回：通过倒排表只取与当前用户至少共享 M 个标签的用户
+     * 几乎人人都有的停用标签不参与召回，否则候选接近全体用户；共享标签数用位图按层计算，不逐个用户计数
+     * 当前用户的已知标签过少、只有停用标签，或召回数量不足 num 时，退化为全量扫描
+     */
+    private Collection<TagProfile> generateCandidates(int[] queryTagIds, long loginUserId, int num) {
+        Collection<TagProfile> allProfiles = tagProfileStore.profiles();
+        if (!matchConfig.isCandidateEnabled()) {
+            return allProfiles;
+        }
+        int[] knownTagIds = Arrays.stream(queryTagIds).filter(id -> id >= 0).distinct().toArray();
+        if (knownTagIds.length < matchConfig.getCandidateMinQueryTags()) {
+            return allProfiles;
+        }
+        long maxPosting = (long) (allProfiles.size() * matchConfig.getCandidateStopTagRatio());
+        List<RoaringBitmap> postings = new ArrayList<>(knownTagIds.length);
+        for (int tagId : knownTagIds) {
+            RoaringBitmap posting = tagProfileStore.postings(tagId);
+            if (!posting.isEmpty() && posting.getLongCardinality() <= maxPosting) {
+                postings.add(posting);
+            }
+        }
+        if (postings.isEmpty()) {
+            return allProfiles;
+        }
+        int minShared = Math.max(1, Math.min(matchConfig.getCandidateMinSharedTags(), postings.size()));
+        RoaringBitmap matched = atLeast(postings, minShared);
+        List<TagProfile> candidates = new ArrayList<>(matched.getCardinality());
+        IntIterator iterator = matched.getIntIterator();
+        while (iterator.hasNext()) {
+            long userId = Integer.toUnsignedLong(iterator.next());
+            if (userId == loginUserId) {
+                continue;
+            }
+            TagProfile profile = tagProfileStore.get(userId);
+            if (profile != null) {
+                candidates.add(profile);
+            }
+        }
+        if (candidates.size() < num) {
+            log.debug("候选召回数量 {} 不足 {}，退化为全量扫描", candidates.size(), num);
+            return allProfiles;
+        }
+        log.debug("候选召回 {} / {} 个用户", candidates.size(), allProfiles.size());
+        return candidates;
+    }
+
+    /**
+     * 至少出现在 minShared 个位图中的用户
+     * atLeast[k] 表示已处理的位图中至少出现 k + 1 次的用户，每加入一个位图从高层到低层更新一遍
+     */
+    private static RoaringBitmap atLeast(List<RoaringBitmap> postings, int minShared) {
+        if (minShared <= 1) {
+            return FastAggregation.or(postings.iterator());
+        }
+        RoaringBitmap[] atLeast = new RoaringBitmap[minShared];
+        Arrays.fill(atLeast, new RoaringBitmap());
+        for (RoaringBitmap posting : postings) {
+            for (int k = minShared - 1; k > 0; k--) {
+                atLeast[k] = RoaringBitmap.or(atLeast[k], RoaringBitmap.and(atLeast[k - 1], posting));
+            }
+            atLeast[0] = RoaringBitmap.or(atLeast[0], posting);
+        }
+        return atLeast[minShared - 1];
+    }
+
+    /**
+     * 对所有候选打分，候选量大时拆块并行，各块保留自己的 Top-K 后再合并
+     */
+    private <T> TopKCollector scoreAll(Collection<T> candidates, int num, BiConsumer<T, TopKCollector> scorer) {
+        if (matchConfig.getParallelism() > 1 && candidates.size() >= matchConfig.getParallelThreshold()) {
+            // 复制一份引用，便于按下标拆块；相比打分开销可以忽略
+            List<T> candidateList = new ArrayList<>(candidates);
+            return matchForkJoinPool.invoke(new ScoreTask<>(candidateList, 0, candidateList.size(), num, scorer));
+        }
+        TopKCollector collector = new TopKCollector(num);
+        for (T candidate : candidates) {
+            scorer.accept(candidate, collector);
+        }
+        return collector;
+    }
+
+    /**
+     * 基于画像计算单个用户的分数并放入收集器
+     */
+    private void scoreProfile(TagProfile profile, int[] queryTagIds, long loginUserId, TopKCollector collector) {
+        if (profile.getUserId() == loginUserId) {
+            return;
+        }
+        // 超过当前第 K 名的距离就不可能入选，带上界计算可提前结束
+        int threshold = collector.threshold();
+        int distance = AlgorithmUtils.minDistance(queryTagIds, profile.getTagIds(), threshold);
+        if (distance <= threshold) {
+            collector.offer(profile.getUserId(), distance);
+        }
+    }
+
+    /**
+     * 基于数据库行计算单个用户的分数并放入收集器
+     */
+    private void scoreUser(User user, List<String> tagList, long loginUserId, TopKCollector collector) {
+        String userTags = user.getTags();
+        // 无标签或者为当前用户自己
+        if (StringUtils.isBlank(userTags) || user.getId() == loginUserId) {
+            return;
+        }
+        // 封禁等状态异常的用户不作为候选，否则结果脱敏时被过滤，返回的数量少于 num
+        if (user.getUserStatus() != null && user.getUserStatus() != 0) {
+            return;
+        }
+        List<String> userTagList = gson.fromJson(userTags, TAG_LIST_TYPE);
+        if (userTagList == null) {
+            return;
+        }
+        int threshold = collector.threshold();
+        int distance = AlgorithmUtils.minDistance(tagList, userTagList, threshold);
+        if (distance <= threshold) {
+            collector.offer(user.getId(), distance);
+        }
+    }
+
+    /**
+     * 并行打分子任务：块足够小时顺序打分，否则一分为二
+     */
+    private class ScoreTask<T> extends RecursiveTask<TopKCollector> {
+
+        private final List<T> candidates;
+
+        private final int from;
+
+        private final int to;
+
+        private final int num;
+
+        private final BiConsumer<T, TopKCollector> scorer;
+
+        ScoreTask(List<T> candidates, int from, int to, int num, BiConsumer<T, TopKCollector> scorer) {
+            this.candidates = candidates;
+            this.from = from;
+            this.to = to;
+            this.num = num;
+            this.scorer = scorer;
+        }
+
+        @Override
+        protected TopKCollector compute() {
+            if (to - from <= Math.max(1, matchConfig.getChunkSize())) {
+                TopKCollector collector = new TopKCollector(num);
+                for (int i = from; i < to; i++) {
+                    scorer.accept(candidates.get(i), collector);
+                }
+                return collector;
+            }
+            int mid = (from + to) >>> 1;
+            ScoreTask<T> left = new ScoreTask<>(candidates, from, mid, num, scorer);
+            ScoreTask<T> right = new ScoreTask<>(candidates, mid, to, num, scorer);
+            left.fork();
+            TopKCollector collector = right.compute();
+            collector.merge(left.join());
+            return collector;
+        }
+    }
+}
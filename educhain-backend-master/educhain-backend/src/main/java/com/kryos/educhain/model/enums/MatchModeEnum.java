@@ -0,0 +1,49 @@
+package com.kryos.educhain.model.enums;
+
+/**
+ * 用户匹配模式枚举
+ */
+public enum MatchModeEnum {
+
+    EXACT("exact", "精确匹配"),
+    APPROXIMATE("approximate", "近似匹配（MinHash/LSH）");
+
+    private String value;
+
+    private String text;
+
+
+    public static MatchModeEnum getEnumByValue(String value) {
+        if (value == null) {
+            return null;
+        }
+        MatchModeEnum[] values = MatchModeEnum.values();
+        for (MatchModeEnum matchModeEnum : values) {
+            if (matchModeEnum.getValue().equalsIgnoreCase(value)) {
+                return matchModeEnum;
+            }
+        }
+        return null;
+    }
+
+    MatchModeEnum(String value, String text) {
+        this.value = value;
+        this.text = text;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public void setValue(String value) {
+        this.value = value;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public void setText(String text) {
+        this.text = text;
+    }
+}
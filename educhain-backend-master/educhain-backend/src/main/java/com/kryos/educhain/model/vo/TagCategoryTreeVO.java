@@ -0,0 +1,30 @@
+package com.kryos.educhain.model.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按分类分组的标签树及其版本
+ */
+@Data
+@AllArgsConstructor
+public class TagCategoryTreeVO {
+
+    /**
+     * 标签树版本，增删标签时递增
+     */
+    private long version;
+
+    /**
+     * 标签树内容的 ETag，用于 If-None-Match 协商缓存
+     */
+    private String etag;
+
+    /**
+     * 分类列表，每个分类包含 text 和 children（子标签的 text、id）
+     */
+    private List<Map<String, Object>> categories;
+}
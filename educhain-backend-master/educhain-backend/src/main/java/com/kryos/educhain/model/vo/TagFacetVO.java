@@ -0,0 +1,28 @@
+package com.kryos.educhain.model.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 标签搜索的"细化筛选"项：搜索结果中同时拥有该标签的用户数
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TagFacetVO implements Serializable {
+
+    /**
+     * 标签名
+     */
+    private String tagName;
+
+    /**
+     * 搜索结果中拥有该标签的用户数
+     */
+    private long count;
+
+    private static final long serialVersionUID = 1L;
+}
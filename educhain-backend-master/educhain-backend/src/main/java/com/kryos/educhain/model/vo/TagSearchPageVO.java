@@ -0,0 +1,39 @@
+package com.kryos.educhain.model.vo;
+
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.kryos.educhain.model.domain.User;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 带"细化筛选"标签或标签纠正提示的标签搜索分页结果
+ * 在分页字段之外多一个 facets；facets 只与查询有关，按查询单独缓存，翻页时复用
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+@NoArgsConstructor
+public class TagSearchPageVO extends Page<User> {
+
+    /**
+     * 与搜索结果共现最多的标签，按用户数降序
+     */
+    private List<TagFacetVO> facets;
+
+    /**
+     * 被纠正的查询标签（原标签 => 实际搜索的标签），用于提示"您要找的是不是"
+     */
+    private Map<String, String> corrections;
+
+    public TagSearchPageVO(Page<User> page, List<TagFacetVO> facets, Map<String, String> corrections) {
+        super(page.getCurrent(), page.getSize(), page.getTotal());
+        setRecords(page.getRecords());
+        this.facets = facets;
+        this.corrections = corrections;
+    }
+
+    private static final long serialVersionUID = 1L;
+}
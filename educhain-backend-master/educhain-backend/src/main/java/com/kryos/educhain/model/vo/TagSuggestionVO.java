@@ -0,0 +1,28 @@
+package com.kryos.educhain.model.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 标签名联想结果
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TagSuggestionVO implements Serializable {
+
+    /**
+     * 标签名
+     */
+    private String tagName;
+
+    /**
+     * 拥有该标签的用户数
+     */
+    private long userCount;
+
+    private static final long serialVersionUID = 1L;
+}
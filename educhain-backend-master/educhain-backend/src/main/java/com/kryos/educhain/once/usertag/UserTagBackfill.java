@@ -0,0 +1,25 @@
+package com.kryos.educhain.once.usertag;
+
+import com.kryos.educhain.service.UserTagService;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+
+/**
+ * 回填用户标签关系任务（从 user.tags json 生成 user_tag，上线 user_tag 表后执行一次）
+ * MySQL 8.0+ 也可以直接执行 sql/user_tag_table.sql 中的回填语句
+ */
+@Component
+public class UserTagBackfill {
+
+    @Resource
+    private UserTagService userTagService;
+
+    /**
+     * 全量回填
+     */
+//    @Scheduled(initialDelay = 5000, fixedRate = Long.MAX_VALUE)
+    public void doBackfill() {
+        userTagService.backfill();
+    }
+}
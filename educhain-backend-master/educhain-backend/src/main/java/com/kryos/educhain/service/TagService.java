@@ -2,6 +2,8 @@ package com.kryos.educhain.service;
 
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.kryos.educhain.model.domain.Tag;
+import com.kryos.educhain.model.vo.TagCategoryTreeVO;
+import com.kryos.educhain.model.vo.TagSuggestionVO;
 
 import java.util.List;
 import java.util.Map;
@@ -16,6 +18,35 @@ public interface TagService extends IService<Tag> {
      * @return 分类分组的标签
      */
     List<Map<String, Object>> listTagsByCategory();
+
+    /**
+     * 获取按分类分组的标签树及其版本、ETag
+     * 一次查询组装，按版本缓存序列化结果，增删标签时版本递增
+     * @return 标签树
+     */
+    TagCategoryTreeVO getCategoryTree();
+
+    /**
+     * 按前缀联想标签名，按拥有该标签的用户数排序
+     * @param prefix 前缀
+     * @param limit 返回数量
+     * @return 标签列表
+     */
+    List<TagSuggestionVO> suggestTags(String prefix, int limit);
+
+    /**
+     * 添加标签，并登记到联想索引
+     * @param tag 标签信息
+     * @return 是否成功
+     */
+    boolean addTag(Tag tag);
+
+    /**
+     * 删除标签，并从联想索引中移除
+     * @param tagId 标签id
+     * @return 是否成功
+     */
+    boolean deleteTag(Long tagId);
     
     /**
      * 获取用户自定义标签
@@ -2,11 +2,13 @@ package com.kryos.educhain.service;
 
 import com.kryos.educhain.common.BaseResponse;
 import com.kryos.educhain.model.domain.User;
+import com.kryos.educhain.model.enums.MatchModeEnum;
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.kryos.educhain.model.vo.UserVO;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 
 import javax.servlet.http.HttpServletRequest;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -43,6 +45,30 @@ public interface UserService extends IService<User> {
      */
     User getSafetyUser(User originUser);
 
+    /**
+     * 批量获取脱敏后的用户（优先读缓存，未命中的一次查库并回填）
+     *
+     * @param userIdList 用户 id 列表
+     * @return 按传入顺序排列的用户，不存在、已删除或状态异常（如封禁）的用户会被跳过
+     */
+    List<User> listSafetyUsersByIds(Collection<Long> userIdList);
+
+    /**
+     * 批量获取脱敏后的用户，可包含封禁等状态异常的用户（如展示历史消息的收发人）
+     *
+     * @param userIdList      用户 id 列表
+     * @param includeAbnormal 是否返回状态异常的用户
+     * @return 按传入顺序排列的用户，不存在或已删除的用户会被跳过
+     */
+    List<User> listSafetyUsersByIds(Collection<Long> userIdList, boolean includeAbnormal);
+
+    /**
+     * 删除用户详情缓存 user:{id}（用户被删除、修改或状态变化时调用）
+     *
+     * @param userId 用户 id
+     */
+    void evictUserCache(long userId);
+
     /**
      * 用户注销
      *
@@ -78,6 +104,38 @@ public interface UserService extends IService<User> {
      * @return 分页用户数据
      */
     Page<User> searchUsersByTagsOptimized(List<String> tagNameList, long pageSize, long pageNum);
+
+    /**
+     * 根据标签搜索用户，可选同时返回"细化筛选"标签
+     *
+     * @param tagNameList 标签列表
+     * @param pageSize 页面大小
+     * @param pageNum 当前页码
+     * @param facets 是否统计与结果共现最多的标签，为 true 时返回 TagSearchPageVO
+     * @return 分页用户数据；有拼写纠正的标签时也返回 TagSearchPageVO，在 corrections 中列出
+     */
+    Page<User> searchUsersByTagsOptimized(List<String> tagNameList, long pageSize, long pageNum, boolean facets);
+
+    /**
+     * 按布尔标签查询搜索用户，如 (Java OR Python) AND NOT 游戏
+     *
+     * @param tagQuery 布尔标签查询
+     * @param pageSize 页面大小
+     * @param pageNum 当前页码
+     * @return 分页用户数据
+     */
+    Page<User> searchUsersByTagQuery(String tagQuery, long pageSize, long pageNum);
+
+    /**
+     * 按布尔标签查询搜索用户，可选同时返回"细化筛选"标签
+     *
+     * @param tagQuery 布尔标签查询
+     * @param pageSize 页面大小
+     * @param pageNum 当前页码
+     * @param facets 是否统计与结果共现最多的标签，为 true 时返回 TagSearchPageVO
+     * @return 分页用户数据；有拼写纠正的标签时也返回 TagSearchPageVO，在 corrections 中列出
+     */
+    Page<User> searchUsersByTagQuery(String tagQuery, long pageSize, long pageNum, boolean facets);
     
     /**
      * 根据用户名或用户账号搜索用户（毫秒级响应）
@@ -91,7 +149,7 @@ public interface UserService extends IService<User> {
     
     /**
      * 预热标签到用户的映射缓存
-     * 全量缓存所有标签和用户的对应关系到Redis
+     * 标签-用户集合平时随用户修改标签增量维护，这里按数据库全量对账，只修正偏差
      */
     void preHeatTagsUserMapping();
 
@@ -131,4 +189,13 @@ public interface UserService extends IService<User> {
      * @return
      */
     List<User> matchUsers(long num, User loginUser);
+
+    /**
+     * 匹配用户（指定匹配模式）
+     * @param num
+     * @param loginUser
+     * @param mode 匹配模式，为 null 时使用配置的默认模式
+     * @return
+     */
+    List<User> matchUsers(long num, User loginUser, MatchModeEnum mode);
 }
@@ -0,0 +1,56 @@
+package com.kryos.educhain.service;
+
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.kryos.educhain.model.domain.Tag;
+import com.kryos.educhain.model.domain.User;
+import com.kryos.educhain.model.domain.UserTag;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 用户标签关系服务
+ */
+public interface UserTagService extends IService<UserTag> {
+
+    /**
+     * 按用户当前的 tags json 同步标签关系
+     *
+     * @param userId   用户 id
+     * @param tagsJson 标签 json
+     */
+    void syncUserTags(long userId, String tagsJson);
+
+    /**
+     * 从 user 表的 tags json 全量回填标签关系
+     *
+     * @return 处理的用户数
+     */
+    long backfill();
+
+    /**
+     * 新登记标签后，异步为 tags json 中已有该标签的用户回填标签关系
+     * 回填完成前，包含该标签的查询按 tags json 匹配
+     *
+     * @param tag 新登记的标签
+     */
+    void backfillTag(Tag tag);
+
+    /**
+     * 查询同时拥有所有标签的正常用户（按 id 升序）
+     *
+     * @param tagNameList 标签名
+     * @param offset      跳过的数量
+     * @param limit       返回数量，为 null 时返回全部
+     * @return 用户（未脱敏）；有未登记的标签时按 tags json 匹配
+     */
+    List<User> listUsersByTags(Collection<String> tagNameList, Long offset, Long limit);
+
+    /**
+     * 统计同时拥有所有标签的正常用户数
+     *
+     * @param tagNameList 标签名
+     * @return 用户数；有未登记的标签时按 tags json 匹配
+     */
+    long countUsersByTags(Collection<String> tagNameList);
+}
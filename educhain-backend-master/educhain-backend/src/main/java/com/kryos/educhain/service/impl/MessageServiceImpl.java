@@ -181,8 +181,8 @@ public class MessageServiceImpl extends ServiceImpl<MessageMapper, Message> impl
             return new ArrayList<>();
         }
         
-        // 批量查询用户信息
-        List<User> users = userService.listByIds(userIds);
+        // 批量查询用户信息，已封禁的收发人也要显示
+        List<User> users = userService.listSafetyUsersByIds(userIds, true);
         Map<Long, User> userMap = users.stream()
                 .collect(Collectors.toMap(User::getId, user -> user));
         
@@ -2,62 +2,274 @@ package com.kryos.educhain.service.impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
 import com.kryos.educhain.exception.BusinessException;
 import com.kryos.educhain.common.ErrorCode;
+import com.kryos.educhain.index.FuzzyTagResolver;
+import com.kryos.educhain.index.RedisTagUserIndex;
+import com.kryos.educhain.index.TagCategories;
+import com.kryos.educhain.index.TagSuggestIndex;
 import com.kryos.educhain.mapper.TagMapper;
 import com.kryos.educhain.model.domain.Tag;
+import com.kryos.educhain.model.vo.TagCategoryTreeVO;
+import com.kryos.educhain.model.vo.TagSuggestionVO;
 import com.kryos.educhain.service.TagService;
+import com.kryos.educhain.service.UserTagService;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
 
+import javax.annotation.Resource;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 标签服务实现类
  */
 @Service
+@Slf4j
 public class TagServiceImpl extends ServiceImpl<TagMapper, Tag> implements TagService {
 
+    /**
+     * 序列化后的标签分类树 tag:category:tree:v{version}
+     */
+    private static final String CATEGORY_TREE_KEY_PREFIX = "tag:category:tree:v";
+
+    private static final long CATEGORY_TREE_TTL_HOURS = 24;
+
+    private static final Type CATEGORY_LIST_TYPE = new TypeToken<List<Map<String, Object>>>() {
+    }.getType();
+
+    @Resource
+    private TagSuggestIndex tagSuggestIndex;
+
+    @Resource
+    private TagCategories tagCategories;
+
+    @Resource
+    private FuzzyTagResolver fuzzyTagResolver;
+
+    @Resource
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Resource
+    private UserTagService userTagService;
+
+    private final Gson gson = new Gson();
+
+    /**
+     * 本实例最近一次组装或读取的标签树，版本未变时直接返回
+     */
+    private volatile TagCategoryTreeVO cachedTree;
+
     @Override
     public List<Map<String, Object>> listTagsByCategory() {
-        // 1. 查询所有父标签（即分类）
-        QueryWrapper<Tag> parentQuery = new QueryWrapper<>();
-        parentQuery.eq("isParent", 1)
-                  .eq("isDelete", 0);
-        List<Tag> parentTags = this.list(parentQuery);
+        return getCategoryTree().getCategories();
+    }
+
+    @Override
+    public TagCategoryTreeVO getCategoryTree() {
+        long version = currentCategoryVersion();
+        TagCategoryTreeVO current = cachedTree;
+        if (current != null && current.getVersion() == version) {
+            return current;
+        }
+        String treeKey = CATEGORY_TREE_KEY_PREFIX + version;
+        String json = null;
+        try {
+            Object cached = redisTemplate.opsForValue().get(treeKey);
+            if (cached instanceof String) {
+                json = (String) cached;
+            }
+        } catch (Exception e) {
+            log.warn("读取标签分类树缓存失败: {}", e.getMessage());
+        }
+        if (json == null) {
+            json = gson.toJson(buildCategoryTree());
+            try {
+                redisTemplate.opsForValue().set(treeKey, json, CATEGORY_TREE_TTL_HOURS, TimeUnit.HOURS);
+            } catch (Exception e) {
+                log.warn("写入标签分类树缓存失败: {}", e.getMessage());
+            }
+        }
+        List<Map<String, Object>> categories = gson.fromJson(json, CATEGORY_LIST_TYPE);
+        String etag = "\"" + version + "-" + DigestUtils.md5DigestAsHex(json.getBytes(StandardCharsets.UTF_8)) + "\"";
+        TagCategoryTreeVO tree = new TagCategoryTreeVO(version, etag, Collections.unmodifiableList(categories));
+        cachedTree = tree;
+        return tree;
+    }
+
+    /**
+     * 一次查询所有未删除的标签，在内存中按 parentId 组装分类树
+     */
+    private List<Map<String, Object>> buildCategoryTree() {
+        QueryWrapper<Tag> queryWrapper = new QueryWrapper<>();
+        queryWrapper.select("id", "tagName", "parentId", "isParent")
+                .eq("isDelete", 0)
+                .orderByAsc("id");
+        List<Tag> tagList = this.list(queryWrapper);
         
-        List<Map<String, Object>> resultList = new ArrayList<>();
+        Map<Long, List<Map<String, Object>>> childrenByParent = new HashMap<>();
+        for (Tag tag : tagList) {
+            if (tag.getParentId() == null || (tag.getIsParent() != null && tag.getIsParent() == 1)) {
+                continue;
+            }
+            Map<String, Object> childMap = new LinkedHashMap<>();
+            childMap.put("text", tag.getTagName());
+            childMap.put("id", tag.getTagName());
+            childrenByParent.computeIfAbsent(tag.getParentId(), k -> new ArrayList<>()).add(childMap);
+        }
         
-        // 对每个父标签（分类），查询其子标签
-        for (Tag parentTag : parentTags) {
-            Map<String, Object> categoryMap = new HashMap<>();
-            categoryMap.put("text", parentTag.getTagName());
-            
-            // 查询该分类下的所有子标签
-            QueryWrapper<Tag> childQuery = new QueryWrapper<>();
-            childQuery.eq("parentId", parentTag.getId())
-                     .eq("isParent", 0)
-                     .eq("isDelete", 0);
-            List<Tag> childTags = this.list(childQuery);
-            
-            // 构建子标签列表
-            List<Map<String, Object>> children = new ArrayList<>();
-            for (Tag childTag : childTags) {
-                Map<String, Object> childMap = new HashMap<>();
-                childMap.put("text", childTag.getTagName());
-                childMap.put("id", childTag.getTagName());
-                children.add(childMap);
+        List<Map<String, Object>> resultList = new ArrayList<>();
+        for (Tag tag : tagList) {
+            if (tag.getIsParent() == null || tag.getIsParent() != 1) {
+                continue;
             }
-            
-            categoryMap.put("children", children);
+            Map<String, Object> categoryMap = new LinkedHashMap<>();
+            categoryMap.put("text", tag.getTagName());
+            categoryMap.put("children", childrenByParent.getOrDefault(tag.getId(), new ArrayList<>()));
             resultList.add(categoryMap);
         }
-        
         return resultList;
     }
-    
+
+    /**
+     * 当前标签树版本，Redis 不可用时沿用本地版本
+     */
+    private long currentCategoryVersion() {
+        try {
+            Object version = redisTemplate.opsForValue().get(TagCategories.VERSION_KEY);
+            return version instanceof Number ? ((Number) version).longValue() : 0;
+        } catch (Exception e) {
+            log.warn("读取标签分类树版本失败: {}", e.getMessage());
+            TagCategoryTreeVO current = cachedTree;
+            return current == null ? 0 : current.getVersion();
+        }
+    }
+
+    /**
+     * 标签涉及的分类：分类标签本身，或子标签所属的分类
+     *
+     * @return 分类名集合，普通标签（包括用户自定义标签）为空集合
+     */
+    private Set<String> relatedCategories(Tag tag) {
+        Set<String> categories = new LinkedHashSet<>();
+        if (tag.getIsParent() != null && tag.getIsParent() == 1) {
+            if (StringUtils.isNotBlank(tag.getTagName())) {
+                categories.add(tag.getTagName());
+            }
+            return categories;
+        }
+        if (tag.getParentId() != null) {
+            Tag parent = this.getById(tag.getParentId());
+            if (parent != null && parent.getIsParent() != null && parent.getIsParent() == 1
+                    && StringUtils.isNotBlank(parent.getTagName())) {
+                categories.add(parent.getTagName());
+            }
+        }
+        return categories;
+    }
+
+    /**
+     * 父子关系变化后递增版本，各实例下次请求时重新组装分类树、重新加载标签分类，
+     * 并清除这些分类已缓存的搜索结果（按分类搜索的结果是子标签用户的并集）
+     *
+     * @param categories 子标签集合发生变化的分类，为空时不做任何事
+     */
+    private void onCategoriesChanged(Set<String> categories) {
+        if (categories.isEmpty()) {
+            return;
+        }
+        cachedTree = null;
+        try {
+            redisTemplate.opsForValue().increment(TagCategories.VERSION_KEY);
+        } catch (Exception e) {
+            log.warn("更新标签分类树版本失败: {}", e.getMessage());
+        }
+        try {
+            tagCategories.reload();
+        } catch (Exception e) {
+            log.warn("重新加载标签分类失败: {}", e.getMessage());
+        }
+        clearCategorySearchCache(categories);
+    }
+
+    /**
+     * 删除登记在分类名下的搜索缓存（分页、细化筛选标签）
+     */
+    private void clearCategorySearchCache(Set<String> categories) {
+        for (String category : categories) {
+            try {
+                Set<Object> cacheKeys = redisTemplate.opsForSet().members("tag:" + category + ":keys");
+                if (cacheKeys == null || cacheKeys.isEmpty()) {
+                    continue;
+                }
+                List<String> deletedKeys = new ArrayList<>(cacheKeys.size());
+                for (Object cacheKey : cacheKeys) {
+                    if (!RedisTagUserIndex.isIndexKey(cacheKey.toString())) {
+                        deletedKeys.add(cacheKey.toString());
+                    }
+                }
+                redisTemplate.delete(deletedKeys);
+                log.info("分类 {} 的子标签变化，删除 {} 个搜索缓存", category, deletedKeys.size());
+            } catch (Exception e) {
+                log.warn("清除分类 {} 的搜索缓存失败: {}", category, e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public List<TagSuggestionVO> suggestTags(String prefix, int limit) {
+        return tagSuggestIndex.suggest(prefix, limit);
+    }
+
+    @Override
+    public boolean addTag(Tag tag) {
+        if (tag == null) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR);
+        }
+        boolean result = this.save(tag);
+        if (result) {
+            // 已有用户的 tags json 中可能已经有这个标签，补写 user_tag 关系
+            try {
+                userTagService.backfillTag(tag);
+            } catch (Exception e) {
+                log.error("回填标签 {} 的用户标签关系失败: {}", tag.getTagName(), e.getMessage(), e);
+            }
+            tagSuggestIndex.add(tag);
+            fuzzyTagResolver.invalidate();
+            onCategoriesChanged(relatedCategories(tag));
+        }
+        return result;
+    }
+
+    @Override
+    public boolean deleteTag(Long tagId) {
+        if (tagId == null) {
+            throw new BusinessException(ErrorCode.PARAMS_ERROR, "标签ID不能为空");
+        }
+        Tag tag = this.getById(tagId);
+        boolean result = this.removeById(tagId);
+        if (result && tag != null) {
+            tagSuggestIndex.remove(tag);
+            fuzzyTagResolver.invalidate();
+            onCategoriesChanged(relatedCategories(tag));
+        }
+        return result;
+    }
+
     @Override
     public List<Tag> getUserTags(Long userId) {
         if (userId == null) {
@@ -90,6 +302,12 @@ public class TagServiceImpl extends ServiceImpl<TagMapper, Tag> implements TagSe
         }
         
         // 逻辑删除标签
-        return this.removeById(tagId);
+        boolean result = this.removeById(tagId);
+        if (result) {
+            tagSuggestIndex.remove(tag);
+            fuzzyTagResolver.invalidate();
+            onCategoriesChanged(relatedCategories(tag));
+        }
+        return result;
     }
-} 
\ No newline at end of file
+}
@@ -7,22 +7,48 @@ import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import com.kryos.educhain.common.ErrorCode;
 import com.kryos.educhain.constant.UserConstant;
+import com.kryos.educhain.config.SearchConfig;
 import com.kryos.educhain.exception.BusinessException;
+import com.kryos.educhain.index.FuzzyTagResolver;
+import com.kryos.educhain.index.RedisTagUserIndex;
+import com.kryos.educhain.index.TagBitmapIndex;
+import com.kryos.educhain.index.TagCategories;
+import com.kryos.educhain.index.TagExpression;
+import com.kryos.educhain.index.TagFacetCounter;
+import com.kryos.educhain.index.TagQueryParser;
+import com.kryos.educhain.index.TagQueryPlan;
+import com.kryos.educhain.index.TagStats;
+import com.kryos.educhain.match.PrecomputedMatchStore;
+import com.kryos.educhain.match.UserMatchEngine;
 import com.kryos.educhain.model.domain.User;
+import com.kryos.educhain.model.enums.MatchModeEnum;
+import com.kryos.educhain.model.vo.TagFacetVO;
+import com.kryos.educhain.model.vo.TagSearchPageVO;
 import com.kryos.educhain.model.vo.UserVO;
 import com.kryos.educhain.service.UserService;
+import com.kryos.educhain.service.UserTagService;
 import com.kryos.educhain.mapper.UserMapper;
-import com.kryos.educhain.utils.AlgorithmUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.tuple.Pair;
+import org.roaringbitmap.RoaringBitmap;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.DigestUtils;
 
 import javax.annotation.Resource;
 import javax.servlet.http.HttpServletRequest;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
@@ -40,13 +66,66 @@ import static com.kryos.educhain.constant.UserConstant.USER_LOGIN_STATE;
 public class UserServiceImpl extends ServiceImpl<UserMapper, User>
         implements UserService {
 
+    /**
+     * 脱敏用户详情缓存 user:{id}
+     */
+    private static final String USER_CACHE_KEY_PREFIX = "user:";
+
+    private static final long USER_CACHE_TTL_HOURS = 24;
+
+    /**
+     * 标签搜索每页最多返回的用户数
+     */
+    private static final long MAX_TAG_SEARCH_PAGE_SIZE = 100;
+
+    /**
+     * 含 NOT 的布尔查询缓存键：结果依赖全体有标签的用户，任何用户的标签变化都要清除
+     */
+    private static final String NEGATED_QUERY_KEYS = "tag:query:negated:keys";
+
+    /**
+     * 从物化交集中抽样统计细化筛选标签时，分几段均匀读取
+     */
+    private static final int FACET_SAMPLE_SEGMENTS = 10;
+
     @Resource
     private UserMapper userMapper;
     
     @Resource
     private RedisTemplate<String, Object> redisTemplate;
 
+    @Resource
+    private UserMatchEngine userMatchEngine;
+
+    @Resource
+    private PrecomputedMatchStore precomputedMatchStore;
+
+    @Resource
+    private TagBitmapIndex tagBitmapIndex;
+
+    @Resource
+    private RedisTagUserIndex redisTagUserIndex;
+
+    @Resource
+    private TagStats tagStats;
+
+    @Resource
+    private TagFacetCounter tagFacetCounter;
+
+    @Resource
+    private FuzzyTagResolver fuzzyTagResolver;
+
+    @Resource
+    private TagCategories tagCategories;
+
+    @Resource
+    private SearchConfig searchConfig;
+
+    @Resource
+    private UserTagService userTagService;
+
     @Override
+    @Transactional(rollbackFor = Exception.class)
     public long userRegister(String userAccount, String userPassword, String checkPassword, String planetCode) {
         // 1. 校验
         if (StringUtils.isAnyBlank(userAccount, userPassword, checkPassword, planetCode)) {
@@ -163,6 +242,101 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User>
         return safetyUser;
     }
 
+    /**
+     * 一次 MGET 读取 user:{id}，未命中的用一次 selectBatchIds 查库，再用一条 pipeline 回填
+     * 往返次数与 id 数量无关
+     */
+    @Override
+    public List<User> listSafetyUsersByIds(Collection<Long> userIdList) {
+        return listSafetyUsersByIds(userIdList, false);
+    }
+
+    @Override
+    public List<User> listSafetyUsersByIds(Collection<Long> userIdList, boolean includeAbnormal) {
+        if (CollectionUtils.isEmpty(userIdList)) {
+            return new ArrayList<>();
+        }
+        List<Long> distinctIds = new ArrayList<>(new LinkedHashSet<>(userIdList));
+        distinctIds.remove(null);
+        Map<Long, User> userMap = new HashMap<>(distinctIds.size() * 2);
+
+        List<String> userKeys = new ArrayList<>(distinctIds.size());
+        for (Long userId : distinctIds) {
+            userKeys.add(USER_CACHE_KEY_PREFIX + userId);
+        }
+        try {
+            List<Object> cached = redisTemplate.opsForValue().multiGet(userKeys);
+            if (cached != null) {
+                for (int i = 0; i < cached.size() && i < distinctIds.size(); i++) {
+                    if (cached.get(i) instanceof User) {
+                        userMap.put(distinctIds.get(i), (User) cached.get(i));
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.warn("批量从Redis获取用户信息失败: {}", e.getMessage());
+        }
+
+        List<Long> missIds = new ArrayList<>();
+        for (Long userId : distinctIds) {
+            if (!userMap.containsKey(userId)) {
+                missIds.add(userId);
+            }
+        }
+        if (!missIds.isEmpty()) {
+            List<User> loaded = new ArrayList<>(missIds.size());
+            for (User dbUser : userMapper.selectBatchIds(missIds)) {
+                User safetyUser = getSafetyUser(dbUser);
+                userMap.put(safetyUser.getId(), safetyUser);
+                loaded.add(safetyUser);
+            }
+            cacheSafetyUsers(loaded);
+        }
+
+        List<User> userList = new ArrayList<>(distinctIds.size());
+        for (Long userId : distinctIds) {
+            User user = userMap.get(userId);
+            // 缓存和库中都保留状态，封禁等非正常状态的用户默认不返回
+            if (user != null && (includeAbnormal || user.getUserStatus() == null || user.getUserStatus() == 0)) {
+                userList.add(user);
+            }
+        }
+        return userList;
+    }
+
+    @Override
+    public void evictUserCache(long userId) {
+        try {
+            redisTemplate.delete(USER_CACHE_KEY_PREFIX + userId);
+        } catch (Exception e) {
+            log.warn("删除用户 {} 详情缓存失败: {}", userId, e.getMessage());
+        }
+    }
+
+    /**
+     * 用一条 pipeline 回填用户缓存
+     */
+    private void cacheSafetyUsers(List<User> userList) {
+        if (userList.isEmpty()) {
+            return;
+        }
+        try {
+            redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                    ValueOperations<String, Object> valueOps = (ValueOperations<String, Object>) operations.opsForValue();
+                    for (User user : userList) {
+                        valueOps.set(USER_CACHE_KEY_PREFIX + user.getId(), user, USER_CACHE_TTL_HOURS, TimeUnit.HOURS);
+                    }
+                    return null;
+                }
+            });
+        } catch (Exception e) {
+            log.warn("批量缓存 {} 个用户信息失败: {}", userList.size(), e.getMessage());
+        }
+    }
+
     /**
      * 用户注销
      *
@@ -186,6 +360,8 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User>
         if (CollectionUtils.isEmpty(tagNameList)) {
             throw new BusinessException(ErrorCode.PARAMS_ERROR);
         }
+        // 拼写错误的标签先纠正为已有标签
+        tagNameList = fuzzyTagResolver.resolve(tagNameList);
         
         // 先看是否有缓存
         String cacheKey = String.format("user:tags:%s:all", 
@@ -195,22 +371,9 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User>
             return (List<User>) cachedResult;
         }
         
-        // 没有缓存，查询数据库 - 使用LIKE查询
-        QueryWrapper<User> queryWrapper = new QueryWrapper<>();
-        // 只查询必要字段
-        queryWrapper.select("id", "username", "userAccount", "avatarUrl", "gender", 
-                "phone", "email", "userStatus", "createTime", "tags", "userRole", "planetCode");
-        queryWrapper.eq("userStatus", 0);
-        queryWrapper.eq("isDelete", 0);
-        
-        // 使用LIKE查询 - 每个标签都必须匹配
-        for (String tagName : tagNameList) {
-            queryWrapper = queryWrapper.like("tags", tagName);
-        }
-        
-        // 直接查询筛选
-        List<User> userList = userMapper.selectList(queryWrapper);
-        log.info("标签查询(LIKE): 标签={}, 匹配用户数={}", String.join(",", tagNameList), userList.size());
+        // 没有缓存，查询数据库 - 通过 user_tag 关系表按索引求交，不会把 JavaScript 误当成 Java
+        List<User> userList = userTagService.listUsersByTags(tagNameList, null, null);
+        log.info("标签查询(user_tag): 标签={}, 匹配用户数={}", String.join(",", tagNameList), userList.size());
         
         // 转换为安全用户
         List<User> result = userList.stream().map(this::getSafetyUser).collect(Collectors.toList());
@@ -260,30 +423,9 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User>
         
         log.info("缓存未命中，执行标签搜索 - 标签：{}，页码：{}，每页数量：{}", tagNameList, pageNum, pageSize);
         
-        // 创建查询包装器
-        QueryWrapper<User> queryWrapper = new QueryWrapper<>();
-        // 设置基本条件
-        queryWrapper.eq("userStatus", 0);
-        queryWrapper.eq("isDelete", 0);
-        
-        // 使用LIKE查询 - 每个标签都必须匹配
-        for (String tagName : tagNameList) {
-            queryWrapper = queryWrapper.like("tags", tagName);
-        }
-        
-        // 创建计数查询包装器
-        QueryWrapper<User> countQueryWrapper = new QueryWrapper<>();
-        countQueryWrapper.eq("userStatus", 0);
-        countQueryWrapper.eq("isDelete", 0);
-        
-        // 计数查询使用相同的LIKE条件
-        for (String tagName : tagNameList) {
-            countQueryWrapper = countQueryWrapper.like("tags", tagName);
-        }
-        
-        // 计算总记录数
-        long total = userMapper.selectCount(countQueryWrapper);
-        log.info("标签查询(LIKE)匹配用户总数: {}", total);
+        // 计算总记录数 - 通过 user_tag 关系表 GROUP BY ... HAVING COUNT 求交
+        long total = userTagService.countUsersByTags(tagNameList);
+        log.info("标签查询(user_tag)匹配用户总数: {}", total);
         
         // 创建分页查询对象
         Page<User> page = new Page<>(pageNum, pageSize);
@@ -303,18 +445,16 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User>
             return page;
         }
         
-        // 设置查询字段 - 仅适用于分页查询，不用于计数查询
-        queryWrapper.select("id", "username", "userAccount", "avatarUrl", "gender", 
-                "phone", "email", "userStatus", "createTime", "tags", "userRole", "planetCode");
-                
         // 执行分页查询
-        Page<User> userPage = userMapper.selectPage(page, queryWrapper);
+        List<User> pageUsers = userTagService.listUsersByTags(tagNameList, (pageNum - 1) * pageSize, pageSize);
         
         // 转换为安全用户列表
-        List<User> safetyUsers = userPage.getRecords().stream()
+        List<User> safetyUsers = pageUsers.stream()
                 .map(this::getSafetyUser)
                 .collect(Collectors.toList());
+        Page<User> userPage = page;
         userPage.setRecords(safetyUsers);
+        userPage.setTotal(total);
         
         // 将分页结果存入缓存，设置30分钟过期
         log.info("将搜索结果存入缓存，键: {}", cacheKey);
@@ -329,7 +469,11 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User>
         return userPage;
     }
 
+    /**
+     * 用户表和 user_tag 在同一个事务中更新
+     */
     @Override
+    @Transactional(rollbackFor = Exception.class)
     public int updateUser(User user, User loginUser) {
         long userId = user.getId();
         if (userId <= 0) {
@@ -391,6 +535,17 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User>
             log.info("用户 {} 的星球编号已更新: {} -> {}", userId, oldUser.getPlanetCode(), user.getPlanetCode());
         }
         
+        // 状态（仅管理员可修改）
+        boolean isStatusUpdated = false;
+        if (user.getUserStatus() != null && !user.getUserStatus().equals(oldUser.getUserStatus())) {
+            if (!isAdmin(loginUser)) {
+                throw new BusinessException(ErrorCode.NO_AUTH);
+            }
+            isStatusUpdated = true;
+            hasUpdates = true;
+            log.info("用户 {} 的状态已更新: {} -> {}", userId, oldUser.getUserStatus(), user.getUserStatus());
+        }
+        
         // 如果没有任何更新，直接返回
         if (!hasUpdates) {
             log.info("用户 {} 没有提供任何需要更新的信息", userId);
@@ -402,11 +557,51 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User>
         
         // 更新用户信息
         int result = userMapper.updateById(user);
+        if (isTagsUpdated && result > 0) {
+            userTagService.syncUserTags(userId, user.getTags());
+        }
         
+        // 用户详情缓存已过期，下次批量读取时重新查库回填；提交前删除的话，并发读取可能把旧数据写回缓存
+        if (result > 0) {
+            afterCommit(() -> evictUserCache(userId));
+        }
+
+        // 只改了状态（如封禁、解封）时，同步标签索引中的该用户
+        // 缓存、Redis 索引和进程内索引都在事务提交后更新并发布变更：回滚时不会留下脏数据，
+        // 其他请求或实例读到变更时一定能查到新数据
+        if (isStatusUpdated && !isTagsUpdated && result > 0) {
+            // 封禁的用户从标签画像中移除，不再作为匹配候选；解封后重新加入
+            String oldTags = oldUser.getTags();
+            Integer oldStatus = oldUser.getUserStatus();
+            Integer newStatus = user.getUserStatus();
+            afterCommit(() -> {
+                clearUserTagsCache(oldTags, oldTags);
+                redisTagUserIndex.onTagsChanged(userId, oldTags, oldStatus, oldTags, newStatus);
+                tagStats.invalidate();
+                userMatchEngine.updateUserTags(userId, oldTags, newStatus);
+                precomputedMatchStore.onTagsChanged(userId);
+                tagBitmapIndex.update(userId, oldTags, newStatus);
+            });
+        }
+
         // 如果标签已更新且更新成功，清除该用户相关的缓存
         if (isTagsUpdated && result > 0) {
             log.info("标签更新成功，用户ID: {}，清除相关缓存", userId);
-            clearUserTagsCache(oldUser);
+            String oldTags = oldUser.getTags();
+            Integer oldStatus = oldUser.getUserStatus();
+            String newTags = user.getTags();
+            Integer newStatus = user.getUserStatus() != null ? user.getUserStatus() : oldUser.getUserStatus();
+            afterCommit(() -> {
+                clearUserTagsCache(oldTags, newTags);
+                // 增量更新 Redis 中的标签-用户集合
+                redisTagUserIndex.onTagsChanged(userId, oldTags, oldStatus, newTags, newStatus);
+                tagStats.invalidate();
+                // 同步内存中的标签画像和匹配索引
+                userMatchEngine.updateUserTags(userId, newTags, newStatus);
+                // 后台更新预计算匹配列表
+                precomputedMatchStore.onTagsChanged(userId);
+                tagBitmapIndex.update(userId, newTags, newStatus);
+            });
         }
         
         return result;
@@ -451,80 +646,91 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User>
 
     @Override
     public List<User> matchUsers(long num, User loginUser) {
-        QueryWrapper<User> queryWrapper = new QueryWrapper<>();
-        queryWrapper.select("id", "tags");
-        queryWrapper.isNotNull("tags");
-        List<User> userList = this.list(queryWrapper);
-        String tags = loginUser.getTags();
-        Gson gson = new Gson();
-        List<String> tagList = gson.fromJson(tags, new TypeToken<List<String>>() {
-        }.getType());
-        // 用户列表的下标 => 相似度
-        List<Pair<User, Long>> list = new ArrayList<>();
-        // 依次计算所有用户和当前用户的相似度
-        for (int i = 0; i < userList.size(); i++) {
-            User user = userList.get(i);
-            String userTags = user.getTags();
-            // 无标签或者为当前用户自己
-            if (StringUtils.isBlank(userTags) || user.getId() == loginUser.getId()) {
-                continue;
-            }
-            List<String> userTagList = gson.fromJson(userTags, new TypeToken<List<String>>() {
+        return matchUsers(num, loginUser, null);
+    }
+
+    @Override
+    public List<User> matchUsers(long num, User loginUser, MatchModeEnum mode) {
+        // 按编辑距离由小到大、id 由小到大的 userId 列表，优先读取预计算结果（预计算的是精确匹配）
+        List<Long> userIdList = mode == MatchModeEnum.APPROXIMATE ? null
+                : precomputedMatchStore.match(loginUser.getId(), (int) num);
+        if (userIdList == null) {
+            String tags = loginUser.getTags();
+            Gson gson = new Gson();
+            List<String> tagList = gson.fromJson(tags, new TypeToken<List<String>>() {
             }.getType());
-            // 计算分数
-            long distance = AlgorithmUtils.minDistance(tagList, userTagList);
-            list.add(Pair.of(user, distance));
-        }
-        // 按编辑距离由小到大排序
-        List<Pair<User, Long>> topUserPairList = list.stream()
-                .sorted((a, b) -> (int) (a.getValue() - b.getValue()))
-                .limit(num)
-                .collect(Collectors.toList());
-        // 原本顺序的 userId 列表
-        List<Long> userIdList = topUserPairList.stream().map(pair -> pair.getKey().getId()).collect(Collectors.toList());
-        QueryWrapper<User> userQueryWrapper = new QueryWrapper<>();
-        userQueryWrapper.in("id", userIdList);
-        // 1, 3, 2
-        // User1、User2、User3
-        // 1 => User1, 2 => User2, 3 => User3
-        Map<Long, List<User>> userIdUserListMap = this.list(userQueryWrapper)
-                .stream()
-                .map(user -> getSafetyUser(user))
-                .collect(Collectors.groupingBy(User::getId));
-        List<User> finalUserList = new ArrayList<>();
-        for (Long userId : userIdList) {
-            finalUserList.add(userIdUserListMap.get(userId).get(0));
+            userIdList = userMatchEngine.match(tagList, loginUser.getId(), (int) num, mode);
         }
-        return finalUserList;
+        if (userIdList.isEmpty()) {
+            return new ArrayList<>();
+        }
+        // 按匹配顺序批量取用户详情
+        return listSafetyUsersByIds(userIdList);
     }
 
     /**
-     * 清除用户标签相关的缓存
+     * 在当前事务提交后执行（如更新索引），事务回滚时不执行；不在事务中时立即执行
      */
-    private void clearUserTagsCache(User user) {
-        if (user == null || StringUtils.isBlank(user.getTags())) {
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
             return;
         }
-        
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                try {
+                    action.run();
+                } catch (Exception e) {
+                    log.error("事务提交后更新索引失败: {}", e.getMessage(), e);
+                }
+            }
+        });
+    }
+
+    /**
+     * 清除新旧标签相关的搜索缓存（标签-用户集合由 RedisTagUserIndex 增量维护，不在此删除）
+     */
+    private void clearUserTagsCache(String oldTagsJson, String newTagsJson) {
         try {
-            // 解析用户标签
             Gson gson = new Gson();
-            Set<String> userTags = gson.fromJson(user.getTags(), new TypeToken<Set<String>>() {}.getType());
+            Set<String> userTags = new HashSet<>();
+            for (String tagsJson : Arrays.asList(oldTagsJson, newTagsJson)) {
+                if (StringUtils.isNotBlank(tagsJson)) {
+                    Set<String> tags = gson.fromJson(tagsJson, new TypeToken<Set<String>>() {}.getType());
+                    if (tags != null) {
+                        userTags.addAll(tags);
+                    }
+                }
+            }
+            // 按分类搜索的缓存登记在分类名下，子标签变化时一并清除
+            for (String tag : new ArrayList<>(userTags)) {
+                userTags.addAll(tagCategories.categoriesOf(tag));
+            }
             
-            if (userTags != null && !userTags.isEmpty()) {
-                // 遍历用户的每个标签
-                for (String tag : userTags) {
-                    String tagKeysSet = "tag:" + tag + ":keys";
-                    
-                    // 获取该标签关联的所有缓存键
-                    Set<Object> cacheKeys = redisTemplate.opsForSet().members(tagKeysSet);
-                    
-                    if (cacheKeys != null && !cacheKeys.isEmpty()) {
-                        // 删除所有关联的缓存
-                        for (Object cacheKey : cacheKeys) {
-                            log.info("删除标签缓存，键: {}", cacheKey);
-                            redisTemplate.delete(cacheKey.toString());
+            // 遍历新旧标签，以及含 NOT 的查询
+            List<String> tagKeysSets = new ArrayList<>(userTags.size() + 1);
+            for (String tag : userTags) {
+                tagKeysSets.add("tag:" + tag + ":keys");
+            }
+            tagKeysSets.add(NEGATED_QUERY_KEYS);
+            for (String tagKeysSet : tagKeysSets) {
+                
+                // 获取该标签关联的所有缓存键
+                Set<Object> cacheKeys = redisTemplate.opsForSet().members(tagKeysSet);
+                
+                if (cacheKeys != null && !cacheKeys.isEmpty()) {
+                    // 删除所有关联的缓存
+                    for (Object cacheKey : cacheKeys) {
+                        if (RedisTagUserIndex.isIndexKey(cacheKey.toString())) {
+                            continue;
                         }
+                        log.info("删除标签缓存，键: {}", cacheKey);
+                        redisTemplate.delete(cacheKey.toString());
+                    }
+                    // 含 NOT 的查询每次都会清除，只移除已删除的键，集合不会无限增长
+                    if (NEGATED_QUERY_KEYS.equals(tagKeysSet)) {
+                        redisTemplate.opsForSet().remove(NEGATED_QUERY_KEYS, cacheKeys.toArray());
                     }
                 }
             }
@@ -543,18 +749,80 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User>
      */
     @Override
     public Page<User> searchUsersByTagsOptimized(List<String> tagNameList, long pageSize, long pageNum) {
+        return searchUsersByTagsOptimized(tagNameList, pageSize, pageNum, false);
+    }
+
+    /**
+     * 根据标签搜索用户，可选同时统计"细化筛选"标签
+     * 分页和统计分开缓存：统计只与标签组合有关，翻页时复用
+     */
+    @Override
+    public Page<User> searchUsersByTagsOptimized(List<String> tagNameList, long pageSize, long pageNum, boolean facets) {
         if (CollectionUtils.isEmpty(tagNameList)) {
             throw new BusinessException(ErrorCode.PARAMS_ERROR);
         }
-        
+        pageSize = clampPageSize(pageSize);
+        pageNum = clampPageNum(pageNum);
+        // 拼写错误的标签先纠正为已有标签，纠正后的查询与正确的查询共享缓存，纠正结果随分页返回
+        Map<String, String> corrections = new LinkedHashMap<>();
+        tagNameList = fuzzyTagResolver.resolve(tagNameList, corrections);
+        return searchResolvedTags(tagNameList, pageSize, pageNum, facets, corrections);
+    }
+
+    /**
+     * 按已纠正的标签搜索，附上细化筛选标签和纠正提示
+     */
+    private Page<User> searchResolvedTags(List<String> tagNameList, long pageSize, long pageNum, boolean facets,
+                                          Map<String, String> corrections) {
         // 对标签列表进行排序，确保相同的标签组合生成相同的缓存键
         List<String> sortedTags = new ArrayList<>(tagNameList);
         Collections.sort(sortedTags);
-        
+        Page<User> resultPage = searchTagsPage(tagNameList, sortedTags, pageSize, pageNum);
+        return withExtras(resultPage, facets ? tagFacets(TagExpression.allOf(sortedTags)) : null, corrections);
+    }
+
+    /**
+     * 按标签组合取一页用户，不含细化筛选标签
+     */
+    private Page<User> searchTagsPage(List<String> tagNameList, List<String> sortedTags, long pageSize, long pageNum) {
         // 生成缓存键：user:tags:optimized:Java_Python:page:1:size:10
         String cacheKey = String.format("user:tags:optimized:%s:page:%d:size:%d", 
                 String.join("_", sortedTags), pageNum, pageSize);
         
+        // 优先使用进程内的位图索引：求交、计数和分页都在本地完成，不再缓存分页
+        // 其他实例的修改通过变更日志在几秒内同步到本实例
+        if (searchConfig.isLocalIndexEnabled()) {
+            try {
+                RoaringBitmap matchedUsers = tagBitmapIndex.intersect(tagNameList);
+                long offset = (pageNum - 1) * pageSize;
+                List<Long> pageUserIds = TagBitmapIndex.slice(matchedUsers, offset, (int) pageSize);
+                log.info("位图索引找到 {} 个匹配所有标签的用户", matchedUsers.getLongCardinality());
+                Page<User> resultPage = new Page<>(pageNum, pageSize);
+                resultPage.setRecords(listSafetyUsersByIds(pageUserIds));
+                resultPage.setTotal(matchedUsers.getLongCardinality());
+                return resultPage;
+            } catch (Exception e) {
+                log.error("位图索引查询失败，切换到Redis集合查询: {}", e.getMessage());
+            }
+        }
+
+        // 含分类时 Redis 中没有对应的集合，按子标签集合的并集求值
+        if (tagCategories.containsCategory(sortedTags)) {
+            return searchByExpression(TagExpression.allOf(sortedTags), pageSize, pageNum);
+        }
+
+        // 按标签用户数从小到大求交，用户数未知的标签排在最后
+        TagQueryPlan plan = tagStats.plan(sortedTags);
+        List<String> orderedTags = plan.getOrderedTags();
+        // 某个标签在当前一代中确实没有用户，交集必为空，不再求交和读缓存
+        if (plan.isEmpty()) {
+            log.info("标签 {} 中有标签没有用户，直接返回空结果", orderedTags);
+            Page<User> emptyPage = new Page<>(pageNum, pageSize);
+            emptyPage.setRecords(new ArrayList<>());
+            emptyPage.setTotal(0);
+            return emptyPage;
+        }
+
         log.info("查询优化缓存，键: {}", cacheKey);
         
         // 查询缓存
@@ -569,23 +837,35 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User>
             // 缓存失败时继续执行，不会阻止后续操作
         }
         
+        // 把交集物化为有序集合，只取一页，后续翻页复用
+        if (searchConfig.isRedisZsetPagingEnabled()) {
+            try {
+                Page<User> resultPage = searchByMaterializedIntersection(sortedTags, orderedTags, pageSize, pageNum);
+                cacheTagSearchPage(cacheKey, resultPage, tagNameList);
+                return resultPage;
+            } catch (Exception e) {
+                log.error("Redis有序集合分页失败，切换到SINTER: {}", e.getMessage());
+            }
+        }
+
         log.info("优化缓存未命中，使用Redis集合操作搜索标签：{}", String.join(", ", tagNameList));
-        
+
         // 从Redis集合中获取用户ID交集
         Set<Object> userIdsObj = null;
         List<Long> userIdList = new ArrayList<>();
         boolean useRedis = true;
         
         try {
-            if (tagNameList.size() == 1) {
+            long generation = redisTagUserIndex.currentGeneration();
+            if (orderedTags.size() == 1) {
                 // 单标签查询
-                String tagKey = "tag:" + tagNameList.get(0) + ":userIds";
+                String tagKey = RedisTagUserIndex.userIdsKey(generation, orderedTags.get(0));
                 userIdsObj = redisTemplate.opsForSet().members(tagKey);
             } else {
-                // 多标签查询 - 求交集
+                // 多标签查询 - 从最小的集合开始求交集
                 List<String> tagKeys = new ArrayList<>();
-                for (String tag : tagNameList) {
-                    tagKeys.add("tag:" + tag + ":userIds");
+                for (String tag : orderedTags) {
+                    tagKeys.add(RedisTagUserIndex.userIdsKey(generation, tag));
                 }
                 
                 // 构建用于SINTER操作的键数组
@@ -607,31 +887,14 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User>
         // 如果Redis操作成功，处理结果
         if (useRedis && userIdsObj != null) {
             // 转换类型
-            for (Object idObj : userIdsObj) {
-                try {
-                    if (idObj instanceof Long) {
-                        userIdList.add((Long) idObj);
-                    } else if (idObj instanceof Integer) {
-                        userIdList.add(((Integer) idObj).longValue());
-                    } else if (idObj instanceof String) {
-                        userIdList.add(Long.parseLong((String) idObj));
-                    }
-                } catch (Exception e) {
-                    log.error("无法将对象转换为Long: {}", idObj);
-                }
-            }
+            userIdList = RedisTagUserIndex.toUserIdList(userIdsObj);
         } else if (!useRedis) {
             // Redis失败，直接使用数据库查询
             log.info("使用数据库备用方案查询标签用户");
             Page<User> dbResult = searchUsersByTagsWithPagination(tagNameList, pageSize, pageNum);
             
             // 尝试更新缓存，但不阻止正常流程
-            try {
-                redisTemplate.opsForValue().set(cacheKey, dbResult, 30, TimeUnit.MINUTES);
-                log.info("数据库查询结果已写入缓存");
-            } catch (Exception e) {
-                log.warn("缓存数据库查询结果失败: {}", e.getMessage());
-            }
+            cacheTagSearchPage(cacheKey, dbResult, tagNameList);
             
             return dbResult;
         }
@@ -659,8 +922,8 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User>
         log.info("找到 {} 个匹配所有标签的用户", total);
         
         // 计算分页起止位置
-        int start = (int) ((pageNum - 1) * pageSize);
-        int end = Math.min(start + (int)pageSize, total);
+        long start = (pageNum - 1) * pageSize;
+        int end = (int) Math.min(start + pageSize, total);
         
         // 边界检查
         if (start >= total) {
@@ -680,39 +943,7 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User>
         }
         
         // 获取分页范围内的用户详情
-        List<User> userList = new ArrayList<>();
-        for (int i = start; i < end; i++) {
-            Long userId = userIdList.get(i);
-            User user = null;
-            
-            // 尝试从Redis获取用户信息
-            try {
-                String userKey = "user:" + userId;
-                user = (User) redisTemplate.opsForValue().get(userKey);
-            } catch (Exception e) {
-                log.warn("从Redis获取用户 {} 信息失败: {}", userId, e.getMessage());
-            }
-            
-            // 如果Redis中没有或获取失败，从数据库获取
-            if (user == null) {
-                User dbUser = userMapper.selectById(userId);
-                if (dbUser != null) {
-                    user = getSafetyUser(dbUser);
-                    
-                    // 尝试更新Redis缓存
-                    try {
-                        String userKey = "user:" + userId;
-                        redisTemplate.opsForValue().set(userKey, user, 24, TimeUnit.HOURS);
-                    } catch (Exception e) {
-                        log.warn("缓存用户 {} 信息失败: {}", userId, e.getMessage());
-                    }
-                }
-            }
-            
-            if (user != null) {
-                userList.add(user);
-            }
-        }
+        List<User> userList = listSafetyUsersByIds(userIdList.subList((int) start, end));
         
         // 构建分页结果
         Page<User> resultPage = new Page<>(pageNum, pageSize);
@@ -720,148 +951,386 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User>
         resultPage.setTotal(total);
         
         // 缓存分页结果
+        cacheTagSearchPage(cacheKey, resultPage, tagNameList);
+        
+        return resultPage;
+    }
+
+    /**
+     * 按布尔标签查询搜索用户
+     * 纯 AND 的查询直接走多标签搜索；其他查询在倒排表上求交、并、差，优先用进程内位图索引，
+     * 否则按需读取 Redis 中的标签集合在本地求值，并和多标签搜索一样缓存分页结果
+     */
+    @Override
+    public Page<User> searchUsersByTagQuery(String tagQuery, long pageSize, long pageNum) {
+        return searchUsersByTagQuery(tagQuery, pageSize, pageNum, false);
+    }
+
+    @Override
+    public Page<User> searchUsersByTagQuery(String tagQuery, long pageSize, long pageNum, boolean facets) {
+        pageSize = clampPageSize(pageSize);
+        pageNum = clampPageNum(pageNum);
+        Map<String, String> corrections = new LinkedHashMap<>();
+        TagExpression expression = TagQueryParser.parse(tagQuery)
+                .mapTags(tagName -> fuzzyTagResolver.resolve(tagName, corrections));
+        List<String> conjunctionTags = expression.conjunctionTags();
+        if (conjunctionTags != null) {
+            return searchResolvedTags(new ArrayList<>(new LinkedHashSet<>(conjunctionTags)), pageSize, pageNum,
+                    facets, corrections);
+        }
+        long offset = (pageNum - 1) * pageSize;
+        
+        Page<User> resultPage = null;
+        if (searchConfig.isLocalIndexEnabled()) {
+            try {
+                RoaringBitmap matchedUsers = expression.evaluate(tagBitmapIndex);
+                log.info("位图索引按 {} 找到 {} 个用户", expression, matchedUsers.getLongCardinality());
+                resultPage = new Page<>(pageNum, pageSize);
+                resultPage.setRecords(listSafetyUsersByIds(TagBitmapIndex.slice(matchedUsers, offset, (int) pageSize)));
+                resultPage.setTotal(matchedUsers.getLongCardinality());
+            } catch (Exception e) {
+                log.error("位图索引求值失败，切换到Redis集合: {}", e.getMessage());
+                resultPage = null;
+            }
+        }
+        if (resultPage == null) {
+            resultPage = searchByExpression(expression, pageSize, pageNum);
+        }
+        return withExtras(resultPage, facets ? tagFacets(expression) : null, corrections);
+    }
+
+    /**
+     * 读取 Redis 中的标签集合在本地对表达式求值，并缓存分页结果
+     */
+    private Page<User> searchByExpression(TagExpression expression, long pageSize, long pageNum) {
+        long offset = (pageNum - 1) * pageSize;
+        // 规范化后的表达式作为缓存键，语义相同的写法共享缓存
+        String cacheKey = String.format("user:tags:query:%s:page:%d:size:%d",
+                DigestUtils.md5DigestAsHex(expression.toString().getBytes(StandardCharsets.UTF_8)), pageNum, pageSize);
+        try {
+            Object cachedResult = redisTemplate.opsForValue().get(cacheKey);
+            if (cachedResult != null) {
+                log.info("布尔标签查询缓存命中，键: {}", cacheKey);
+                return (Page<User>) cachedResult;
+            }
+        } catch (Exception e) {
+            log.warn("Redis缓存查询失败: {}", e.getMessage());
+        }
+        
+        RoaringBitmap matchedUsers = expression.evaluate(redisTagUserIndex.postings());
+        log.info("Redis集合按 {} 找到 {} 个用户", expression, matchedUsers.getLongCardinality());
+        Page<User> resultPage = new Page<>(pageNum, pageSize);
+        resultPage.setRecords(listSafetyUsersByIds(TagBitmapIndex.slice(matchedUsers, offset, (int) pageSize)));
+        resultPage.setTotal(matchedUsers.getLongCardinality());
+        cacheTagSearchPage(cacheKey, resultPage, new ArrayList<>(expression.tags()));
+        if (expression.containsNot()) {
+            registerNegatedQuery(cacheKey);
+        }
+        return resultPage;
+    }
+
+    /**
+     * 用 ZINTERSTORE 把标签交集物化为短期有序集合，再用 ZCARD + ZRANGE 取一页
+     * 参与求交的还有 user:tagged:ids（分数为用户 id，权重 1），标签集合的权重为 0，
+     * 因此结果的分数就是用户 id，分页按 id 升序且稳定
+     */
+    private Page<User> searchByMaterializedIntersection(List<String> sortedTags, List<String> orderedTags,
+                                                        long pageSize, long pageNum) {
+        // 交集键带上索引的代，切换到新的一代后不会复用旧一代的结果
+        long generation = redisTagUserIndex.currentGeneration();
+        String interKey = intersectionKey(generation, sortedTags);
+        List<String> tagKeys = intersectionTagKeys(generation, orderedTags);
+        boolean materialized = Boolean.TRUE.equals(redisTemplate.hasKey(interKey));
+        if (!materialized) {
+            materializeIntersection(generation, interKey, tagKeys, sortedTags);
+        }
+        Long total = redisTemplate.opsForZSet().zCard(interKey);
+        if ((total == null || total == 0) && materialized) {
+            // 读之前刚好过期，重新物化一次
+            materializeIntersection(generation, interKey, tagKeys, sortedTags);
+            total = redisTemplate.opsForZSet().zCard(interKey);
+        }
+        long start = (pageNum - 1) * pageSize;
+        List<Long> pageUserIds = new ArrayList<>();
+        if (total != null && start < total) {
+            Set<Object> idObjs = redisTemplate.opsForZSet().range(interKey, start, start + pageSize - 1);
+            if (idObjs != null) {
+                pageUserIds = RedisTagUserIndex.toUserIdList(idObjs);
+            }
+        }
+        log.info("有序集合 {} 中共 {} 个匹配所有标签的用户", interKey, total);
+        Page<User> resultPage = new Page<>(pageNum, pageSize);
+        resultPage.setRecords(listSafetyUsersByIds(pageUserIds));
+        resultPage.setTotal(total == null ? 0 : total);
+        return resultPage;
+    }
+
+    private static String intersectionKey(long generation, List<String> sortedTags) {
+        return "user:tags:inter:v" + generation + ":" + String.join("_", sortedTags);
+    }
+
+    private static List<String> intersectionTagKeys(long generation, List<String> orderedTags) {
+        List<String> tagKeys = new ArrayList<>(orderedTags.size());
+        for (String tag : orderedTags) {
+            tagKeys.add(RedisTagUserIndex.userIdsKey(generation, tag));
+        }
+        return tagKeys;
+    }
+
+    private void materializeIntersection(long generation, String interKey, List<String> tagKeys, List<String> sortedTags) {
+        String taggedKey = RedisTagUserIndex.taggedUserIdsKey(generation);
+        if (Boolean.TRUE.equals(redisTemplate.hasKey(taggedKey))) {
+            int[] weights = new int[tagKeys.size() + 1];
+            weights[0] = 1;
+            redisTemplate.opsForZSet().intersectAndStore(taggedKey, tagKeys, interKey,
+                    RedisZSetCommands.Aggregate.SUM, RedisZSetCommands.Weights.of(weights));
+        } else {
+            // 还没有预热 id 有序集合时，结果按成员字节序排列，顺序仍然稳定
+            redisTemplate.opsForZSet().intersectAndStore(tagKeys.get(0), tagKeys.subList(1, tagKeys.size()), interKey);
+        }
+        redisTemplate.expire(interKey, searchConfig.getIntersectionTtlSeconds(), TimeUnit.SECONDS);
+        // 登记到标签缓存集合，标签变化时与分页缓存一起清除
+        for (String tag : sortedTags) {
+            redisTemplate.opsForSet().add("tag:" + tag + ":keys", interKey);
+        }
+    }
+
+    /**
+     * 标签搜索的页大小限制在 1 ~ MAX_TAG_SEARCH_PAGE_SIZE
+     */
+    private static long clampPageSize(long pageSize) {
+        return Math.max(1, Math.min(pageSize, MAX_TAG_SEARCH_PAGE_SIZE));
+    }
+
+    /**
+     * 页码从 1 开始；位图中的 id 不超过 2^32 个，更大的页码一定是空页，限制上界避免偏移量溢出
+     */
+    private static long clampPageNum(long pageNum) {
+        return Math.max(1, Math.min(pageNum, Integer.MAX_VALUE));
+    }
+
+    /**
+     * 需要细化筛选标签或有纠正的标签时把分页包装为 TagSearchPageVO
+     *
+     * @param facets      细化筛选标签，为 null 时不返回
+     * @param corrections 被纠正的查询标签，为空时不返回
+     */
+    private Page<User> withExtras(Page<User> page, List<TagFacetVO> facets, Map<String, String> corrections) {
+        if (facets == null && corrections.isEmpty()) {
+            return page;
+        }
+        return new TagSearchPageVO(page, facets, corrections.isEmpty() ? null : corrections);
+    }
+
+    /**
+     * 细化筛选标签，按查询缓存，与页码无关，翻页时复用
+     * 统计失败（如 Redis 不可用、走数据库备用方案）时返回空列表且不缓存
+     */
+    @SuppressWarnings("unchecked")
+    private List<TagFacetVO> tagFacets(TagExpression expression) {
+        String facetKey = "user:tags:facets:"
+                + DigestUtils.md5DigestAsHex(expression.toString().getBytes(StandardCharsets.UTF_8));
+        try {
+            Object cachedFacets = redisTemplate.opsForValue().get(facetKey);
+            if (cachedFacets != null) {
+                return (List<TagFacetVO>) cachedFacets;
+            }
+        } catch (Exception e) {
+            log.warn("读取细化筛选标签缓存失败: {}", e.getMessage());
+        }
+        List<TagFacetVO> facetList;
+        try {
+            facetList = countFacets(expression);
+        } catch (Exception e) {
+            log.error("统计细化筛选标签失败: {}", e.getMessage());
+            return new ArrayList<>();
+        }
+        // 空的统计不缓存，结果集为空时重新统计的代价很小
+        if (!facetList.isEmpty()) {
+            cacheTagSearchResult(facetKey, facetList, expression.tags(), searchConfig.getFacetCacheMinutes());
+            if (expression.containsNot()) {
+                registerNegatedQuery(facetKey);
+            }
+        }
+        return facetList;
+    }
+
+    /**
+     * 统计细化筛选标签：本地位图索引上对样本选出的候选标签求交得到准确用户数；
+     * Redis 路径纯 AND 的查询从物化交集中抽样，其他查询读取标签集合求值后抽样，用户数按比例估算
+     */
+    private List<TagFacetVO> countFacets(TagExpression expression) {
+        int facetSize = searchConfig.getFacetSize();
+        if (searchConfig.isLocalIndexEnabled()) {
+            try {
+                RoaringBitmap matchedUsers = expression.evaluate(tagBitmapIndex);
+                return tagFacetCounter.count(matchedUsers, tagBitmapIndex, expression.tags(), facetSize);
+            } catch (Exception e) {
+                log.error("位图索引统计细化筛选标签失败，切换到Redis集合: {}", e.getMessage());
+            }
+        }
+        List<String> conjunctionTags = expression.conjunctionTags();
+        if (conjunctionTags != null && searchConfig.isRedisZsetPagingEnabled()
+                && !tagCategories.containsCategory(conjunctionTags)) {
+            List<String> sortedTags = new ArrayList<>(conjunctionTags);
+            Collections.sort(sortedTags);
+            long generation = redisTagUserIndex.currentGeneration();
+            String interKey = intersectionKey(generation, sortedTags);
+            if (!Boolean.TRUE.equals(redisTemplate.hasKey(interKey))) {
+                List<String> orderedTags = tagStats.plan(sortedTags).getOrderedTags();
+                materializeIntersection(generation, interKey, intersectionTagKeys(generation, orderedTags), sortedTags);
+            }
+            Long total = redisTemplate.opsForZSet().zCard(interKey);
+            if (total == null || total == 0) {
+                return new ArrayList<>();
+            }
+            return tagFacetCounter.countSample(sampleIntersection(interKey, total), total, sortedTags, facetSize);
+        }
+        RoaringBitmap matchedUsers = expression.evaluate(redisTagUserIndex.postings());
+        return tagFacetCounter.count(matchedUsers, null, expression.tags(), facetSize);
+    }
+
+    /**
+     * 从物化的交集中抽样：不超过抽样数时全部读取，否则分几段均匀读取，放在一个 pipeline 中发送
+     */
+    @SuppressWarnings("unchecked")
+    private List<Long> sampleIntersection(String interKey, long total) {
+        int sampleSize = Math.max(FACET_SAMPLE_SEGMENTS, searchConfig.getFacetSampleSize());
+        if (total <= sampleSize) {
+            Set<Object> idObjs = redisTemplate.opsForZSet().range(interKey, 0, -1);
+            return idObjs == null ? new ArrayList<>() : RedisTagUserIndex.toUserIdList(idObjs);
+        }
+        long segmentSize = sampleSize / FACET_SAMPLE_SEGMENTS;
+        long stride = total / FACET_SAMPLE_SEGMENTS;
+        List<Object> segments = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                ZSetOperations<String, Object> zSetOps = (ZSetOperations<String, Object>) operations.opsForZSet();
+                for (int i = 0; i < FACET_SAMPLE_SEGMENTS; i++) {
+                    zSetOps.range(interKey, i * stride, i * stride + segmentSize - 1);
+                }
+                return null;
+            }
+        });
+        List<Long> sample = new ArrayList<>(sampleSize);
+        for (Object segment : segments) {
+            if (segment instanceof Collection) {
+                sample.addAll(RedisTagUserIndex.toUserIdList((Collection<Object>) segment));
+            }
+        }
+        return sample;
+    }
+
+    /**
+     * 登记含 NOT 的查询缓存，任何用户的标签变化都会清除
+     */
+    private void registerNegatedQuery(String cacheKey) {
+        try {
+            redisTemplate.opsForSet().add(NEGATED_QUERY_KEYS, cacheKey);
+        } catch (Exception e) {
+            log.warn("登记含 NOT 的查询缓存失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 缓存标签搜索的分页结果，并把缓存键登记到各标签的缓存集合中，用于后续清除
+     */
+    private void cacheTagSearchPage(String cacheKey, Page<User> resultPage, List<String> tagNameList) {
+        cacheTagSearchResult(cacheKey, resultPage, tagNameList, 30);
+    }
+
+    private void cacheTagSearchResult(String cacheKey, Object result, Collection<String> tagNames, long ttlMinutes) {
         try {
             log.info("将优化搜索结果存入缓存，键: {}", cacheKey);
-            redisTemplate.opsForValue().set(cacheKey, resultPage, 30, TimeUnit.MINUTES);
+            redisTemplate.opsForValue().set(cacheKey, result, ttlMinutes, TimeUnit.MINUTES);
             
             // 将缓存键加入标签缓存集合，用于后续清除
-            for (String tag : tagNameList) {
+            for (String tag : tagNames) {
                 String tagKeysSet = "tag:" + tag + ":keys";
                 redisTemplate.opsForSet().add(tagKeysSet, cacheKey);
             }
         } catch (Exception e) {
             log.warn("缓存搜索结果失败: {}", e.getMessage());
         }
-        
-        return resultPage;
     }
     
     /**
      * 预热标签到用户的映射缓存
-     * 全量缓存所有标签和用户的对应关系到Redis
+     * 标签-用户集合平时随用户修改标签增量维护，这里按数据库全量对账，只修正偏差
      */
     @Override
     public void preHeatTagsUserMapping() {
         log.info("开始全量预热标签-用户映射缓存");
-        
-        // 获取所有正常状态的用户
-        QueryWrapper<User> queryWrapper = new QueryWrapper<>();
-        queryWrapper.eq("userStatus", 0);
-        queryWrapper.eq("isDelete", 0);
-        queryWrapper.isNotNull("tags");
-        queryWrapper.ne("tags", "");
-        
-        List<User> allUsers = userMapper.selectList(queryWrapper);
-        log.info("找到 {} 个有标签的用户", allUsers.size());
-        
-        // 清理旧的标签-用户映射缓存
-        try {
-            Set<String> oldTagKeys = redisTemplate.keys("tag:*:userIds");
-            if (oldTagKeys != null && !oldTagKeys.isEmpty()) {
-                redisTemplate.delete(oldTagKeys);
-                log.info("已清理 {} 个旧的标签-用户映射缓存", oldTagKeys.size());
-            }
-        } catch (Exception e) {
-            log.warn("清理旧的标签-用户映射缓存失败，继续执行: {}", e.getMessage());
-        }
-        
-        // 建立标签-用户ID映射
-        Map<String, Set<Long>> tagToUserIds = new HashMap<>();
+        long start = System.currentTimeMillis();
+        int batchSize = Math.max(1, searchConfig.getPrewarmBatchSize());
+        
+        // 平时只对账修正偏差；需要全量重建时写入新的一代，写完再切换，读者不会看到不完整的索引
+        boolean rebuild = searchConfig.isTagIndexFullRebuild() || !redisTagUserIndex.hasGeneration();
+        long generation = rebuild ? redisTagUserIndex.beginRebuild() : 0;
+        // 对账需要完整的 标签 => 用户 id；重建则每批直接写入新的一代，不保留；都用压缩的 long 位图保存
+        Map<String, Roaring64NavigableMap> tagToUserIds = new HashMap<>();
         Gson gson = new Gson();
+        long lastId = 0;
+        long userCount = 0;
         
-        for (User user : allUsers) {
-            if (StringUtils.isNotBlank(user.getTags())) {
-                try {
-                    // 解析用户标签
-                    List<String> userTags = gson.fromJson(user.getTags(), new TypeToken<List<String>>(){}.getType());
-                    for (String tag : userTags) {
-                        // 为每个标签添加对应的用户ID
-                        if (!tagToUserIds.containsKey(tag)) {
-                            tagToUserIds.put(tag, new HashSet<>());
-                        }
-                        tagToUserIds.get(tag).add(user.getId());
-                    }
-                    
-                    // 缓存用户详情，用于后续直接获取
-                    String userKey = "user:" + user.getId();
+        try {
+            // 按 id 做 keyset 分批读取，堆上只保留一批用户
+            while (true) {
+                List<User> batch = userMapper.selectTaggedUsersAfterId(lastId, batchSize);
+                if (batch.isEmpty()) {
+                    break;
+                }
+                Map<String, Roaring64NavigableMap> batchTagToUserIds = new HashMap<>();
+                Roaring64NavigableMap batchUserIds = new Roaring64NavigableMap();
+                Map<String, Roaring64NavigableMap> target = rebuild ? batchTagToUserIds : tagToUserIds;
+                for (User user : batch) {
                     try {
-                        redisTemplate.opsForValue().set(userKey, getSafetyUser(user), 24, TimeUnit.HOURS);
-                    } catch (Exception e) {
-                        log.warn("缓存用户 {} 详情失败: {}", user.getId(), e.getMessage());
-                        // 重试一次
-                        try {
-                            Thread.sleep(100); // 短暂延迟后重试
-                            redisTemplate.opsForValue().set(userKey, getSafetyUser(user), 24, TimeUnit.HOURS);
-                            log.info("重试缓存用户 {} 详情成功", user.getId());
-                        } catch (Exception retryEx) {
-                            log.error("重试缓存用户 {} 详情仍然失败: {}", user.getId(), retryEx.getMessage());
+                        List<String> userTags = gson.fromJson(user.getTags(), new TypeToken<List<String>>(){}.getType());
+                        if (userTags == null || userTags.isEmpty()) {
+                            continue;
                         }
-                    }
-                } catch (Exception e) {
-                    log.error("解析用户 {} 的标签失败: {}", user.getId(), e.getMessage());
-                }
-            }
-        }
-        
-        // 将标签-用户ID映射存入Redis
-        int tagsCount = 0;
-        int failedTags = 0;
-        
-        for (Map.Entry<String, Set<Long>> entry : tagToUserIds.entrySet()) {
-            String tag = entry.getKey();
-            Set<Long> userIdSet = entry.getValue();
-            
-            String redisKey = "tag:" + tag + ":userIds";
-            
-            boolean tagProcessed = false;
-            int retryCount = 0;
-            final int MAX_RETRIES = 3;
-            
-            while (!tagProcessed && retryCount < MAX_RETRIES) {
-                try {
-                    // 将用户ID集合存入Redis集合
-                    if (retryCount > 0) {
-                        // 如果是重试，先尝试删除可能部分写入的数据
-                        redisTemplate.delete(redisKey);
-                    }
-                    
-                    // 批量添加提高性能
-                    if (!userIdSet.isEmpty()) {
-                        redisTemplate.opsForSet().add(redisKey, userIdSet.toArray());
-                    }
-                    
-                    // 设置过期时间
-                    redisTemplate.expire(redisKey, 24, TimeUnit.HOURS);
-                    
-                    tagsCount++;
-                    log.info("标签 [{}] 关联了 {} 个用户", tag, userIdSet.size());
-                    tagProcessed = true;
-                } catch (Exception e) {
-                    retryCount++;
-                    if (retryCount < MAX_RETRIES) {
-                        log.warn("处理标签 [{}] 失败，尝试第 {} 次重试: {}", tag, retryCount, e.getMessage());
-                        try {
-                            Thread.sleep(500 * retryCount); // 递增延迟重试
-                        } catch (InterruptedException ie) {
-                            Thread.currentThread().interrupt();
+                        for (String tag : new HashSet<>(userTags)) {
+                            if (tag == null) {
+                                continue;
+                            }
+                            target.computeIfAbsent(tag, k -> new Roaring64NavigableMap()).addLong(user.getId());
                         }
-                    } else {
-                        failedTags++;
-                        log.error("处理标签 [{}] 在 {} 次尝试后仍然失败: {}", tag, MAX_RETRIES, e.getMessage());
+                        batchUserIds.addLong(user.getId());
+                    } catch (Exception e) {
+                        log.error("解析用户 {} 的标签失败: {}", user.getId(), e.getMessage());
                     }
                 }
+                
+                // 用户详情一批一条 pipeline 写入，用于后续直接获取（查询已不含密码，仍统一脱敏）
+                List<User> safetyUsers = new ArrayList<>(batch.size());
+                for (User user : batch) {
+                    safetyUsers.add(getSafetyUser(user));
+                }
+                cacheSafetyUsers(safetyUsers);
+                if (rebuild) {
+                    redisTagUserIndex.appendChunk(generation, batchTagToUserIds, batchUserIds);
+                }
+                
+                userCount += batch.size();
+                lastId = batch.get(batch.size() - 1).getId();
+                if (batch.size() < batchSize) {
+                    break;
+                }
             }
-            
-            // 将缓存键加入标签缓存集合
-            try {
-                String tagKeysSet = "tag:" + tag + ":keys";
-                redisTemplate.opsForSet().add(tagKeysSet, redisKey);
-            } catch (Exception e) {
-                log.warn("将标签 [{}] 加入缓存集合失败: {}", tag, e.getMessage());
+        } catch (RuntimeException e) {
+            if (rebuild) {
+                redisTagUserIndex.abortRebuild(generation);
             }
+            throw e;
+        }
+        
+        if (rebuild) {
+            redisTagUserIndex.finishRebuild(generation);
+        } else {
+            redisTagUserIndex.reconcile(tagToUserIds);
         }
         
-        log.info("标签-用户映射缓存预热完成，共成功处理 {} 个标签，失败 {} 个标签", tagsCount, failedTags);
+        log.info("标签-用户映射缓存预热完成，共 {} 个有标签的用户，耗时 {} ms", userCount, System.currentTimeMillis() - start);
     }
 
     /**
@@ -0,0 +1,333 @@
+package com.kryos.educhain.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.kryos.educhain.mapper.TagMapper;
+import com.kryos.educhain.mapper.UserMapper;
+import com.kryos.educhain.mapper.UserTagMapper;
+import com.kryos.educhain.model.domain.Tag;
+import com.kryos.educhain.model.domain.User;
+import com.kryos.educhain.model.domain.UserTag;
+import com.kryos.educhain.service.UserTagService;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.CollectionUtils;
+
+import javax.annotation.Resource;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 用户标签关系服务实现类
+ * user_tag 由 user.tags 派生：只收录 tag 表中登记过的标签，标签登记时为已有用户异步回填；
+ * 查询中有未登记或正在回填的标签时退回按 tags json 匹配
+ */
+@Service
+@Slf4j
+public class UserTagServiceImpl extends ServiceImpl<UserTagMapper, UserTag>
+        implements UserTagService {
+
+    private static final Type TAG_LIST_TYPE = new TypeToken<List<String>>() {
+    }.getType();
+
+    /**
+     * 正在回填的标签名，各实例查询时据此退回按 tags json 匹配；设置过期时间，回填线程异常退出时不会一直退回
+     */
+    private static final String BACKFILL_PENDING_KEY = "user_tag:backfill:pending";
+
+    private static final long BACKFILL_PENDING_TTL_HOURS = 6;
+
+    private static final int BACKFILL_BATCH_SIZE = 1000;
+
+    @Resource
+    private UserTagMapper userTagMapper;
+
+    @Resource
+    private UserMapper userMapper;
+
+    @Resource
+    private TagMapper tagMapper;
+
+    @Resource
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Resource
+    private ExecutorService tagBackfillExecutor;
+
+    private final Gson gson = new Gson();
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public void syncUserTags(long userId, String tagsJson) {
+        Set<String> tagNames = parse(userId, tagsJson);
+        Map<String, Long> tagIdMap = resolveTagIds(tagNames);
+        QueryWrapper<UserTag> queryWrapper = new QueryWrapper<>();
+        queryWrapper.eq("userId", userId);
+        userTagMapper.delete(queryWrapper);
+        if (!tagIdMap.isEmpty()) {
+            userTagMapper.insertIgnoreBatch(userId, tagIdMap.values());
+        }
+        if (tagIdMap.size() < tagNames.size()) {
+            log.warn("用户 {} 有 {} 个标签未在 tag 表登记，未写入 user_tag", userId, tagNames.size() - tagIdMap.size());
+        }
+    }
+
+    /**
+     * 流式读取 user 表，每攒够一批就写入；不能加事务，否则写入会和流式读取争用同一个连接
+     */
+    @Override
+    public long backfill() {
+        long start = System.currentTimeMillis();
+        Map<String, Long> allTagIds = resolveTagIds(null);
+        final int batchSize = 500;
+        List<UserTag> batch = new ArrayList<>();
+        long[] count = {0};
+        userMapper.scanIdAndTags(context -> {
+            User user = context.getResultObject();
+            Set<Long> tagIds = new LinkedHashSet<>();
+            for (String tagName : parse(user.getId(), user.getTags())) {
+                Long tagId = allTagIds.get(tagName);
+                if (tagId != null) {
+                    tagIds.add(tagId);
+                }
+            }
+            for (Long tagId : tagIds) {
+                UserTag userTag = new UserTag();
+                userTag.setUserId(user.getId());
+                userTag.setTagId(tagId);
+                batch.add(userTag);
+            }
+            count[0]++;
+            if (batch.size() >= batchSize) {
+                flush(batch);
+            }
+        });
+        flush(batch);
+        log.info("user_tag 回填完成，共处理 {} 个用户，耗时 {} ms", count[0], System.currentTimeMillis() - start);
+        return count[0];
+    }
+
+    @Override
+    public void backfillTag(Tag tag) {
+        if (tag == null || tag.getId() == null || StringUtils.isBlank(tag.getTagName())) {
+            return;
+        }
+        String tagName = tag.getTagName();
+        markBackfillPending(tagName);
+        try {
+            tagBackfillExecutor.execute(() -> {
+                try {
+                    backfillTagBatches(tag.getId(), tagName);
+                } catch (Exception e) {
+                    log.error("回填标签 {} 的用户标签关系失败: {}", tagName, e.getMessage(), e);
+                } finally {
+                    clearBackfillPending(tagName);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 回填队列已满：user_tag 中缺少该标签的关系，需要用 UserTagBackfill 全量回填
+            log.warn("标签 {} 的回填任务被拒绝，需要全量回填 user_tag", tagName);
+            clearBackfillPending(tagName);
+        }
+    }
+
+    /**
+     * 按主键分批读取有标签的用户，在 JVM 中解析 tags json 精确匹配标签名，每批一条 insert；
+     * 不加事务，每批单独提交，不会长时间持有锁
+     */
+    private void backfillTagBatches(long tagId, String tagName) {
+        long start = System.currentTimeMillis();
+        long lastId = 0;
+        int count = 0;
+        List<UserTag> batch = new ArrayList<>();
+        while (true) {
+            List<User> userList = userMapper.selectIdAndTagsAfterId(lastId, BACKFILL_BATCH_SIZE);
+            for (User user : userList) {
+                if (parse(user.getId(), user.getTags()).contains(tagName)) {
+                    UserTag userTag = new UserTag();
+                    userTag.setUserId(user.getId());
+                    userTag.setTagId(tagId);
+                    batch.add(userTag);
+                }
+            }
+            count += batch.size();
+            flush(batch);
+            if (userList.size() < BACKFILL_BATCH_SIZE) {
+                break;
+            }
+            lastId = userList.get(userList.size() - 1).getId();
+        }
+        log.info("标签 {} 回填 {} 条用户标签关系，耗时 {} ms", tagName, count, System.currentTimeMillis() - start);
+    }
+
+    private void markBackfillPending(String tagName) {
+        try {
+            redisTemplate.opsForSet().add(BACKFILL_PENDING_KEY, tagName);
+            redisTemplate.expire(BACKFILL_PENDING_KEY, BACKFILL_PENDING_TTL_HOURS, TimeUnit.HOURS);
+        } catch (Exception e) {
+            log.warn("记录标签 {} 正在回填失败，回填完成前按该标签的查询可能不完整: {}", tagName, e.getMessage());
+        }
+    }
+
+    private void clearBackfillPending(String tagName) {
+        try {
+            redisTemplate.opsForSet().remove(BACKFILL_PENDING_KEY, tagName);
+        } catch (Exception e) {
+            log.warn("清除标签 {} 的回填标记失败: {}", tagName, e.getMessage());
+        }
+    }
+
+    /**
+     * 是否有标签正在回填（user_tag 中的关系还不完整）
+     */
+    private boolean anyBackfillPending(Collection<String> tagNames) {
+        try {
+            Long size = redisTemplate.opsForSet().size(BACKFILL_PENDING_KEY);
+            if (size == null || size == 0) {
+                return false;
+            }
+            for (String tagName : tagNames) {
+                if (Boolean.TRUE.equals(redisTemplate.opsForSet().isMember(BACKFILL_PENDING_KEY, tagName))) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (Exception e) {
+            log.warn("读取标签回填标记失败: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public List<User> listUsersByTags(Collection<String> tagNameList, Long offset, Long limit) {
+        if (CollectionUtils.isEmpty(tagNameList)) {
+            return new ArrayList<>();
+        }
+        Collection<Long> tagIds = requireAllTagIds(tagNameList);
+        if (tagIds == null) {
+            QueryWrapper<User> queryWrapper = jsonTagsQuery(tagNameList);
+            queryWrapper.select("id", "username", "userAccount", "avatarUrl", "gender",
+                    "phone", "email", "userStatus", "createTime", "tags", "userRole", "planetCode");
+            queryWrapper.orderByAsc("id");
+            if (limit != null) {
+                queryWrapper.last("limit " + (offset == null ? 0L : offset) + ", " + limit);
+            }
+            return userMapper.selectList(queryWrapper);
+        }
+        return userTagMapper.selectUsersByTagIds(tagIds, offset == null ? 0L : offset, limit);
+    }
+
+    @Override
+    public long countUsersByTags(Collection<String> tagNameList) {
+        if (CollectionUtils.isEmpty(tagNameList)) {
+            return 0;
+        }
+        Collection<Long> tagIds = requireAllTagIds(tagNameList);
+        if (tagIds == null) {
+            return userMapper.selectCount(jsonTagsQuery(tagNameList));
+        }
+        return userTagMapper.countUsersByTagIds(tagIds);
+    }
+
+    /**
+     * 有未登记的标签时的查询：tags json 中包含每个 "标签名"（带引号，Java 不会匹配 JavaScript）
+     */
+    private QueryWrapper<User> jsonTagsQuery(Collection<String> tagNameList) {
+        QueryWrapper<User> queryWrapper = new QueryWrapper<>();
+        queryWrapper.eq("userStatus", 0);
+        for (String tagName : new LinkedHashSet<>(tagNameList)) {
+            if (tagName != null) {
+                queryWrapper.like("tags", jsonTagPattern(tagName));
+            }
+        }
+        return queryWrapper;
+    }
+
+    /**
+     * 标签在 tags json 中的写法（带引号），并转义 LIKE 的通配符
+     */
+    private String jsonTagPattern(String tagName) {
+        String quoted = "\"" + tagName.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+        return quoted.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    /**
+     * 所有标签都已登记且回填完成时返回去重后的标签 id，否则返回 null（需要按 tags json 匹配）
+     */
+    private Collection<Long> requireAllTagIds(Collection<String> tagNameList) {
+        if (CollectionUtils.isEmpty(tagNameList)) {
+            return null;
+        }
+        Set<String> tagNames = new LinkedHashSet<>(tagNameList);
+        Map<String, Long> tagIdMap = resolveTagIds(tagNames);
+        if (tagIdMap.size() < tagNames.size() || anyBackfillPending(tagNames)) {
+            return null;
+        }
+        return new LinkedHashSet<>(tagIdMap.values());
+    }
+
+    /**
+     * 一批用户的标签关系用一条 insert 写入
+     */
+    private void flush(List<UserTag> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        userTagMapper.insertIgnoreRows(batch);
+        batch.clear();
+    }
+
+    /**
+     * 标签名 => 标签 id
+     *
+     * @param tagNames 标签名，为 null 时查询全部标签
+     */
+    private Map<String, Long> resolveTagIds(Collection<String> tagNames) {
+        if (tagNames != null && tagNames.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        QueryWrapper<Tag> queryWrapper = new QueryWrapper<>();
+        queryWrapper.select("id", "tagName");
+        if (tagNames != null) {
+            queryWrapper.in("tagName", tagNames);
+        }
+        Map<String, Long> tagIdMap = new HashMap<>();
+        for (Tag tag : tagMapper.selectList(queryWrapper)) {
+            tagIdMap.put(tag.getTagName(), tag.getId());
+        }
+        return tagIdMap;
+    }
+
+    private Set<String> parse(long userId, String tagsJson) {
+        if (StringUtils.isBlank(tagsJson)) {
+            return Collections.emptySet();
+        }
+        try {
+            List<String> tagList = gson.fromJson(tagsJson, TAG_LIST_TYPE);
+            if (tagList == null) {
+                return Collections.emptySet();
+            }
+            Set<String> tagNames = new LinkedHashSet<>(tagList);
+            tagNames.remove(null);
+            return tagNames;
+        } catch (Exception e) {
+            log.warn("解析用户 {} 的标签失败: {}", userId, e.getMessage());
+            return Collections.emptySet();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.kryos.educhain.utils;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 
@@ -8,6 +9,11 @@ import java.util.Objects;
  */
 public class AlgorithmUtils {
 
+    /**
+     * 每个线程复用的两行 DP 缓冲区，避免每次计算都分配 (n+1)*(m+1) 矩阵
+     */
+    private static final ThreadLocal<int[][]> ROW_BUFFER = ThreadLocal.withInitial(() -> new int[2][16]);
+
     /**
      * 编辑距离算法（用于计算最相似的两组标签）
      * 原理：https://blog.csdn.net/DBC_121/article/details/104198838
@@ -24,29 +30,199 @@ public class AlgorithmUtils {
             return n + m;
         }
 
-        int[][] d = new int[n + 1][m + 1];
-        for (int i = 0; i < n + 1; i++) {
-            d[i][0] = i;
+        int[][] rows = rowBuffer(m + 1);
+        int[] prev = rows[0];
+        int[] cur = rows[1];
+        for (int j = 0; j < m + 1; j++) {
+            prev[j] = j;
         }
 
+        for (int i = 1; i < n + 1; i++) {
+            String tag = tagList1.get(i - 1);
+            cur[0] = i;
+            for (int j = 1; j < m + 1; j++) {
+                int left = prev[j] + 1;
+                int down = cur[j - 1] + 1;
+                int left_down = prev[j - 1];
+                if (!Objects.equals(tag, tagList2.get(j - 1))) {
+                    left_down += 1;
+                }
+                cur[j] = Math.min(left, Math.min(down, left_down));
+            }
+            int[] tmp = prev;
+            prev = cur;
+            cur = tmp;
+        }
+        return prev[m];
+    }
+
+    /**
+     * 编辑距离算法（带上界，用于 Top-K 剪枝）
+     * 距离不超过 maxDistance 时返回精确值，否则返回 maxDistance + 1，并且一旦确定超出就提前结束
+     *
+     * @param tagList1
+     * @param tagList2
+     * @param maxDistance 距离上界，不能为负数
+     * @return
+     */
+    public static int minDistance(List<String> tagList1, List<String> tagList2, int maxDistance) {
+        int n = tagList1.size();
+        int m = tagList2.size();
+        if (maxDistance >= Math.max(n, m)) {
+            return minDistance(tagList1, tagList2);
+        }
+        if (Math.abs(n - m) > maxDistance) {
+            return maxDistance + 1;
+        }
+        if (n * m == 0) {
+            return n + m;
+        }
+
+        // 只计算 |i - j| <= maxDistance 的对角带，带外视为 maxDistance + 1
+        int big = maxDistance + 1;
+        int[][] rows = rowBuffer(m + 1);
+        int[] prev = rows[0];
+        int[] cur = rows[1];
+        for (int j = 0; j < m + 1; j++) {
+            prev[j] = Math.min(j, big);
+        }
+
+        for (int i = 1; i < n + 1; i++) {
+            String tag = tagList1.get(i - 1);
+            int from = Math.max(1, i - maxDistance);
+            int to = Math.min(m, i + maxDistance);
+            cur[0] = Math.min(i, big);
+            cur[from - 1] = from == 1 ? cur[0] : big;
+            int rowMin = cur[from - 1];
+            for (int j = from; j <= to; j++) {
+                int left = prev[j] + 1;
+                int down = cur[j - 1] + 1;
+                int left_down = prev[j - 1];
+                if (!Objects.equals(tag, tagList2.get(j - 1))) {
+                    left_down += 1;
+                }
+                int d = Math.min(big, Math.min(left, Math.min(down, left_down)));
+                cur[j] = d;
+                rowMin = Math.min(rowMin, d);
+            }
+            if (to < m) {
+                cur[to + 1] = big;
+            }
+            // 整行都已超过上界，后续只会更大
+            if (rowMin > maxDistance) {
+                return big;
+            }
+            int[] tmp = prev;
+            prev = cur;
+            cur = tmp;
+        }
+        return prev[m];
+    }
+
+    /**
+     * 编辑距离算法（用于计算两组已编码为 id 的标签）
+     * 与 {@link #minDistance(List, List)} 结果一致，只是用 int 比较代替字符串比较
+     *
+     * @param tagIds1
+     * @param tagIds2
+     * @return
+     */
+    public static int minDistance(int[] tagIds1, int[] tagIds2) {
+        int n = tagIds1.length;
+        int m = tagIds2.length;
+
+        if (n * m == 0) {
+            return n + m;
+        }
+
+        int[][] rows = rowBuffer(m + 1);
+        int[] prev = rows[0];
+        int[] cur = rows[1];
         for (int j = 0; j < m + 1; j++) {
-            d[0][j] = j;
+            prev[j] = j;
         }
 
         for (int i = 1; i < n + 1; i++) {
+            int tagId = tagIds1[i - 1];
+            cur[0] = i;
             for (int j = 1; j < m + 1; j++) {
-                int left = d[i - 1][j] + 1;
-                int down = d[i][j - 1] + 1;
-                int left_down = d[i - 1][j - 1];
-                if (!Objects.equals(tagList1.get(i - 1), tagList2.get(j - 1))) {
+                int left = prev[j] + 1;
+                int down = cur[j - 1] + 1;
+                int left_down = prev[j - 1];
+                if (tagId != tagIds2[j - 1]) {
                     left_down += 1;
                 }
-                d[i][j] = Math.min(left, Math.min(down, left_down));
+                cur[j] = Math.min(left, Math.min(down, left_down));
             }
+            int[] tmp = prev;
+            prev = cur;
+            cur = tmp;
         }
-        return d[n][m];
+        return prev[m];
     }
 
+    /**
+     * 编辑距离算法（已编码标签，带上界，用于 Top-K 剪枝）
+     * 距离不超过 maxDistance 时返回精确值，否则返回 maxDistance + 1，并且一旦确定超出就提前结束
+     *
+     * @param tagIds1
+     * @param tagIds2
+     * @param maxDistance 距离上界，不能为负数
+     * @return
+     */
+    public static int minDistance(int[] tagIds1, int[] tagIds2, int maxDistance) {
+        int n = tagIds1.length;
+        int m = tagIds2.length;
+        if (maxDistance >= Math.max(n, m)) {
+            return minDistance(tagIds1, tagIds2);
+        }
+        if (Math.abs(n - m) > maxDistance) {
+            return maxDistance + 1;
+        }
+        if (n * m == 0) {
+            return n + m;
+        }
+
+        // 只计算 |i - j| <= maxDistance 的对角带，带外视为 maxDistance + 1
+        int big = maxDistance + 1;
+        int[][] rows = rowBuffer(m + 1);
+        int[] prev = rows[0];
+        int[] cur = rows[1];
+        for (int j = 0; j < m + 1; j++) {
+            prev[j] = Math.min(j, big);
+        }
+
+        for (int i = 1; i < n + 1; i++) {
+            int tagId = tagIds1[i - 1];
+            int from = Math.max(1, i - maxDistance);
+            int to = Math.min(m, i + maxDistance);
+            cur[0] = Math.min(i, big);
+            cur[from - 1] = from == 1 ? cur[0] : big;
+            int rowMin = cur[from - 1];
+            for (int j = from; j <= to; j++) {
+                int left = prev[j] + 1;
+                int down = cur[j - 1] + 1;
+                int left_down = prev[j - 1];
+                if (tagId != tagIds2[j - 1]) {
+                    left_down += 1;
+                }
+                int d = Math.min(big, Math.min(left, Math.min(down, left_down)));
+                cur[j] = d;
+                rowMin = Math.min(rowMin, d);
+            }
+            if (to < m) {
+                cur[to + 1] = big;
+            }
+            // 整行都已超过上界，后续只会更大
+            if (rowMin > maxDistance) {
+                return big;
+            }
+            int[] tmp = prev;
+            prev = cur;
+            cur = tmp;
+        }
+        return prev[m];
+    }
 
     /**
      * 编辑距离算法（用于计算最相似的两个字符串）
@@ -64,26 +240,144 @@ public class AlgorithmUtils {
             return n + m;
         }
 
-        int[][] d = new int[n + 1][m + 1];
-        for (int i = 0; i < n + 1; i++) {
-            d[i][0] = i;
-        }
-
+        int[][] rows = rowBuffer(m + 1);
+        int[] prev = rows[0];
+        int[] cur = rows[1];
         for (int j = 0; j < m + 1; j++) {
-            d[0][j] = j;
+            prev[j] = j;
         }
 
         for (int i = 1; i < n + 1; i++) {
+            char c = word1.charAt(i - 1);
+            cur[0] = i;
             for (int j = 1; j < m + 1; j++) {
-                int left = d[i - 1][j] + 1;
-                int down = d[i][j - 1] + 1;
-                int left_down = d[i - 1][j - 1];
-                if (word1.charAt(i - 1) != word2.charAt(j - 1)) {
+                int left = prev[j] + 1;
+                int down = cur[j - 1] + 1;
+                int left_down = prev[j - 1];
+                if (c != word2.charAt(j - 1)) {
                     left_down += 1;
                 }
-                d[i][j] = Math.min(left, Math.min(down, left_down));
+                cur[j] = Math.min(left, Math.min(down, left_down));
             }
+            int[] tmp = prev;
+            prev = cur;
+            cur = tmp;
+        }
+        return prev[m];
+    }
+
+    /**
+     * 编辑距离算法（位并行版，用于大量字符串的模糊比较）
+     * Myers / Hyyrö 位向量算法：较短的串不超过 64 个字符时每个字符只需常数次位运算，
+     * 更长时按 64 位分块并在块间传递进位，结果与 {@link #minDistance(String, String)} 完全一致
+     *
+     * @param word1
+     * @param word2
+     * @return
+     */
+    public static int minDistanceBitParallel(String word1, String word2) {
+        // 以较短的串作为模式串，编辑距离是对称的
+        String pattern = word1.length() <= word2.length() ? word1 : word2;
+        String text = pattern == word1 ? word2 : word1;
+        int m = pattern.length();
+        int n = text.length();
+        if (m == 0) {
+            return n;
+        }
+
+        // 模式串中出现的字符（升序去重），以及每个字符在各块中的出现位置
+        char[] keys = pattern.toCharArray();
+        Arrays.sort(keys);
+        int keyCount = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (i == 0 || keys[i] != keys[i - 1]) {
+                keys[keyCount++] = keys[i];
+            }
+        }
+        int blocks = (m + 63) >>> 6;
+        long[][] peq = new long[keyCount][blocks];
+        for (int i = 0; i < m; i++) {
+            int k = Arrays.binarySearch(keys, 0, keyCount, pattern.charAt(i));
+            peq[k][i >>> 6] |= 1L << (i & 63);
+        }
+        long lastBit = 1L << ((m - 1) & 63);
+
+        if (blocks == 1) {
+            long pv = -1L;
+            long mv = 0L;
+            int score = m;
+            for (int j = 0; j < n; j++) {
+                int k = Arrays.binarySearch(keys, 0, keyCount, text.charAt(j));
+                long eq = k >= 0 ? peq[k][0] : 0L;
+                long xv = eq | mv;
+                long xh = (((eq & pv) + pv) ^ pv) | eq;
+                long ph = mv | ~(xh | pv);
+                long mh = pv & xh;
+                if ((ph & lastBit) != 0) {
+                    score++;
+                } else if ((mh & lastBit) != 0) {
+                    score--;
+                }
+                // 第 0 行是 0..n，顶部的水平差恒为 +1
+                ph = (ph << 1) | 1L;
+                mh <<= 1;
+                pv = mh | ~(xv | ph);
+                mv = ph & xv;
+            }
+            return score;
+        }
+
+        long[] pvs = new long[blocks];
+        long[] mvs = new long[blocks];
+        Arrays.fill(pvs, -1L);
+        int score = m;
+        for (int j = 0; j < n; j++) {
+            int k = Arrays.binarySearch(keys, 0, keyCount, text.charAt(j));
+            int hin = 1;
+            for (int b = 0; b < blocks; b++) {
+                long eq = k >= 0 ? peq[k][b] : 0L;
+                long pv = pvs[b];
+                long mv = mvs[b];
+                long highBit = b == blocks - 1 ? lastBit : Long.MIN_VALUE;
+                long xv = eq | mv;
+                if (hin < 0) {
+                    eq |= 1L;
+                }
+                long xh = (((eq & pv) + pv) ^ pv) | eq;
+                long ph = mv | ~(xh | pv);
+                long mh = pv & xh;
+                int hout = 0;
+                if ((ph & highBit) != 0) {
+                    hout = 1;
+                } else if ((mh & highBit) != 0) {
+                    hout = -1;
+                }
+                ph <<= 1;
+                mh <<= 1;
+                if (hin < 0) {
+                    mh |= 1L;
+                } else if (hin > 0) {
+                    ph |= 1L;
+                }
+                pvs[b] = mh | ~(xv | ph);
+                mvs[b] = ph & xv;
+                hin = hout;
+            }
+            score += hin;
+        }
+        return score;
+    }
+
+    /**
+     * 取当前线程的两行缓冲区，长度不足时扩容
+     */
+    private static int[][] rowBuffer(int length) {
+        int[][] rows = ROW_BUFFER.get();
+        if (rows[0].length < length) {
+            int capacity = Math.max(length, rows[0].length * 2);
+            rows[0] = new int[capacity];
+            rows[1] = new int[capacity];
         }
-        return d[n][m];
+        return rows;
     }
 }
@@ -0,0 +1,67 @@
+package com.kryos.educhain.index;
+
+import com.kryos.educhain.utils.AlgorithmUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 标签名 BK 树测试
+ */
+public class BkTreeTest {
+
+    @Test
+    void testSearch() {
+        BkTree tree = new BkTree();
+        for (String name : Arrays.asList("Java", "JAVA", "JavaScript", "Python", "大一", "大二")) {
+            tree.add(name);
+        }
+        tree.add("Java");
+        Assertions.assertEquals(6, tree.size());
+
+        Map<String, Integer> expected = new HashMap<>();
+        expected.put("Java", 1);
+        expected.put("JAVA", 1);
+        Assertions.assertEquals(expected, tree.search("Jave", 1));
+        Assertions.assertEquals(0, tree.search("PYTHON", 0).get("Python"));
+        Assertions.assertEquals(2, tree.search("大三", 1).size());
+        Assertions.assertTrue(tree.search("Go", 1).isEmpty());
+    }
+
+    @Test
+    void testSameAsLinearScan() {
+        Random random = new Random(7);
+        String alphabet = "abcde";
+        BkTree tree = new BkTree();
+        String[] names = new String[300];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = randomWord(random, alphabet);
+            tree.add(names[i]);
+        }
+        for (int round = 0; round < 100; round++) {
+            String query = randomWord(random, alphabet);
+            int maxDistance = random.nextInt(3);
+            Map<String, Integer> expected = new HashMap<>();
+            for (String name : names) {
+                int distance = AlgorithmUtils.minDistance(query, name);
+                if (distance <= maxDistance) {
+                    expected.put(name, distance);
+                }
+            }
+            Assertions.assertEquals(expected, new HashMap<>(tree.search(query, maxDistance)), query);
+        }
+    }
+
+    private static String randomWord(Random random, String alphabet) {
+        StringBuilder word = new StringBuilder();
+        int length = 1 + random.nextInt(6);
+        for (int i = 0; i < length; i++) {
+            word.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return word.toString();
+    }
+}
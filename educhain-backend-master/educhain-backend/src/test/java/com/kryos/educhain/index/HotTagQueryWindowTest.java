@@ -0,0 +1,63 @@
+package com.kryos.educhain.index;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 热门搜索统计窗口（Count-Min sketch + Top-K）测试
+ */
+public class HotTagQueryWindowTest {
+
+    @Test
+    void testHeavyHittersKept() {
+        HotTagQueryTracker.Window window = new HotTagQueryTracker.Window();
+        int k = 5;
+        for (int round = 0; round < 100; round++) {
+            window.record("hot-a", k);
+            if (round % 2 == 0) {
+                window.record("hot-b", k);
+            }
+            // 每轮都有一批只出现一次的搜索
+            for (int i = 0; i < 10; i++) {
+                window.record("cold-" + round + "-" + i, k);
+            }
+        }
+        Map<String, Integer> heavyHitters = window.heavyHitters();
+        Assertions.assertTrue(heavyHitters.size() <= k);
+        // Count-Min sketch 只会高估，不会低估
+        Assertions.assertTrue(heavyHitters.get("hot-a") >= 100);
+        Assertions.assertTrue(heavyHitters.get("hot-b") >= 50);
+    }
+
+    @Test
+    void testCandidatesNeverExceedK() throws Exception {
+        HotTagQueryTracker.Window window = new HotTagQueryTracker.Window();
+        int k = 3;
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 5000; i++) {
+                        window.record("q" + ((i * 7 + thread) % 50), k);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assertions.assertTrue(window.heavyHitters().size() <= k);
+    }
+}
@@ -0,0 +1,77 @@
+package com.kryos.educhain.index;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 布尔标签表达式求值测试（直接构造表达式，不经过解析）
+ */
+public class TagExpressionTest {
+
+    private final Map<String, RoaringBitmap> postingMap = new HashMap<>();
+
+    private final TagPostings postings = new TagPostings() {
+        @Override
+        public RoaringBitmap posting(String tagName) {
+            return postingMap.getOrDefault(tagName, new RoaringBitmap());
+        }
+
+        @Override
+        public RoaringBitmap all() {
+            return FastAggregation.or(postingMap.values().iterator());
+        }
+    };
+
+    {
+        postingMap.put("Java", RoaringBitmap.bitmapOf(1, 2, 3, 4));
+        postingMap.put("Python", RoaringBitmap.bitmapOf(3, 4, 5));
+        postingMap.put("游戏", RoaringBitmap.bitmapOf(4, 6));
+    }
+
+    @Test
+    void testAllOf() {
+        Assertions.assertEquals(RoaringBitmap.bitmapOf(3, 4),
+                TagExpression.allOf(Arrays.asList("Java", "Python", "Java")).evaluate(postings));
+        Assertions.assertEquals(RoaringBitmap.bitmapOf(1, 2, 3, 4),
+                TagExpression.allOf(Collections.singletonList("Java")).evaluate(postings));
+        Assertions.assertTrue(TagExpression.allOf(Arrays.asList("Java", "不存在")).evaluate(postings).isEmpty());
+    }
+
+    @Test
+    void testNotAndOr() {
+        TagExpression java = new TagExpression.Tag("Java");
+        TagExpression python = new TagExpression.Tag("Python");
+        TagExpression game = new TagExpression.Tag("游戏");
+        Assertions.assertEquals(RoaringBitmap.bitmapOf(1, 2, 3),
+                new TagExpression.And(Arrays.asList(java, new TagExpression.Not(game))).evaluate(postings));
+        // 只有 NOT 时以全体有标签的用户为全集
+        Assertions.assertEquals(RoaringBitmap.bitmapOf(1, 2, 3, 5),
+                new TagExpression.And(Collections.singletonList(new TagExpression.Not(game))).evaluate(postings));
+        Assertions.assertEquals(RoaringBitmap.bitmapOf(3, 4, 5, 6),
+                new TagExpression.Or(Arrays.asList(python, game)).evaluate(postings));
+    }
+
+    @Test
+    void testEvaluateDoesNotModifyPostings() {
+        TagExpression expression = new TagExpression.And(Arrays.asList(
+                new TagExpression.Tag("Java"), new TagExpression.Not(new TagExpression.Tag("Python"))));
+        Assertions.assertEquals(RoaringBitmap.bitmapOf(1, 2), expression.evaluate(postings));
+        Assertions.assertEquals(RoaringBitmap.bitmapOf(1, 2, 3, 4), postingMap.get("Java"));
+        Assertions.assertEquals(RoaringBitmap.bitmapOf(3, 4, 5), postingMap.get("Python"));
+    }
+
+    @Test
+    void testMapTags() {
+        TagExpression expression = TagExpression.allOf(Arrays.asList("Jave", "Python"))
+                .mapTags(tagName -> "Jave".equals(tagName) ? "Java" : tagName);
+        Assertions.assertEquals(RoaringBitmap.bitmapOf(3, 4), expression.evaluate(postings));
+        Assertions.assertEquals(Arrays.asList("Java", "Python"), expression.conjunctionTags());
+    }
+}
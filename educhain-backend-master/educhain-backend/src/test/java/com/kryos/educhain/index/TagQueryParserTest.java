@@ -0,0 +1,71 @@
+package com.kryos.educhain.index;
+
+import com.kryos.educhain.exception.BusinessException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 布尔标签查询解析与求值测试
+ */
+public class TagQueryParserTest {
+
+    private final Map<String, RoaringBitmap> postingMap = new HashMap<>();
+
+    private final TagPostings postings = new TagPostings() {
+        @Override
+        public RoaringBitmap posting(String tagName) {
+            return postingMap.getOrDefault(tagName, new RoaringBitmap());
+        }
+
+        @Override
+        public RoaringBitmap all() {
+            return FastAggregation.or(postingMap.values().iterator());
+        }
+    };
+
+    {
+        postingMap.put("Java", RoaringBitmap.bitmapOf(1, 2, 3));
+        postingMap.put("Python", RoaringBitmap.bitmapOf(3, 4, 5));
+        postingMap.put("游戏", RoaringBitmap.bitmapOf(2, 5, 6));
+        postingMap.put("C++", RoaringBitmap.bitmapOf(7));
+    }
+
+    @Test
+    void testEvaluate() {
+        Assertions.assertEquals(RoaringBitmap.bitmapOf(1, 3, 4), evaluate("Java OR Python, NOT 游戏"));
+        Assertions.assertEquals(RoaringBitmap.bitmapOf(1, 3, 4), evaluate("(Java | Python) & !游戏"));
+        Assertions.assertEquals(RoaringBitmap.bitmapOf(3), evaluate("Java Python"));
+        Assertions.assertEquals(RoaringBitmap.bitmapOf(1, 3, 4, 7), evaluate("not 游戏"));
+        Assertions.assertEquals(RoaringBitmap.bitmapOf(1, 2, 3, 7), evaluate("\"C++\" or Java"));
+        Assertions.assertEquals(RoaringBitmap.bitmapOf(1, 2, 3, 5), evaluate("Java OR (Python AND NOT NOT 游戏)"));
+        Assertions.assertTrue(evaluate("Java AND 不存在").isEmpty());
+    }
+
+    @Test
+    void testCanonicalForm() {
+        Assertions.assertEquals(TagQueryParser.parse("Python OR Java, NOT 游戏").toString(),
+                TagQueryParser.parse("!游戏 AND (Java | Python)").toString());
+        TagExpression conjunction = TagQueryParser.parse("Java AND Python");
+        Assertions.assertEquals(Arrays.asList("Java", "Python"), conjunction.conjunctionTags());
+        Assertions.assertNull(TagQueryParser.parse("Java OR Python").conjunctionTags());
+        Assertions.assertFalse(conjunction.containsNot());
+        Assertions.assertTrue(TagQueryParser.parse("Java OR (Python AND NOT 游戏)").containsNot());
+    }
+
+    @Test
+    void testInvalidQuery() {
+        for (String query : new String[]{"", "Java AND", "(Java", "Java )", "OR Java", "\"Java"}) {
+            Assertions.assertThrows(BusinessException.class, () -> TagQueryParser.parse(query), query);
+        }
+    }
+
+    private RoaringBitmap evaluate(String query) {
+        return TagQueryParser.parse(query).evaluate(postings);
+    }
+}
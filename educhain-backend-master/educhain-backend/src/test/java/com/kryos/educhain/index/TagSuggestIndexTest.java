@@ -0,0 +1,55 @@
+package com.kryos.educhain.index;
+
+import com.kryos.educhain.model.vo.TagSuggestionVO;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * 标签名联想的前缀匹配与排序测试
+ */
+public class TagSuggestIndexTest {
+
+    private final Map<String, Long> userCounts = new HashMap<>();
+
+    private final TagSuggestIndex.Entry[] entries = TagSuggestIndex.sortedEntries(
+            Arrays.asList("Java", "JavaScript", "Jakarta", "Jav", "Python", "java"));
+
+    {
+        userCounts.put("Java", 100L);
+        userCounts.put("JavaScript", 80L);
+        userCounts.put("Jakarta", 80L);
+        userCounts.put("Jav", 5L);
+        userCounts.put("Python", 300L);
+    }
+
+    @Test
+    void testPrefixRanking() {
+        Assertions.assertEquals(Arrays.asList("Java", "Jakarta", "JavaScript"), suggest("ja", 3));
+        // 不区分大小写，前缀本身也是标签时同样参与排序
+        Assertions.assertEquals(Arrays.asList("Java", "JavaScript", "Jav", "java"), suggest(" JAV", 10));
+        Assertions.assertEquals(Arrays.asList("Python"), suggest("p", 10));
+        Assertions.assertTrue(suggest("Rust", 10).isEmpty());
+        Assertions.assertTrue(suggest("", 10).isEmpty());
+        Assertions.assertTrue(suggest("ja", 0).isEmpty());
+    }
+
+    @Test
+    void testUserCounts() {
+        List<TagSuggestionVO> result = TagSuggestIndex.topByPrefix(entries, "java", 1,
+                tagName -> userCounts.getOrDefault(tagName, 0L));
+        Assertions.assertEquals(1, result.size());
+        Assertions.assertEquals("Java", result.get(0).getTagName());
+        Assertions.assertEquals(100L, result.get(0).getUserCount());
+    }
+
+    private List<String> suggest(String prefix, int limit) {
+        return TagSuggestIndex.topByPrefix(entries, prefix, limit, tagName -> userCounts.getOrDefault(tagName, 0L))
+                .stream().map(TagSuggestionVO::getTagName).collect(Collectors.toList());
+    }
+}
@@ -1,10 +1,12 @@
 package com.kryos.educhain.service;
 
 import com.kryos.educhain.utils.AlgorithmUtils;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 /**
  * 算法工具类测试
@@ -39,4 +41,57 @@ public class AlgorithmUtilsTest {
         System.out.println(score2);
     }
 
+    @Test
+    void testCompareEncodedTags() {
+        // 与字符串版本结果一致
+        List<String> tagList1 = Arrays.asList("Java", "大一", "男");
+        List<String> tagList2 = Arrays.asList("Java", "大一", "女");
+        List<String> tagList3 = Arrays.asList("Python", "大二", "女");
+        int[] tagIds1 = {0, 1, 2};
+        int[] tagIds2 = {0, 1, 3};
+        int[] tagIds3 = {4, 5, 3};
+        Assertions.assertEquals(AlgorithmUtils.minDistance(tagList1, tagList2), AlgorithmUtils.minDistance(tagIds1, tagIds2));
+        Assertions.assertEquals(AlgorithmUtils.minDistance(tagList1, tagList3), AlgorithmUtils.minDistance(tagIds1, tagIds3));
+        Assertions.assertEquals(3, AlgorithmUtils.minDistance(new int[0], tagIds3));
+    }
+
+    @Test
+    void testBoundedDistance() {
+        // 与不带上界的版本对比：不超过上界时相等，超过时返回上界 + 1
+        Random random = new Random(7);
+        for (int round = 0; round < 10000; round++) {
+            int[] tagIds1 = random.ints(random.nextInt(10), 0, 4).toArray();
+            int[] tagIds2 = random.ints(random.nextInt(10), 0, 4).toArray();
+            int maxDistance = random.nextInt(12);
+            int distance = AlgorithmUtils.minDistance(tagIds1, tagIds2);
+            Assertions.assertEquals(Math.min(distance, maxDistance + 1),
+                    AlgorithmUtils.minDistance(tagIds1, tagIds2, maxDistance));
+        }
+    }
+
+    @Test
+    void testBitParallelDistance() {
+        // 随机生成字符串对，位并行版必须与动态规划版完全一致（覆盖单块、多块、中文字符）
+        Random random = new Random(11);
+        for (int round = 0; round < 20000; round++) {
+            int maxLength = round % 10 == 0 ? 200 : (round % 3 == 0 ? 70 : 20);
+            boolean chinese = round % 2 == 0;
+            String word1 = randomWord(random, random.nextInt(maxLength + 1), chinese);
+            String word2 = randomWord(random, random.nextInt(maxLength + 1), chinese);
+            Assertions.assertEquals(AlgorithmUtils.minDistance(word1, word2),
+                    AlgorithmUtils.minDistanceBitParallel(word1, word2), word1 + " / " + word2);
+        }
+        Assertions.assertEquals(1, AlgorithmUtils.minDistanceBitParallel("我是狗", "我不是狗"));
+        Assertions.assertEquals(3, AlgorithmUtils.minDistanceBitParallel("我是狗", "负责人"));
+        Assertions.assertEquals(4, AlgorithmUtils.minDistanceBitParallel("", "Java"));
+    }
+
+    private static String randomWord(Random random, int length, boolean chinese) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(chinese ? (char) (0x4e00 + random.nextInt(40)) : (char) ('a' + random.nextInt(3)));
+        }
+        return sb.toString();
+    }
+
 }
@@ -0,0 +1,114 @@
+package com.kryos.educhain.service;
+
+import com.kryos.educhain.index.MinHashLshIndex;
+import com.kryos.educhain.index.TagProfile;
+import com.kryos.educhain.match.TopKCollector;
+import com.kryos.educhain.utils.AlgorithmUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * 近似匹配（MinHash/LSH）与精确匹配的召回率对比报告
+ */
+public class MatchRecallReportTest {
+
+    private static final int TAG_COUNT = 60;
+
+    private static final int USER_COUNT = 20000;
+
+    private static final int QUERY_COUNT = 200;
+
+    private static final int TOP_K = 10;
+
+    @Test
+    void testRecallReport() {
+        Random random = new Random(2024);
+        List<TagProfile> profiles = new ArrayList<>(USER_COUNT);
+        for (int i = 0; i < USER_COUNT; i++) {
+            profiles.add(new TagProfile(i + 1, randomTags(random)));
+        }
+        int[][] configs = {{8, 2}, {16, 2}, {32, 2}, {16, 3}};
+        for (int[] config : configs) {
+            MinHashLshIndex index = new MinHashLshIndex(config[0], config[1], 20240601L);
+            index.rebuild(profiles);
+            double idRecall = 0;
+            double distanceRecall = 0;
+            long candidateTotal = 0;
+            long exactNanos = 0;
+            long approximateNanos = 0;
+            for (int q = 0; q < QUERY_COUNT; q++) {
+                TagProfile query = profiles.get(random.nextInt(USER_COUNT));
+
+                long start = System.nanoTime();
+                TopKCollector exact = new TopKCollector(TOP_K);
+                for (TagProfile profile : profiles) {
+                    score(query, profile, exact);
+                }
+                exactNanos += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                TopKCollector approximate = new TopKCollector(TOP_K);
+                Set<Long> candidates = index.candidates(query.getSortedTagIds());
+                for (Long userId : candidates) {
+                    score(query, profiles.get((int) (userId - 1)), approximate);
+                }
+                approximateNanos += System.nanoTime() - start;
+                candidateTotal += candidates.size();
+
+                // id 召回：近似结果中与精确结果相同的用户比例
+                Set<Long> exactIds = new HashSet<>(exact.sortedIds());
+                long hit = approximate.sortedIds().stream().filter(exactIds::contains).count();
+                idRecall += (double) hit / TOP_K;
+                // 距离召回：近似结果中距离不超过精确第 K 名的比例（编辑距离并列很多，更能反映质量）
+                int kthDistance = exact.threshold();
+                long good = 0;
+                for (int distance : approximate.sortedScores()) {
+                    if (distance <= kthDistance) {
+                        good++;
+                    }
+                }
+                distanceRecall += (double) good / TOP_K;
+            }
+            idRecall /= QUERY_COUNT;
+            distanceRecall /= QUERY_COUNT;
+            System.out.printf("bands=%d rows=%d 平均候选数=%d/%d id召回=%.3f 距离召回=%.3f 精确耗时=%.3fms 近似耗时=%.3fms%n",
+                    config[0], config[1], candidateTotal / QUERY_COUNT, USER_COUNT, idRecall, distanceRecall,
+                    exactNanos / 1e6 / QUERY_COUNT, approximateNanos / 1e6 / QUERY_COUNT);
+            Assertions.assertTrue(candidateTotal / QUERY_COUNT < USER_COUNT);
+            Assertions.assertTrue(distanceRecall > 0.9);
+        }
+    }
+
+    private static void score(TagProfile query, TagProfile profile, TopKCollector collector) {
+        if (profile.getUserId() == query.getUserId()) {
+            return;
+        }
+        int threshold = collector.threshold();
+        int distance = AlgorithmUtils.minDistance(query.getTagIds(), profile.getTagIds(), threshold);
+        if (distance <= threshold) {
+            collector.offer(profile.getUserId(), distance);
+        }
+    }
+
+    /**
+     * 生成 2~8 个不重复标签，标签热度近似 Zipf 分布
+     */
+    private static int[] randomTags(Random random) {
+        int size = 2 + random.nextInt(7);
+        Set<Integer> tags = new HashSet<>();
+        List<Integer> ordered = new ArrayList<>();
+        while (ordered.size() < size) {
+            int tagId = (int) Math.floor(Math.pow(TAG_COUNT + 1, random.nextDouble())) - 1;
+            if (tags.add(tagId)) {
+                ordered.add(tagId);
+            }
+        }
+        return ordered.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
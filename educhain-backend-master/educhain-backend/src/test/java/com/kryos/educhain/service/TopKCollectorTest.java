@@ -0,0 +1,52 @@
+package com.kryos.educhain.service;
+
+import com.kryos.educhain.match.TopKCollector;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+/**
+ * Top-K 收集器测试
+ */
+public class TopKCollectorTest {
+
+    @Test
+    void testSameOrderAsFullSort() {
+        Random random = new Random(42);
+        for (int round = 0; round < 100; round++) {
+            int k = 1 + random.nextInt(20);
+            int n = random.nextInt(500);
+            TopKCollector collector = new TopKCollector(k);
+            List<long[]> all = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                long id = random.nextInt(10000);
+                int score = random.nextInt(8);
+                collector.offer(id, score);
+                all.add(new long[]{id, score});
+            }
+            List<Long> expected = all.stream()
+                    .sorted(Comparator.<long[]>comparingLong(a -> a[1]).thenComparingLong(a -> a[0]))
+                    .limit(k)
+                    .map(a -> a[0])
+                    .collect(Collectors.toList());
+            Assertions.assertEquals(expected, collector.sortedIds());
+        }
+    }
+
+    @Test
+    void testThreshold() {
+        TopKCollector collector = new TopKCollector(2);
+        Assertions.assertEquals(Integer.MAX_VALUE, collector.threshold());
+        collector.offer(1L, 5);
+        collector.offer(2L, 3);
+        Assertions.assertEquals(5, collector.threshold());
+        Assertions.assertFalse(collector.offer(3L, 6));
+        Assertions.assertTrue(collector.offer(4L, 1));
+        Assertions.assertEquals(3, collector.threshold());
+    }
+}